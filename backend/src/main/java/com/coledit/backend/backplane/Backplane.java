@@ -0,0 +1,49 @@
+package com.coledit.backend.backplane;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Replicates the versions of notes accepted on one node to every other node serving the
+ * same notes.
+ *
+ * Updates of one note are delivered in the order their node published them, but updates
+ * from different nodes are not ordered with respect to each other; receivers compare
+ * versions to decide which one wins. A node never receives its own updates.
+ */
+public interface Backplane {
+
+    /**
+     * The id this node publishes under, unique among the nodes.
+     */
+    String getNodeId();
+
+    /**
+     * Queues an accepted version for the other nodes. Never blocks on the network, and a
+     * newer version of the same note may replace one not sent yet.
+     */
+    void publish(DocumentUpdate update);
+
+    /**
+     * Sends what is queued right away, for a node handing its notes off. Completes once
+     * every version published before the call can be seen by the other nodes.
+     */
+    CompletableFuture<Void> flush();
+
+    /**
+     * Registers the listener updates from other nodes are delivered to, one at a time.
+     */
+    void subscribe(Consumer<DocumentUpdate> listener);
+
+    /**
+     * Returns the latest version any node published for a note, or null if none did.
+     */
+    CompletableFuture<DocumentUpdate> latest(String noteId);
+
+    /**
+     * Drops the versions published for a note whose stored content was replaced or
+     * deleted outside the rooms, so a node opening it starts from the database again.
+     * Joins the caller's transaction where there is one.
+     */
+    void forget(String noteId);
+}
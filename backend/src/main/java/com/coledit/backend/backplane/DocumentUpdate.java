@@ -0,0 +1,16 @@
+package com.coledit.backend.backplane;
+
+import java.util.Map;
+
+/**
+ * A version of a note accepted by the node {@code origin}, replicated to the others.
+ * {@code lineage} holds, per node, the highest version accepted there that this content
+ * includes, which tells a version built on another apart from a concurrent one.
+ */
+public record DocumentUpdate(String noteId, int version, String content, String origin,
+        Map<String, Integer> lineage) {
+
+    public DocumentUpdate {
+        lineage = Map.copyOf(lineage);
+    }
+}
@@ -0,0 +1,72 @@
+package com.coledit.backend.backplane;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * A backplane between nodes running in the same JVM, connected through a shared
+ * {@link Hub}. Updates are delivered to the other nodes on the publishing thread, which
+ * keeps them in publish order and makes several nodes easy to test in one process.
+ */
+public class InProcessBackplane implements Backplane {
+
+    private final String nodeId;
+    private final Hub hub;
+    private final List<Consumer<DocumentUpdate>> listeners = new CopyOnWriteArrayList<>();
+
+    public InProcessBackplane(String nodeId, Hub hub) {
+        this.nodeId = nodeId;
+        this.hub = hub;
+        hub.nodes.add(this);
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void publish(DocumentUpdate update) {
+        hub.latest.merge(update.noteId(), update,
+                (current, published) -> published.version() >= current.version() ? published : current);
+        for (InProcessBackplane node : hub.nodes) {
+            if (node != this) {
+                node.listeners.forEach(listener -> listener.accept(update));
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> flush() {
+        // delivered as it was published
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public void subscribe(Consumer<DocumentUpdate> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public CompletableFuture<DocumentUpdate> latest(String noteId) {
+        return CompletableFuture.completedFuture(hub.latest.get(noteId));
+    }
+
+    @Override
+    public void forget(String noteId) {
+        hub.latest.remove(noteId);
+    }
+
+    /**
+     * The nodes sharing a backplane, and the latest version published for each note.
+     */
+    public static class Hub {
+
+        private final List<InProcessBackplane> nodes = new CopyOnWriteArrayList<>();
+        private final Map<String, DocumentUpdate> latest = new ConcurrentHashMap<>();
+    }
+}
@@ -0,0 +1,45 @@
+package com.coledit.backend.backplane;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * The backplane of a single node, which has nobody to replicate to.
+ */
+@Component
+@ConditionalOnProperty(name = "document.backplane.type", havingValue = "none", matchIfMissing = true)
+public class LocalBackplane implements Backplane {
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void publish(DocumentUpdate update) {
+    }
+
+    @Override
+    public CompletableFuture<Void> flush() {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public void subscribe(Consumer<DocumentUpdate> listener) {
+    }
+
+    @Override
+    public CompletableFuture<DocumentUpdate> latest(String noteId) {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public void forget(String noteId) {
+    }
+}
@@ -0,0 +1,335 @@
+package com.coledit.backend.backplane;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * A backplane over Postgres {@code LISTEN/NOTIFY}.
+ *
+ * Published versions are queued, keeping only the newest per note, and sent in batches
+ * every {@code batchInterval}: one transaction upserts the versions into
+ * {@code document_replication} and notifies each of them, so a notification is only
+ * seen once its row is there. NOTIFY payloads are limited to 8000 bytes, so a content
+ * that does not fit is left out of the payload and read from the table by the receivers.
+ * The upsert never replaces a newer version, and the table also answers
+ * {@link #latest(String)} for nodes opening a note. Its row for a note is deleted when
+ * the note is updated or deleted through the REST API, since the stored content has no
+ * version to compare the row against.
+ *
+ * One sender thread keeps the updates of a note in publish order, and Postgres delivers
+ * the notifications of one session in commit order to the single listener thread.
+ */
+@Component
+@ConditionalOnProperty(name = "document.backplane.type", havingValue = "postgres")
+public class PostgresBackplane implements Backplane {
+
+    private static final String CHANNEL = "document_updates";
+    private static final int MAX_PAYLOAD_BYTES = 7900;
+    private static final TypeReference<Map<String, Integer>> LINEAGE = new TypeReference<>() {
+    };
+
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS document_replication ("
+            + "note_id VARCHAR(64) PRIMARY KEY, version INTEGER NOT NULL, content TEXT NOT NULL, "
+            + "origin VARCHAR(64) NOT NULL, lineage TEXT NOT NULL)";
+    private static final String UPSERT = "INSERT INTO document_replication (note_id, version, content, origin, lineage) "
+            + "VALUES (?, ?, ?, ?, ?) ON CONFLICT (note_id) DO UPDATE SET version = EXCLUDED.version, "
+            + "content = EXCLUDED.content, origin = EXCLUDED.origin, lineage = EXCLUDED.lineage "
+            + "WHERE document_replication.version < EXCLUDED.version";
+    private static final String NOTIFY = "SELECT pg_notify('" + CHANNEL + "', payload) "
+            + "FROM unnest(?::text[]) WITH ORDINALITY AS notifications(payload, position) ORDER BY position";
+    private static final String SELECT_LATEST = "SELECT note_id, version, content, origin, lineage "
+            + "FROM document_replication WHERE note_id = ANY(?)";
+    private static final String DELETE = "DELETE FROM document_replication WHERE note_id = ?";
+
+    private final String nodeId;
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+
+    private final Map<String, DocumentUpdate> pending = new ConcurrentHashMap<>();
+    private final List<Consumer<DocumentUpdate>> listeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService sender;
+    private final ExecutorService readers = Executors.newVirtualThreadPerTaskExecutor();
+    private final Thread listener;
+    private volatile boolean running = true;
+
+    @Autowired
+    public PostgresBackplane(DataSource dataSource, ObjectMapper objectMapper,
+            @Value("${document.backplane.node-id:}") String nodeId,
+            @Value("${document.backplane.batch-interval-ms:10}") long batchIntervalMillis,
+            @Value("${document.backplane.batch-size:200}") int batchSize) {
+        this.nodeId = nodeId.isBlank() ? UUID.randomUUID().toString() : nodeId;
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.objectMapper = objectMapper;
+        this.batchSize = Math.max(1, batchSize);
+
+        jdbcTemplate.execute(CREATE_TABLE);
+        this.sender = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("backplane-sender").daemon().factory());
+        sender.scheduleWithFixedDelay(this::sendQuietly, batchIntervalMillis, batchIntervalMillis,
+                TimeUnit.MILLISECONDS);
+        this.listener = Thread.ofPlatform().name("backplane-listener").daemon().start(this::listen);
+        System.out.println("Backplane node " + this.nodeId + " listening on " + CHANNEL);
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void publish(DocumentUpdate update) {
+        pending.merge(update.noteId(), update,
+                (queued, published) -> published.version() >= queued.version() ? published : queued);
+    }
+
+    @Override
+    public CompletableFuture<Void> flush() {
+        // on the sender thread, behind any batch being sent
+        return CompletableFuture.runAsync(this::sendPending, sender);
+    }
+
+    @Override
+    public void subscribe(Consumer<DocumentUpdate> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public CompletableFuture<DocumentUpdate> latest(String noteId) {
+        return CompletableFuture.supplyAsync(() -> jdbcTemplate.execute(
+                (ConnectionCallback<DocumentUpdate>) connection -> selectLatest(connection, List.of(noteId))
+                        .get(noteId)),
+                readers);
+    }
+
+    @Override
+    public void forget(String noteId) {
+        // a version still queued here would bring the row back
+        pending.remove(noteId);
+        jdbcTemplate.update(DELETE, noteId);
+    }
+
+    private void sendPending() {
+        while (!pending.isEmpty()) {
+            send(takeBatch());
+        }
+    }
+
+    private void sendQuietly() {
+        try {
+            sendPending();
+        } catch (RuntimeException e) {
+            System.err.println("Error publishing document updates, retrying later: " + e.getMessage());
+        }
+    }
+
+    private List<DocumentUpdate> takeBatch() {
+        List<DocumentUpdate> batch = new ArrayList<>(Math.min(pending.size(), batchSize));
+        for (DocumentUpdate update : pending.values()) {
+            if (batch.size() == batchSize) {
+                break;
+            }
+            // a version published meanwhile stays queued for the next batch
+            if (pending.remove(update.noteId(), update)) {
+                batch.add(update);
+            }
+        }
+        return batch;
+    }
+
+    private void send(List<DocumentUpdate> batch) {
+        String[] payloads = new String[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            payloads[i] = payload(batch.get(i));
+        }
+
+        try {
+            jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                boolean autoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(false);
+                try (PreparedStatement upsert = connection.prepareStatement(UPSERT);
+                        PreparedStatement notify = connection.prepareStatement(NOTIFY)) {
+                    for (DocumentUpdate update : batch) {
+                        upsert.setString(1, update.noteId());
+                        upsert.setInt(2, update.version());
+                        upsert.setString(3, update.content());
+                        upsert.setString(4, update.origin());
+                        upsert.setString(5, objectMapper.writeValueAsString(update.lineage()));
+                        upsert.addBatch();
+                    }
+                    upsert.executeBatch();
+                    notify.setArray(1, connection.createArrayOf("text", payloads));
+                    notify.executeQuery().close();
+                    connection.commit();
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                } catch (JsonProcessingException e) {
+                    connection.rollback();
+                    throw new IllegalStateException("Could not serialize document update", e);
+                } finally {
+                    connection.setAutoCommit(autoCommit);
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            // requeued unless a newer version was published meanwhile
+            batch.forEach(this::publish);
+            throw e;
+        }
+    }
+
+    private String payload(DocumentUpdate update) {
+        try {
+            String inline = objectMapper.writeValueAsString(new Payload(update.noteId(), update.version(),
+                    update.origin(), update.lineage(), update.content()));
+            if (inline.getBytes(StandardCharsets.UTF_8).length <= MAX_PAYLOAD_BYTES) {
+                return inline;
+            }
+            return objectMapper.writeValueAsString(new Payload(update.noteId(), update.version(),
+                    update.origin(), update.lineage(), null));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize document update", e);
+        }
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                PGConnection notifications = connection.unwrap(PGConnection.class);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                while (running) {
+                    PGNotification[] received = notifications.getNotifications(500);
+                    if (received != null && received.length > 0) {
+                        deliver(connection, received);
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                System.err.println("Backplane listener failed, reconnecting: " + e.getMessage());
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void deliver(Connection connection, PGNotification[] received) throws SQLException {
+        List<Payload> payloads = new ArrayList<>(received.length);
+        List<String> withoutContent = new ArrayList<>();
+        for (PGNotification notification : received) {
+            Payload payload;
+            try {
+                payload = objectMapper.readValue(notification.getParameter(), Payload.class);
+            } catch (JsonProcessingException e) {
+                System.err.println("Dropping malformed document update: " + e.getMessage());
+                continue;
+            }
+            if (payload.origin().equals(nodeId)) {
+                continue;
+            }
+            payloads.add(payload);
+            if (payload.content() == null) {
+                withoutContent.add(payload.noteId());
+            }
+        }
+
+        Map<String, DocumentUpdate> stored = withoutContent.isEmpty() ? Map.of()
+                : selectLatest(connection, withoutContent);
+        for (Payload payload : payloads) {
+            // a stored row is at least as new as its notification
+            DocumentUpdate update = payload.content() != null
+                    ? new DocumentUpdate(payload.noteId(), payload.version(), payload.content(), payload.origin(),
+                            payload.lineage())
+                    : stored.get(payload.noteId());
+            if (update == null || update.origin().equals(nodeId)) {
+                continue;
+            }
+            for (Consumer<DocumentUpdate> consumer : listeners) {
+                try {
+                    consumer.accept(update);
+                } catch (RuntimeException e) {
+                    System.err.println("Error applying document update: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private Map<String, DocumentUpdate> selectLatest(Connection connection, List<String> noteIds)
+            throws SQLException {
+        Map<String, DocumentUpdate> latest = new HashMap<>();
+        try (PreparedStatement select = connection.prepareStatement(SELECT_LATEST)) {
+            select.setArray(1, connection.createArrayOf("varchar", noteIds.toArray()));
+            try (ResultSet rows = select.executeQuery()) {
+                while (rows.next()) {
+                    latest.put(rows.getString(1), new DocumentUpdate(rows.getString(1), rows.getInt(2),
+                            rows.getString(3), rows.getString(4), readLineage(rows.getString(5))));
+                }
+            }
+        }
+        return latest;
+    }
+
+    private Map<String, Integer> readLineage(String json) throws SQLException {
+        try {
+            return objectMapper.readValue(json, LINEAGE);
+        } catch (JsonProcessingException e) {
+            throw new SQLException("Malformed lineage in document_replication", e);
+        }
+    }
+
+    /**
+     * Stops listening and sends what is still queued.
+     */
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        listener.interrupt();
+        sender.shutdown();
+        readers.shutdown();
+        sendQuietly();
+    }
+
+    private record Payload(String noteId, int version, String origin, Map<String, Integer> lineage,
+            String content) {
+    }
+}
@@ -0,0 +1,41 @@
+package com.coledit.backend.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Map;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+/**
+ * Only lets other nodes open forwarded sessions: the handshake has to carry the shared
+ * {@code cluster.secret}. Without a secret configured nothing gets through.
+ */
+public class ClusterHandshakeInterceptor implements HandshakeInterceptor {
+
+    private final byte[] secret;
+
+    public ClusterHandshakeInterceptor(String secret) {
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response, WebSocketHandler wsHandler,
+            Map<String, Object> attributes) {
+        String presented = request.getHeaders().getFirst(SessionForwarder.SECRET_HEADER);
+        boolean allowed = secret.length > 0 && presented != null
+                && MessageDigest.isEqual(secret, presented.getBytes(StandardCharsets.UTF_8));
+        if (!allowed) {
+            response.setStatusCode(HttpStatus.FORBIDDEN);
+        }
+        return allowed;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response, WebSocketHandler wsHandler,
+            Exception exception) {
+    }
+}
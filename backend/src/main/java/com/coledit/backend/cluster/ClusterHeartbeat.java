@@ -0,0 +1,77 @@
+package com.coledit.backend.cluster;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Keeps the {@link ClusterMembership} up to date through the shared database. Every
+ * node writes its address and the time to {@code cluster_members} each interval and
+ * takes the nodes heard from within the timeout as the members. A node shutting down
+ * removes its row, so its documents move right away instead of after the timeout.
+ */
+@Component
+@ConditionalOnProperty(name = "cluster.membership", havingValue = "postgres")
+public class ClusterHeartbeat {
+
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS cluster_members ("
+            + "node_id VARCHAR(64) PRIMARY KEY, address VARCHAR(255) NOT NULL, last_seen TIMESTAMPTZ NOT NULL)";
+    private static final String BEAT = "INSERT INTO cluster_members (node_id, address, last_seen) VALUES (?, ?, now()) "
+            + "ON CONFLICT (node_id) DO UPDATE SET address = EXCLUDED.address, last_seen = EXCLUDED.last_seen";
+    private static final String SELECT_LIVE = "SELECT node_id, address FROM cluster_members "
+            + "WHERE last_seen > now() - make_interval(secs => ?)";
+    private static final String DELETE = "DELETE FROM cluster_members WHERE node_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ClusterMembership membership;
+    private final double timeoutSeconds;
+    private final ScheduledExecutorService scheduler;
+
+    @Autowired
+    public ClusterHeartbeat(JdbcTemplate jdbcTemplate, ClusterMembership membership,
+            @Value("${cluster.heartbeat-interval-ms:2000}") long intervalMillis,
+            @Value("${cluster.heartbeat-timeout-ms:6000}") long timeoutMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.membership = membership;
+        this.timeoutSeconds = timeoutMillis / 1000.0;
+        jdbcTemplate.execute(CREATE_TABLE);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("cluster-heartbeat").daemon().factory());
+        scheduler.scheduleWithFixedDelay(this::beatQuietly, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void beat() {
+        ClusterNode self = membership.getSelf();
+        jdbcTemplate.update(BEAT, self.id(), self.address());
+        List<ClusterNode> live = jdbcTemplate.query(SELECT_LIVE,
+                (rs, rowNum) -> new ClusterNode(rs.getString("node_id"), rs.getString("address")), timeoutSeconds);
+        membership.setMembers(live);
+    }
+
+    private void beatQuietly() {
+        try {
+            beat();
+        } catch (RuntimeException e) {
+            System.err.println("Error sending cluster heartbeat: " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        try {
+            jdbcTemplate.update(DELETE, membership.getSelf().id());
+        } catch (RuntimeException e) {
+            System.err.println("Error leaving the cluster: " + e.getMessage());
+        }
+    }
+}
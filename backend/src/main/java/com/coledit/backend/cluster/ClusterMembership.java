@@ -0,0 +1,129 @@
+package com.coledit.backend.cluster;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.coledit.backend.backplane.Backplane;
+import com.coledit.backend.backplane.LocalBackplane;
+
+/**
+ * The nodes serving documents together and the {@link HashRing} that makes one of them
+ * the owner of each document.
+ *
+ * The members start from {@code cluster.members}, a list of {@code id=address} entries,
+ * and are replaced whenever the membership source, such as {@link ClusterHeartbeat},
+ * sees nodes join or leave. Listeners get every new ring, which is how ownership moves
+ * during a rebalance. With the cluster disabled this node owns every document. An
+ * enabled cluster needs a backplane between its nodes, which hand their last versions
+ * over on it.
+ */
+@Component
+public class ClusterMembership {
+
+    private final ClusterNode self;
+    private final boolean enabled;
+    private final int virtualNodes;
+    private final List<Consumer<HashRing>> listeners = new CopyOnWriteArrayList<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile HashRing ring;
+
+    @Autowired
+    public ClusterMembership(Backplane backplane,
+            @Value("${cluster.enabled:false}") boolean enabled,
+            @Value("${cluster.address:}") String address,
+            @Value("${cluster.members:}") String members,
+            @Value("${cluster.virtual-nodes:128}") int virtualNodes) {
+        this(new ClusterNode(backplane.getNodeId(), address), enabled, parse(members), virtualNodes);
+        if (enabled && backplane instanceof LocalBackplane) {
+            throw new IllegalStateException(
+                    "cluster.enabled requires a backplane between the nodes, set document.backplane.type to postgres");
+        }
+    }
+
+    ClusterMembership(ClusterNode self, boolean enabled, Collection<ClusterNode> members, int virtualNodes) {
+        this.self = self;
+        this.enabled = enabled;
+        this.virtualNodes = virtualNodes;
+        setMembers(members);
+    }
+
+    /**
+     * Parses {@code id=address} entries separated by commas.
+     */
+    static List<ClusterNode> parse(String members) {
+        List<ClusterNode> nodes = new ArrayList<>();
+        for (String entry : members.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            int separator = entry.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Cluster member must be id=address: " + entry);
+            }
+            nodes.add(new ClusterNode(entry.substring(0, separator).trim(), entry.substring(separator + 1).trim()));
+        }
+        return nodes;
+    }
+
+    /**
+     * Replaces the members, this node always being one of them, and tells the listeners
+     * if that changes the ring.
+     */
+    public void setMembers(Collection<ClusterNode> members) {
+        HashRing updated;
+        lock.lock();
+        try {
+            Map<String, ClusterNode> nodes = new LinkedHashMap<>();
+            if (enabled) {
+                members.forEach(node -> nodes.put(node.id(), node));
+            }
+            nodes.putIfAbsent(self.id(), self);
+            updated = new HashRing(nodes.values(), virtualNodes);
+            if (ring != null && ring.getNodes().equals(updated.getNodes())) {
+                return;
+            }
+            ring = updated;
+        } finally {
+            lock.unlock();
+        }
+        System.out.println("Cluster members: " + updated.getNodes());
+        listeners.forEach(listener -> listener.accept(updated));
+    }
+
+    /**
+     * Registers a listener for the rings of later membership changes.
+     */
+    public void subscribe(Consumer<HashRing> listener) {
+        listeners.add(listener);
+    }
+
+    public ClusterNode owner(String documentId) {
+        return ring.owner(documentId);
+    }
+
+    public boolean isLocal(String documentId) {
+        return owner(documentId).id().equals(self.id());
+    }
+
+    public ClusterNode getSelf() {
+        return self;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public HashRing getRing() {
+        return ring;
+    }
+}
@@ -0,0 +1,8 @@
+package com.coledit.backend.cluster;
+
+/**
+ * A backend node: its id, the same as its backplane node id, and the base URL other
+ * nodes open WebSocket connections to, such as {@code ws://backend-2:8080}.
+ */
+public record ClusterNode(String id, String address) {
+}
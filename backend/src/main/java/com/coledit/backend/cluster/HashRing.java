@@ -0,0 +1,58 @@
+package com.coledit.backend.cluster;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Assigns document ids to nodes by consistent hashing. Each node is placed on the ring
+ * at {@code virtualNodes} points, and a document belongs to the node of the first point
+ * at or after its own hash. Adding or removing a node only moves the documents between
+ * its points and the preceding ones, about one in {@code n} of them.
+ */
+public final class HashRing {
+
+    private final NavigableMap<Long, ClusterNode> points = new TreeMap<>();
+    private final Set<ClusterNode> nodes;
+
+    public HashRing(Collection<ClusterNode> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("A ring needs at least one node");
+        }
+        this.nodes = Set.copyOf(nodes);
+        for (ClusterNode node : this.nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                points.put(hash(node.id() + "#" + i), node);
+            }
+        }
+    }
+
+    /**
+     * Returns the node owning a document.
+     */
+    public ClusterNode owner(String documentId) {
+        Map.Entry<Long, ClusterNode> point = points.ceilingEntry(hash(documentId));
+        return point != null ? point.getValue() : points.firstEntry().getValue();
+    }
+
+    public Set<ClusterNode> getNodes() {
+        return nodes;
+    }
+
+    // 64-bit FNV-1a, with the murmur3 finalizer to spread ids that differ in a few chars
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,254 @@
+package com.coledit.backend.cluster;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.WebSocketClient;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+
+import com.coledit.backend.rooms.SessionOutboxes;
+
+/**
+ * Proxies client sessions that reached a node not owning their document to the owner.
+ *
+ * For each such session a WebSocket connection is opened to the owner's internal
+ * endpoint, with the same document, query and sub-protocol, and frames are relayed both
+ * ways unchanged, so the owner serves it like any of its own clients. Frames sent before
+ * that connection is up wait for it. When the owner closes the connection, or stops
+ * owning the document, the client is closed with {@link CloseStatus#SERVICE_RESTARTED}
+ * and reconnects to whichever node owns the document then.
+ */
+@Component
+public class SessionForwarder {
+
+    public static final String INTERNAL_PATH = "/internal/document/";
+    static final String SECRET_HEADER = "X-Cluster-Secret";
+
+    private final Map<String, Link> links = new ConcurrentHashMap<>();
+
+    private final WebSocketClient client;
+    private final SessionOutboxes outboxes;
+    private final String secret;
+
+    @Autowired
+    public SessionForwarder(SessionOutboxes outboxes, @Value("${cluster.secret:}") String secret) {
+        this(new StandardWebSocketClient(), outboxes, secret);
+    }
+
+    SessionForwarder(WebSocketClient client, SessionOutboxes outboxes, String secret) {
+        this.client = client;
+        this.outboxes = outboxes;
+        this.secret = secret;
+    }
+
+    /**
+     * Starts forwarding a session to the owner of its document.
+     */
+    public void open(WebSocketSession session, String documentId, ClusterNode owner) {
+        Link link = new Link(session, documentId, owner);
+        links.put(session.getId(), link);
+
+        WebSocketHttpHeaders headers = new WebSocketHttpHeaders();
+        headers.add(SECRET_HEADER, secret);
+        String protocol = session.getAcceptedProtocol();
+        if (protocol != null && !protocol.isEmpty()) {
+            headers.setSecWebSocketProtocol(protocol);
+        }
+        String query = session.getUri().getQuery();
+        URI uri = URI.create(owner.address() + INTERNAL_PATH + documentId + (query != null ? "?" + query : ""));
+        client.execute(new Upstream(link), headers, uri).whenComplete(link::connected);
+    }
+
+    /**
+     * Relays a frame of a forwarded session, returning false if the session is served
+     * here.
+     */
+    public boolean forward(WebSocketSession session, WebSocketMessage<?> message) {
+        Link link = links.get(session.getId());
+        if (link == null) {
+            return false;
+        }
+        link.send(copy(message));
+        return true;
+    }
+
+    /**
+     * Stops forwarding a session that closed, returning false if it was served here.
+     */
+    public boolean close(WebSocketSession session) {
+        Link link = links.remove(session.getId());
+        if (link == null) {
+            return false;
+        }
+        outboxes.remove(session);
+        link.closeUpstream();
+        return true;
+    }
+
+    /**
+     * Closes the forwarded sessions whose document moved to another node.
+     */
+    public void rebalance(HashRing ring) {
+        for (Link link : links.values()) {
+            if (!ring.owner(link.documentId).id().equals(link.owner.id())) {
+                closeClient(link, CloseStatus.SERVICE_RESTARTED);
+            }
+        }
+    }
+
+    public int size() {
+        return links.size();
+    }
+
+    private void closeClient(Link link, CloseStatus status) {
+        links.remove(link.session.getId(), link);
+        outboxes.remove(link.session);
+        link.closeUpstream();
+        try {
+            link.session.close(status);
+        } catch (IOException e) {
+            System.err.println("Error closing forwarded session " + link.session.getId() + ": " + e.getMessage());
+        }
+    }
+
+    // the container may reuse a frame's buffer once its handler returns
+    private static WebSocketMessage<?> copy(WebSocketMessage<?> message) {
+        if (message instanceof BinaryMessage binary) {
+            ByteBuffer payload = binary.getPayload();
+            ByteBuffer copy = ByteBuffer.allocate(payload.remaining());
+            copy.put(payload.duplicate()).flip();
+            return new BinaryMessage(copy, binary.isLast());
+        }
+        return message;
+    }
+
+    private final class Link {
+
+        private final WebSocketSession session;
+        private final String documentId;
+        private final ClusterNode owner;
+
+        private final ReentrantLock lock = new ReentrantLock();
+        // guarded by the lock
+        private final List<WebSocketMessage<?>> pending = new ArrayList<>();
+        private WebSocketSession upstream;
+        private boolean closed;
+
+        Link(WebSocketSession session, String documentId, ClusterNode owner) {
+            this.session = session;
+            this.documentId = documentId;
+            this.owner = owner;
+        }
+
+        void connected(WebSocketSession connection, Throwable error) {
+            if (error != null) {
+                System.err.println("Error forwarding session " + session.getId() + " to node " + owner.id() + ": "
+                        + error.getMessage());
+                closeClient(this, CloseStatus.SERVICE_RESTARTED);
+                return;
+            }
+
+            lock.lock();
+            try {
+                upstream = connection;
+                if (!closed) {
+                    // the frames that waited go first, later ones queue behind the lock
+                    for (WebSocketMessage<?> message : pending) {
+                        upstream.sendMessage(message);
+                    }
+                    pending.clear();
+                    return;
+                }
+            } catch (IOException e) {
+                System.err.println("Error forwarding to node " + owner.id() + ": " + e.getMessage());
+            } finally {
+                lock.unlock();
+            }
+            closeUpstream();
+        }
+
+        void send(WebSocketMessage<?> message) {
+            lock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                if (upstream == null) {
+                    pending.add(message);
+                    return;
+                }
+                upstream.sendMessage(message);
+            } catch (IOException e) {
+                System.err.println("Error forwarding to node " + owner.id() + ": " + e.getMessage());
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void closeUpstream() {
+            WebSocketSession connection;
+            lock.lock();
+            try {
+                closed = true;
+                pending.clear();
+                connection = upstream;
+            } finally {
+                lock.unlock();
+            }
+            if (connection != null && connection.isOpen()) {
+                try {
+                    connection.close(CloseStatus.NORMAL);
+                } catch (IOException e) {
+                    System.err.println("Error closing connection to node " + owner.id() + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * The owner's side of a forwarded session: what it sends goes to the client.
+     */
+    private final class Upstream extends AbstractWebSocketHandler {
+
+        private final Link link;
+
+        Upstream(Link link) {
+            this.link = link;
+        }
+
+        @Override
+        protected void handleTextMessage(WebSocketSession upstream, TextMessage message) {
+            outboxes.send(link.session, message, false);
+        }
+
+        @Override
+        protected void handleBinaryMessage(WebSocketSession upstream, BinaryMessage message) {
+            outboxes.send(link.session, copy(message), false);
+        }
+
+        @Override
+        public void afterConnectionClosed(WebSocketSession upstream, CloseStatus status) {
+            if (links.get(link.session.getId()) == link) {
+                // the owner failed to load the note, or handed it off or went away
+                closeClient(link, status.getCode() == CloseStatus.SERVER_ERROR.getCode() ? status
+                        : CloseStatus.SERVICE_RESTARTED);
+            }
+        }
+    }
+}
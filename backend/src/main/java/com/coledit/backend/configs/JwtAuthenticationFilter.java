@@ -6,14 +6,12 @@ import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
-import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 import org.springframework.web.servlet.HandlerExceptionResolver;
 
+import com.coledit.backend.dtos.AuthenticatedPrincipal;
 import com.coledit.backend.helpers.FilterHelper;
 import com.coledit.backend.services.JwtService;
 
@@ -25,28 +23,27 @@ import jakarta.servlet.http.HttpServletResponse;
 /**
  * JwtAuthenticationFilter is a custom filter that processes JWT authentication
  * for incoming HTTP requests.
+ *
+ * It reads and verifies the token once per request and resolves the principal from its
+ * claims, without loading the user from the database. The principal is placed on the
+ * request for JwtAuthorizationFilter, which runs after it, and in the security context.
  */
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final HandlerExceptionResolver handlerExceptionResolver;
     private final JwtService jwtService;
-    private final UserDetailsService userDetailsService;
 
     /**
      * Constructor to initialize required services for JWT authentication.
      *
      * @param jwtService               the service for handling JWT operations
-     * @param userDetailsService       the service for loading user details
      * @param handlerExceptionResolver the resolver for handling exceptions
-     * @param refreshTokenService      the service for handling refresh tokens
      */
     public JwtAuthenticationFilter(
             JwtService jwtService,
-            UserDetailsService userDetailsService,
             HandlerExceptionResolver handlerExceptionResolver) {
         this.jwtService = jwtService;
-        this.userDetailsService = userDetailsService;
         this.handlerExceptionResolver = handlerExceptionResolver;
     }
 
@@ -75,19 +72,20 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
 
         try {
-            final String userEmail = jwtService.extractUsername(jwt);
+            // Validate the JWT once, the principal is null if it is invalid or expired
+            final AuthenticatedPrincipal principal = jwtService.resolvePrincipal(jwt);
 
             Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
 
-            // Validate the JWT and set authentication in the security context
-            if (userEmail != null && authentication == null) {
-                UserDetails userDetails = this.userDetailsService
-                        .loadUserByUsername(userEmail); 
-                if (jwtService.isTokenValid(jwt, userDetails)) {
+            if (principal != null) {
+                request.setAttribute(AuthenticatedPrincipal.REQUEST_ATTRIBUTE, principal);
+
+                // Set authentication in the security context
+                if (authentication == null) {
                     UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-                            userDetails,
+                            principal,
                             null,
-                            userDetails.getAuthorities());
+                            principal.authorities());
 
                     authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                     SecurityContextHolder.getContext().setAuthentication(authToken);
@@ -96,7 +94,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
             // Continue with the filter chain
             filterChain.doFilter(request, response);
-        } catch (ServletException | IOException | UsernameNotFoundException exception) {
+        } catch (ServletException | IOException exception) {
             handlerExceptionResolver.resolveException(request, response, null, exception);
         }
     }
@@ -6,8 +6,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
-import com.coledit.backend.helpers.FilterHelper;
-import com.coledit.backend.services.JwtService;
+import com.coledit.backend.dtos.AuthenticatedPrincipal;
 import com.coledit.backend.services.NoteService;
 import com.coledit.backend.wrappers.RequestWrapper;
 
@@ -17,14 +16,13 @@ import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
+// Runs after JwtAuthenticationFilter, whose principal tells who the request is from
 @Component
 public class JwtAuthorizationFilter extends OncePerRequestFilter {
 
-    private final JwtService jwtService;
     private final NoteService noteService;
 
-    public JwtAuthorizationFilter(JwtService jwtService, NoteService noteService) {
-        this.jwtService = jwtService;
+    public JwtAuthorizationFilter(NoteService noteService) {
         this.noteService = noteService;
     }
 
@@ -39,12 +37,8 @@ public class JwtAuthorizationFilter extends OncePerRequestFilter {
             return;
         }
 
-        String jwt = FilterHelper.getJwString(request);
-        String userEmail = null;
-
-        if (jwt != null) {
-            userEmail = jwtService.extractUsername(jwt);
-        }
+        AuthenticatedPrincipal principal = AuthenticatedPrincipal.of(request);
+        String userEmail = principal == null ? null : principal.email();
 
         // Proceeding with authorization checks based on the request method and URI
         switch (request.getMethod()) {
@@ -70,7 +70,8 @@ public class SecurityConfiguration {
                 .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class) // JWT
                                                                                                       // Authentication
                                                                                                       // Filter
-                .addFilterBefore(jwtAuthorizationFilter, UsernamePasswordAuthenticationFilter.class)
+                // The authorization filter uses the principal the authentication filter resolved
+                .addFilterAfter(jwtAuthorizationFilter, JwtAuthenticationFilter.class)
                 .cors(c -> c.configurationSource(corsConfigurationSource())) // Configures CORS
                 .requiresChannel(channel -> channel
                         .anyRequest()); // Requires HTTPS for all requests
@@ -1,5 +1,8 @@
 package com.coledit.backend.configs;
 
+import com.coledit.backend.cluster.ClusterHandshakeInterceptor;
+import com.coledit.backend.cluster.ClusterMembership;
+import com.coledit.backend.cluster.SessionForwarder;
 import com.coledit.backend.handlers.SocketConnectionHandler;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -19,11 +22,16 @@ public class WebSocketConfig
     @Value("${custom.hostname}")
     private String hostname;
 
+    @Value("${cluster.secret:}")
+    private String clusterSecret;
+
     private final SocketConnectionHandler socketConnectionHandler;
+    private final ClusterMembership clusterMembership;
 
     @Autowired // Injects the SocketConnectionHandler bean managed by Spring
-    public WebSocketConfig(SocketConnectionHandler socketConnectionHandler) {
+    public WebSocketConfig(SocketConnectionHandler socketConnectionHandler, ClusterMembership clusterMembership) {
         this.socketConnectionHandler = socketConnectionHandler;
+        this.clusterMembership = clusterMembership;
     }
 
     // Overriding a method which register the socket
@@ -35,5 +43,14 @@ public class WebSocketConfig
                 .addHandler(socketConnectionHandler, "/document/*")
                 .setAllowedOrigins(
                         "https://" + hostname);
+
+        // sessions other nodes forward to this one, which come with the cluster secret
+        // instead of a browser origin
+        if (clusterMembership.isEnabled()) {
+            webSocketHandlerRegistry
+                    .addHandler(socketConnectionHandler, SessionForwarder.INTERNAL_PATH + "*")
+                    .setAllowedOriginPatterns("*")
+                    .addInterceptors(new ClusterHandshakeInterceptor(clusterSecret));
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,35 @@
+package com.coledit.backend.dtos;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * The user a request's JWT token was issued to, as read from the token's claims once per
+ * request by {@code JwtAuthenticationFilter}. It is placed on the request, and in the
+ * security context, for the filters and handlers that follow.
+ *
+ * The user id is null for tokens issued before it was added to the claims.
+ */
+public record AuthenticatedPrincipal(UUID userId, String email, List<String> roles) {
+
+    public static final String REQUEST_ATTRIBUTE = AuthenticatedPrincipal.class.getName();
+
+    public AuthenticatedPrincipal {
+        roles = List.copyOf(roles);
+    }
+
+    /**
+     * Returns the principal resolved for the request, or null if it has no valid token.
+     */
+    public static AuthenticatedPrincipal of(HttpServletRequest request) {
+        return (AuthenticatedPrincipal) request.getAttribute(REQUEST_ATTRIBUTE);
+    }
+
+    public List<SimpleGrantedAuthority> authorities() {
+        return roles.stream().map(SimpleGrantedAuthority::new).toList();
+    }
+}
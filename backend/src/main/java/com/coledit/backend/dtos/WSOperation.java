@@ -0,0 +1,17 @@
+package com.coledit.backend.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class WSOperation {
+    private String type;
+    private Integer position;
+    private String text;
+    private Integer length;
+}
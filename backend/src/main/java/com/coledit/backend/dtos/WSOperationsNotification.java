@@ -0,0 +1,18 @@
+package com.coledit.backend.dtos;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class WSOperationsNotification {
+    private String type;
+    private Integer version;
+    private List<WSOperation> ops;
+}
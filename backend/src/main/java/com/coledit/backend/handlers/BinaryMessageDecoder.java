@@ -0,0 +1,42 @@
+package com.coledit.backend.handlers;
+
+import java.nio.ByteBuffer;
+
+import com.coledit.backend.helpers.BinaryFrames;
+
+/**
+ * Decodes client frames of the binary sub-protocol, see {@link BinaryFrames}, into the
+ * same {@link SocketMessage} the JSON frames are decoded into. A heartbeat is recognised
+ * from its first byte.
+ */
+final class BinaryMessageDecoder {
+
+    /**
+     * Refills {@code message} from a frame.
+     *
+     * @throws IllegalArgumentException if the frame is truncated or malformed
+     */
+    void decode(ByteBuffer frame, SocketMessage message) {
+        message.reset();
+        if (!frame.hasRemaining()) {
+            return;
+        }
+
+        switch (frame.get()) {
+            case BinaryFrames.HEARTBEAT -> message.type = SocketMessage.Type.HEARTBEAT;
+            case BinaryFrames.UPDATE_NOTE -> {
+                message.type = SocketMessage.Type.UPDATE_NOTE;
+                message.version = BinaryFrames.readVarint(frame);
+                message.hasVersion = true;
+                message.payload = BinaryFrames.readText(frame);
+            }
+            case BinaryFrames.UPDATE_OPS -> {
+                message.type = SocketMessage.Type.UPDATE_OPS;
+                message.version = BinaryFrames.readVarint(frame);
+                message.hasVersion = true;
+                message.operations = BinaryFrames.readOperations(frame);
+            }
+            default -> message.type = SocketMessage.Type.UNKNOWN;
+        }
+    }
+}
@@ -1,67 +1,82 @@
 package com.coledit.backend.handlers;
 
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
-import org.springframework.web.socket.WebSocketMessage;
-import org.springframework.web.socket.WebSocketSession;
-import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.SubProtocolCapable;
 import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
 
-import com.coledit.backend.dtos.WSUpdateNotification;
-import com.coledit.backend.helpers.StringMerger;
-import com.coledit.backend.services.NoteService;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.coledit.backend.cluster.ClusterMembership;
+import com.coledit.backend.cluster.SessionForwarder;
+import com.coledit.backend.helpers.BinaryFrames;
+import com.coledit.backend.metrics.CollaborationMetrics;
+import com.coledit.backend.rooms.DocumentRoomRegistry;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 // Socket-Connection Configuration class 
+// Clients speak JSON text frames, or binary frames when they negotiate the
+// BinaryFrames.SUB_PROTOCOL sub-protocol during the handshake.
+// A document is served by the node owning it on the cluster's hash ring; sessions
+// reaching another node are forwarded to the owner unchanged.
 @Component
-public class SocketConnectionHandler extends TextWebSocketHandler {
+public class SocketConnectionHandler extends AbstractWebSocketHandler implements SubProtocolCapable {
 
-    private final Map<String, List<WebSocketSession>> documentSessions = new ConcurrentHashMap<>();
+    // clients connecting with ?protocol=ops exchange operations instead of full content
+    private static final String OPERATIONS_PROTOCOL = "protocol=ops";
+    // reconnecting clients send ?since=<version>&hash=<content hash> to get only what they missed
+    private static final String SINCE_PARAMETER = "since";
+    private static final String HASH_PARAMETER = "hash";
+    // session attribute holding the message each frame of the session is decoded into
+    private static final String DECODED_MESSAGE = "decodedMessage";
 
-    private final Map<String, String> latestDocumentContent = new ConcurrentHashMap<>();
-    private final Map<String, List<String>> latestDocumentVariants = new ConcurrentHashMap<>();
-    private final Map<String, Integer> documentVersionCounter = new ConcurrentHashMap<>();
+    private final DocumentRoomRegistry documentRooms;
+    private final ClusterMembership membership;
+    private final SessionForwarder forwarder;
+    private final CollaborationMetrics metrics;
 
-    private final ObjectMapper objectMapper;
-    private NoteService noteService;
+    private final SocketMessageDecoder decoder;
+    private final BinaryMessageDecoder binaryDecoder = new BinaryMessageDecoder();
 
     @Autowired
-    public SocketConnectionHandler(NoteService noteService, ObjectMapper objectMapper) {
-        this.noteService = noteService;
-        this.objectMapper = objectMapper;
+    public SocketConnectionHandler(DocumentRoomRegistry documentRooms, ObjectMapper objectMapper,
+            ClusterMembership membership, SessionForwarder forwarder, CollaborationMetrics metrics) {
+        this.documentRooms = documentRooms;
+        this.membership = membership;
+        this.forwarder = forwarder;
+        this.metrics = metrics;
+        this.decoder = new SocketMessageDecoder(objectMapper.getFactory());
+
+        // when ownership moves, the sessions of the moved documents reconnect to their
+        // new owner, which loads the last version from the backplane
+        membership.subscribe(ring -> {
+            documentRooms.handOff(documentId -> !membership.isLocal(documentId));
+            forwarder.rebalance(ring);
+        });
     }
 
     // This method is executed when client tries to connect
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
         super.afterConnectionEstablished(session);
+        metrics.sessionOpened();
 
         String documentId = getDocumentId(session);
-        documentSessions.computeIfAbsent(documentId, k -> Collections.synchronizedList(new ArrayList<>())).add(session);
-        List<WebSocketSession> sessions = documentSessions.get(documentId);
-
-        String newContent = latestDocumentContent.get(documentId);
-        String jsonNotification = createJsonNotification(newContent, documentVersionCounter.get(documentId));
-
-        if (sessions != null && newContent != null) {
-            for (WebSocketSession webSocketSession : sessions) {
-                if (session == webSocketSession) {
-                    webSocketSession.sendMessage(new TextMessage(jsonNotification));
-                    break;
-                }
-            }
+        // sessions forwarded by another node are served here even if the rings disagree
+        // for a moment, so a session is never forwarded twice
+        if (!isForwardedHere(session) && !membership.isLocal(documentId)) {
+            forwarder.open(session, documentId, membership.owner(documentId));
+            return;
         }
 
+        // the room sends the latest content to the new session once it has been merged
+        documentRooms.room(documentId).join(session, isOperationsSession(session), isBinarySession(session),
+                getIntParameter(session, SINCE_PARAMETER, -1), getIntParameter(session, HASH_PARAMETER, 0));
+
         // System.out.println("Session " + session.getId() + " connected to document " +
         // documentId);
     }
@@ -69,154 +84,113 @@ public class SocketConnectionHandler extends TextWebSocketHandler {
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
         super.afterConnectionClosed(session, status);
+        metrics.sessionClosed();
 
-        String documentId = getDocumentId(session);
-        List<WebSocketSession> sessions = documentSessions.get(documentId);
-
-        if (sessions != null) {
-            sessions.remove(session);
-            if (sessions.isEmpty()) {
-                String latestContent = latestDocumentContent.get(documentId);
-                if (latestContent != null) {
-                    noteService.updateNoteContent(documentId, latestContent);
-                }
-                latestDocumentContent.remove(documentId);
-                documentSessions.remove(documentId);
-                Integer currentValue = documentVersionCounter.get(documentId);
-
-                if (currentValue != null) {
-                    documentVersionCounter.put(documentId, 0);
-                }
-            }
+        if (forwarder.close(session)) {
+            return;
         }
+        // the last session to leave makes the room persist the content and close
+        documentRooms.leave(getDocumentId(session), session);
 
         // System.out.println("Session " + session.getId() + " disconnected from
         // document " + documentId);
     }
 
     @Override
-    public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
-        super.handleMessage(session, message);
-        JsonNode jsonMessage = objectMapper.readTree(message.getPayload().toString());
-
-        if (isHeartbeatMessage(jsonMessage)) {
-            return; // Do nothing for heartbeat type
-        }
-
-        String newContent = extractNoteContent(jsonMessage);
-        if (newContent == null) {
-            return; // Early return if the message doesn't have the expected structure
-        }
-
-        Integer version = extractNoteVersion(jsonMessage);
-        if (version == null) {
-            return; // Early return if the message doesn't have the expected structure
-        }
-
-        String documentId = getDocumentId(session);
-        List<String> latestVariants = latestDocumentVariants.computeIfAbsent(documentId,
-                k -> Collections.synchronizedList(new ArrayList<>()));
+    public List<String> getSubProtocols() {
+        return List.of(BinaryFrames.SUB_PROTOCOL);
+    }
 
-        // check if the document is the next version awaited by the server
-        if (version == documentVersionCounter.getOrDefault(documentId, 0) + 1) {
-            latestVariants.add(newContent);
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        if (forwarder.forward(session, message)) {
+            return;
         }
+        SocketMessage decoded = decodedMessage(session);
+        decoder.decode(message.getPayload(), decoded);
+        dispatch(session, decoded);
+    }
 
-        synchronized (latestVariants) {
-            // Only a thread that provided the next expected version can broadcast the
-            // merged changes.
-            // This ensures that updates are processed in the correct order.
-            if (version == documentVersionCounter.getOrDefault(documentId, 0) + 1) {
-                // Increment the current expected version.
-                // This prevents other threads from adding outdated versions to the
-                // latestVariants list.
-                // It also ensures that older versions won't be used in future calculations.
-                // This also prevents a race condition between latestVariants.clear() and
-                // latestVariants.add(newContent).
-                Integer currentValue = documentVersionCounter.getOrDefault(documentId, 0);
-                documentVersionCounter.put(documentId, currentValue + 1);
-
-                // Calculate the merged version based on the latest variants.
-                String latestMergedVersion = StringMerger.mergeVariants(
-                        latestDocumentContent.getOrDefault(documentId, ""),
-                        latestVariants);
-
-                // Update the last tracked value of the content to be the merged version.
-                latestDocumentContent.put(documentId, latestMergedVersion);
-
-                // Broadcast the update to notify other components of the new version.
-                broadcastUpdateNotification(session, documentId, latestMergedVersion);
-                // Clear the latestVariants list to prepare for the next set of updates.
-                latestVariants.clear();
-            }
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) {
+        if (forwarder.forward(session, message)) {
+            return;
         }
+        SocketMessage decoded = decodedMessage(session);
+        binaryDecoder.decode(message.getPayload(), decoded);
+        dispatch(session, decoded);
     }
 
-    private boolean isHeartbeatMessage(JsonNode jsonMessage) {
-        return jsonMessage.has("type") && jsonMessage.get("type").asText().equals("heartbeat");
+    private SocketMessage decodedMessage(WebSocketSession session) {
+        return (SocketMessage) session.getAttributes().computeIfAbsent(DECODED_MESSAGE, key -> new SocketMessage());
     }
 
-    private String extractNoteContent(JsonNode jsonMessage) {
-        if (jsonMessage.has("type") && jsonMessage.has("payload") &&
-                jsonMessage.get("type").asText().equals("updateNote")) {
-            try {
-                JsonNode payloadNode = jsonMessage.get("payload");
-                return objectMapper.convertValue(payloadNode, String.class);
-
-            } catch (RuntimeException e) {
-                System.err.println("Error converting payload to String object: " + e.getMessage());
+    private void dispatch(WebSocketSession session, SocketMessage decoded) {
+        switch (decoded.getType()) {
+            case HEARTBEAT -> {
+                // Do nothing for heartbeat type
             }
-        } else {
-            System.out.println("Received message does not have the expected 'updateNote' type.");
+            case UPDATE_OPS -> handleOperationsMessage(session, decoded);
+            case UPDATE_NOTE -> handleUpdateMessage(session, decoded);
+            case UNKNOWN -> System.err.println("Received message of unknown type from session " + session.getId());
         }
-        return null;
     }
 
-    private Integer extractNoteVersion(JsonNode jsonMessage) {
-        if (jsonMessage.has("type") && jsonMessage.has("version") &&
-                jsonMessage.get("type").asText().equals("updateNote")) {
-            try {
-                JsonNode payloadNode = jsonMessage.get("version");
-                return objectMapper.convertValue(payloadNode, Integer.class);
-
-            } catch (RuntimeException e) {
-                System.err.println("Error converting version to Integer object: " + e.getMessage());
-            }
-        } else {
-            System.out.println("Received message does not have the expected 'updateNote' type.");
+    private void handleUpdateMessage(WebSocketSession session, SocketMessage message) {
+        if (message.getPayload() == null || message.getVersion() == null) {
+            System.err.println("Received malformed 'updateNote' message from session " + session.getId());
+            return;
         }
-        return null;
+
+        // Ordering, version checks, merging and broadcasting happen on the document's own
+        // lane, this thread only queues the update.
+        documentRooms.room(getDocumentId(session)).update(session, message.getPayload(), message.getVersion());
     }
 
-    private void broadcastUpdateNotification(WebSocketSession session, String documentId, String newContent)
-            throws IOException {
-        List<WebSocketSession> sessions = documentSessions.get(documentId);
+    private void handleOperationsMessage(WebSocketSession session, SocketMessage message) {
+        if (message.getVersion() == null || message.getOperations() == null) {
+            System.err.println("Received malformed 'updateOps' message from session " + session.getId());
+            return;
+        }
+
+        documentRooms.room(getDocumentId(session)).updateOperations(session, message.getVersion(),
+                message.getOperations());
+    }
 
-        String jsonNotification = createJsonNotification(newContent,
-                documentVersionCounter.getOrDefault(documentId, 0));
+    private boolean isOperationsSession(WebSocketSession session) {
+        String query = session.getUri().getQuery();
+        return query != null && List.of(query.split("&")).contains(OPERATIONS_PROTOCOL);
+    }
 
-        if (sessions != null) {
-            for (WebSocketSession webSocketSession : sessions) {
-                if (session != webSocketSession) {
-                    webSocketSession.sendMessage(new TextMessage(jsonNotification));
+    private int getIntParameter(WebSocketSession session, String name, int defaultValue) {
+        String query = session.getUri().getQuery();
+        if (query == null) {
+            return defaultValue;
+        }
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith(name + "=")) {
+                try {
+                    return Integer.parseInt(parameter.substring(name.length() + 1));
+                } catch (NumberFormatException e) {
+                    System.err.println("Ignoring malformed '" + name + "' parameter from session " + session.getId());
+                    return defaultValue;
                 }
             }
         }
+        return defaultValue;
     }
 
-    private String createJsonNotification(String newContent, Integer version) throws JsonProcessingException {
-        WSUpdateNotification notification = WSUpdateNotification.builder()
-                .type("updateNotification")
-                .payload(newContent)
-                .version(version)
-                .build();
+    private boolean isBinarySession(WebSocketSession session) {
+        return BinaryFrames.SUB_PROTOCOL.equals(session.getAcceptedProtocol());
+    }
 
-        return objectMapper.writeValueAsString(notification);
+    private boolean isForwardedHere(WebSocketSession session) {
+        return session.getUri().getPath().startsWith(SessionForwarder.INTERNAL_PATH);
     }
 
     private String getDocumentId(WebSocketSession session) {
-        // Extract document ID from the session URI
-        String uri = session.getUri().toString();
-        return uri.substring(uri.lastIndexOf('/') + 1);
+        // Extract document ID from the session URI, ignoring the query
+        String path = session.getUri().getPath();
+        return path.substring(path.lastIndexOf('/') + 1);
     }
 }
@@ -0,0 +1,56 @@
+package com.coledit.backend.handlers;
+
+import java.util.List;
+
+import com.coledit.backend.helpers.TextOperation;
+
+/**
+ * A decoded client frame. One instance is kept per session and refilled for each frame,
+ * which is safe as a session's frames are handled one at a time.
+ */
+final class SocketMessage {
+
+    enum Type {
+        HEARTBEAT, UPDATE_NOTE, UPDATE_OPS, UNKNOWN;
+
+        static Type of(String type) {
+            return switch (type) {
+                case "heartbeat" -> HEARTBEAT;
+                case "updateNote" -> UPDATE_NOTE;
+                case "updateOps" -> UPDATE_OPS;
+                default -> UNKNOWN;
+            };
+        }
+    }
+
+    Type type;
+    String payload;
+    int version;
+    boolean hasVersion;
+    // null when missing or malformed
+    List<TextOperation> operations;
+
+    void reset() {
+        type = Type.UNKNOWN;
+        payload = null;
+        version = 0;
+        hasVersion = false;
+        operations = null;
+    }
+
+    Type getType() {
+        return type;
+    }
+
+    String getPayload() {
+        return payload;
+    }
+
+    Integer getVersion() {
+        return hasVersion ? version : null;
+    }
+
+    List<TextOperation> getOperations() {
+        return operations;
+    }
+}
@@ -0,0 +1,132 @@
+package com.coledit.backend.handlers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.coledit.backend.helpers.TextOperation;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Decodes client frames in one pass over Jackson's token stream, without building a
+ * tree. The fields are read in the order they arrive and decoding stops as soon as the
+ * type is known to be a heartbeat or one the server does not handle, so heartbeats, which
+ * clients send first thing in the frame, cost a few tokens.
+ */
+final class SocketMessageDecoder {
+
+    private final JsonFactory jsonFactory;
+
+    SocketMessageDecoder(JsonFactory jsonFactory) {
+        this.jsonFactory = jsonFactory;
+    }
+
+    /**
+     * Refills {@code message} from a frame. Fields of the wrong JSON type are left unset.
+     *
+     * @throws IOException if the frame is not valid JSON up to where decoding stopped
+     */
+    void decode(String frame, SocketMessage message) throws IOException {
+        message.reset();
+        try (JsonParser parser = jsonFactory.createParser(frame)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return;
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "type" -> {
+                        message.type = value == JsonToken.VALUE_STRING
+                                ? SocketMessage.Type.of(parser.getText())
+                                : SocketMessage.Type.UNKNOWN;
+                        if (message.type == SocketMessage.Type.HEARTBEAT
+                                || message.type == SocketMessage.Type.UNKNOWN) {
+                            return;
+                        }
+                    }
+                    case "payload" -> message.payload = readText(parser, value);
+                    case "version" -> {
+                        Integer version = readInt(parser, value);
+                        if (version != null) {
+                            message.version = version;
+                            message.hasVersion = true;
+                        }
+                    }
+                    case "ops" -> message.operations = readOperations(parser, value);
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    private static List<TextOperation> readOperations(JsonParser parser, JsonToken value) throws IOException {
+        if (value != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+
+        List<TextOperation> operations = new ArrayList<>();
+        boolean malformed = false;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+            TextOperation operation = token == JsonToken.START_OBJECT ? readOperation(parser) : null;
+            if (operation == null) {
+                parser.skipChildren();
+                malformed = true;
+            } else {
+                operations.add(operation);
+            }
+        }
+        // a single bad operation drops the message, applying the rest would diverge
+        return malformed ? null : operations;
+    }
+
+    private static TextOperation readOperation(JsonParser parser) throws IOException {
+        String type = null;
+        String text = null;
+        Integer position = null;
+        Integer length = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "type" -> type = readText(parser, value);
+                case "text" -> text = readText(parser, value);
+                case "position" -> position = readInt(parser, value);
+                case "length" -> length = readInt(parser, value);
+                default -> parser.skipChildren();
+            }
+        }
+
+        if (position == null || type == null) {
+            return null;
+        }
+        if (type.equals("insert") && text != null) {
+            return TextOperation.insert(position, text);
+        }
+        if (type.equals("delete") && length != null) {
+            return TextOperation.delete(position, length);
+        }
+        return null;
+    }
+
+    private static String readText(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_STRING) {
+            return parser.getText();
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    private static Integer readInt(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NUMBER_INT && parser.getNumberType() == JsonParser.NumberType.INT) {
+            return parser.getIntValue();
+        }
+        parser.skipChildren();
+        return null;
+    }
+}
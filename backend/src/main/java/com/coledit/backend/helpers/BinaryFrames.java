@@ -0,0 +1,199 @@
+package com.coledit.backend.helpers;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Encoding of the binary WebSocket sub-protocol.
+ *
+ * A frame starts with its type byte followed by the version as an unsigned varint
+ * (LEB128), except for heartbeats which are the type byte alone. Text is a varint byte
+ * length and that many UTF-8 bytes. Update frames carry one text; operation frames carry
+ * a varint count of operations, each a kind byte, a varint position and either a text
+ * for an insert or a varint length for a delete. Acks carry the version only.
+ */
+public final class BinaryFrames {
+
+    public static final String SUB_PROTOCOL = "coledit.binary.v1";
+
+    public static final byte HEARTBEAT = 0;
+    public static final byte UPDATE_NOTE = 1;
+    public static final byte UPDATE_OPS = 2;
+    public static final byte UPDATE_NOTIFICATION = 3;
+    public static final byte ACK = 4;
+    public static final byte OPS_NOTIFICATION = 5;
+
+    private static final byte INSERT = 0;
+    private static final byte DELETE = 1;
+
+    private BinaryFrames() {
+    }
+
+    /**
+     * Encodes a frame carrying the full content, an update or an update notification.
+     */
+    public static byte[] encodeContent(byte type, String content, int version) {
+        // sized exactly, a large content is copied once after its UTF-8 encoding
+        byte[] utf8 = content.getBytes(StandardCharsets.UTF_8);
+        Writer writer = new Writer(1 + varintSize(version) + varintSize(utf8.length) + utf8.length);
+        writer.writeByte(type);
+        writer.writeVarint(version);
+        writer.writeBytes(utf8);
+        return writer.toByteArray();
+    }
+
+    public static byte[] encodeAck(int version) {
+        Writer writer = new Writer(6);
+        writer.writeByte(ACK);
+        writer.writeVarint(version);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Encodes a frame carrying operations, sent by clients or broadcast to them.
+     */
+    public static byte[] encodeOperations(byte type, List<TextOperation> operations, int version) {
+        Writer writer = new Writer(16 + 8 * operations.size());
+        writer.writeByte(type);
+        writer.writeVarint(version);
+        writer.writeVarint(operations.size());
+        for (TextOperation operation : operations) {
+            writer.writeByte(operation.isInsert() ? INSERT : DELETE);
+            writer.writeVarint(operation.position());
+            if (operation.isInsert()) {
+                writer.writeText(operation.text());
+            } else {
+                writer.writeVarint(operation.length());
+            }
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * Reads an unsigned varint of at most 32 bits.
+     *
+     * @throws IllegalArgumentException if the frame ends or the varint is too long
+     */
+    public static int readVarint(ByteBuffer frame) {
+        try {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = frame.get();
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Frame ends inside a varint");
+        }
+        throw new IllegalArgumentException("Varint longer than 32 bits");
+    }
+
+    /**
+     * Reads a varint length followed by that many UTF-8 bytes.
+     *
+     * @throws IllegalArgumentException if the frame ends before the text does
+     */
+    public static String readText(ByteBuffer frame) {
+        int length = readVarint(frame);
+        if (length < 0 || length > frame.remaining()) {
+            throw new IllegalArgumentException("Text of " + length + " bytes in a frame with "
+                    + frame.remaining() + " left");
+        }
+        String text;
+        if (frame.hasArray()) {
+            text = new String(frame.array(), frame.arrayOffset() + frame.position(), length, StandardCharsets.UTF_8);
+        } else {
+            byte[] bytes = new byte[length];
+            frame.get(frame.position(), bytes);
+            text = new String(bytes, StandardCharsets.UTF_8);
+        }
+        frame.position(frame.position() + length);
+        return text;
+    }
+
+    /**
+     * Reads the operations of an operation frame after its version.
+     *
+     * @throws IllegalArgumentException if an operation is malformed or the frame ends
+     */
+    public static List<TextOperation> readOperations(ByteBuffer frame) {
+        int count = readVarint(frame);
+        // every operation takes at least three bytes, a bogus count cannot allocate much
+        if (count < 0 || count > frame.remaining() / 3) {
+            throw new IllegalArgumentException("Frame cannot hold " + count + " operations");
+        }
+        TextOperation[] operations = new TextOperation[count];
+        for (int i = 0; i < count; i++) {
+            byte kind = frame.hasRemaining() ? frame.get() : -1;
+            int position = readVarint(frame);
+            operations[i] = switch (kind) {
+                case INSERT -> TextOperation.insert(position, readText(frame));
+                case DELETE -> TextOperation.delete(position, readVarint(frame));
+                default -> throw new IllegalArgumentException("Unknown operation kind " + kind);
+            };
+        }
+        return Arrays.asList(operations);
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * A growable byte array, sized up front for the common case.
+     */
+    private static final class Writer {
+
+        private byte[] bytes;
+        private int length;
+
+        Writer(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        void writeByte(byte b) {
+            ensure(1);
+            bytes[length++] = b;
+        }
+
+        void writeVarint(int value) {
+            ensure(varintSize(value));
+            while ((value & ~0x7F) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        void writeText(String text) {
+            writeBytes(text.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void writeBytes(byte[] utf8) {
+            writeVarint(utf8.length);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, bytes, length, utf8.length);
+            length += utf8.length;
+        }
+
+        byte[] toByteArray() {
+            return length == bytes.length ? bytes : Arrays.copyOf(bytes, length);
+        }
+
+        private void ensure(int more) {
+            if (length + more > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + more));
+            }
+        }
+    }
+}
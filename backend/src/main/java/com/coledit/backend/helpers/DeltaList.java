@@ -0,0 +1,116 @@
+package com.coledit.backend.helpers;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of diff deltas stored as packed primitive records.
+ * Each delta replaces {@code sourceLength} chars of the base document starting at
+ * {@code sourcePosition} with {@code targetLength} chars of variant {@code variant}
+ * starting at {@code targetPosition}. Keeping them in one int[] avoids a delta,
+ * chunk and boxed list per edit on the merge path.
+ */
+public final class DeltaList {
+
+    private static final int STRIDE = 5;
+
+    private int[] data;
+    private int size;
+
+    public DeltaList() {
+        this(8);
+    }
+
+    public DeltaList(int initialCapacity) {
+        this.data = new int[Math.max(1, initialCapacity) * STRIDE];
+    }
+
+    public void add(int sourcePosition, int sourceLength, int targetPosition, int targetLength, int variant) {
+        int offset = size * STRIDE;
+        if (offset + STRIDE > data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        data[offset] = sourcePosition;
+        data[offset + 1] = sourceLength;
+        data[offset + 2] = targetPosition;
+        data[offset + 3] = targetLength;
+        data[offset + 4] = variant;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int sourcePosition(int index) {
+        return data[index * STRIDE];
+    }
+
+    public int sourceLength(int index) {
+        return data[index * STRIDE + 1];
+    }
+
+    public int sourceEnd(int index) {
+        return data[index * STRIDE] + data[index * STRIDE + 1];
+    }
+
+    public int targetPosition(int index) {
+        return data[index * STRIDE + 2];
+    }
+
+    public int targetLength(int index) {
+        return data[index * STRIDE + 3];
+    }
+
+    public int variant(int index) {
+        return data[index * STRIDE + 4];
+    }
+
+    /**
+     * Reverses the order of the deltas from {@code fromIndex} to the end of the
+     * list. Used by the diff, which discovers deltas back to front.
+     */
+    void reverseFrom(int fromIndex) {
+        for (int i = fromIndex, j = size - 1; i < j; i++, j--) {
+            int a = i * STRIDE;
+            int b = j * STRIDE;
+            for (int f = 0; f < STRIDE; f++) {
+                int tmp = data[a + f];
+                data[a + f] = data[b + f];
+                data[b + f] = tmp;
+            }
+        }
+    }
+
+    /**
+     * Moves the deltas from {@code fromIndex} to the end of the list by the given
+     * offsets. Used when only a window of the documents was diffed.
+     */
+    void shift(int fromIndex, int sourceOffset, int targetOffset) {
+        for (int i = fromIndex; i < size; i++) {
+            data[i * STRIDE] += sourceOffset;
+            data[i * STRIDE + 2] += targetOffset;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append("[source ").append(sourcePosition(i)).append('+').append(sourceLength(i))
+                    .append(", target ").append(targetPosition(i)).append('+').append(targetLength(i))
+                    .append(", variant ").append(variant(i)).append(']');
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,127 @@
+package com.coledit.backend.helpers;
+
+import java.util.Arrays;
+
+/**
+ * Myers' O(ND) difference algorithm working directly on char arrays.
+ *
+ * The forward pass and its tie-breaking mirror the java-diff-utils implementation the
+ * merger used before, so the produced deltas (and therefore the merge results) stay
+ * the same. Instead of a linked list of path nodes, the furthest reaching x of every
+ * diagonal is kept per round in one int[] and the path is rebuilt backwards from it.
+ */
+public final class MyersDiff {
+
+    private static final int INITIAL_REACH = 16;
+
+    private MyersDiff() {
+    }
+
+    /**
+     * Appends to {@code out} the deltas turning {@code source[sourceFrom, sourceTo)} into
+     * {@code target[targetFrom, targetTo)}, ordered by source position. Positions
+     * written to {@code out} are absolute indices into the two arrays.
+     */
+    public static void diff(char[] source, int sourceFrom, int sourceTo,
+            char[] target, int targetFrom, int targetTo,
+            int variant, DeltaList out) {
+        final int n = sourceTo - sourceFrom;
+        final int m = targetTo - targetFrom;
+        final int max = n + m;
+
+        // v[offset + k] holds the furthest x reached on diagonal k = x - y; it grows with
+        // the edit distance instead of being sized for the whole documents up front
+        int reach = Math.min(max, INITIAL_REACH);
+        int offset = reach + 1;
+        int[] v = new int[2 * reach + 3];
+        // trace keeps, for every finished round d, the x of diagonals -d, -d + 2, ..., d
+        int[] trace = new int[16];
+        int traceSize = 0;
+
+        int finalD = -1;
+        int finalK = 0;
+
+        rounds: for (int d = 0; d <= max; d++) {
+            if (d > reach) {
+                int grown = Math.min(max, reach * 2);
+                int[] wider = new int[2 * grown + 3];
+                System.arraycopy(v, 0, wider, grown - reach, v.length);
+                v = wider;
+                reach = grown;
+                offset = reach + 1;
+            }
+
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])) {
+                    x = v[offset + k + 1];
+                } else {
+                    x = v[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m && source[sourceFrom + x] == target[targetFrom + y]) {
+                    x++;
+                    y++;
+                }
+                v[offset + k] = x;
+
+                if (x >= n && y >= m) {
+                    finalD = d;
+                    finalK = k;
+                    break rounds;
+                }
+            }
+
+            if (traceSize + d + 1 > trace.length) {
+                trace = Arrays.copyOf(trace, Math.max(trace.length * 2, traceSize + d + 1));
+            }
+            for (int k = -d; k <= d; k += 2) {
+                trace[traceSize++] = v[offset + k];
+            }
+        }
+
+        if (finalD < 0) {
+            throw new IllegalStateException("could not find a diff path");
+        }
+
+        int firstDelta = out.size();
+        int x = n;
+        int y = m;
+        int k = finalK;
+        int changeEndX = -1;
+        int changeEndY = -1;
+
+        for (int d = finalD; d > 0; d--) {
+            // round d - 1 starts at index (d - 1) * d / 2 of the trace
+            int round = (d - 1) * d / 2;
+            boolean down = k == -d
+                    || (k != d && trace[round + (k - 1 + d - 1) / 2] < trace[round + (k + 1 + d - 1) / 2]);
+            int prevK = down ? k + 1 : k - 1;
+            int prevX = trace[round + (prevK + d - 1) / 2];
+            int prevY = prevX - prevK;
+            int snakeX = down ? prevX : prevX + 1;
+            int snakeY = snakeX - k;
+
+            if (snakeX < x && changeEndX >= 0) {
+                // a run of matching chars separates this edit from the pending change
+                out.add(sourceFrom + x, changeEndX - x, targetFrom + y, changeEndY - y, variant);
+                changeEndX = -1;
+            }
+            if (changeEndX < 0) {
+                changeEndX = snakeX;
+                changeEndY = snakeY;
+            }
+
+            x = prevX;
+            y = prevY;
+            k = prevK;
+        }
+
+        if (changeEndX >= 0) {
+            // the remaining x, y is the end of the leading snake, or 0, 0 if there is none
+            out.add(sourceFrom + x, changeEndX - x, targetFrom + y, changeEndY - y, variant);
+        }
+
+        out.reverseFrom(firstDelta);
+    }
+}
@@ -0,0 +1,178 @@
+package com.coledit.backend.helpers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Operational transformation of {@link TextOperation} sequences.
+ *
+ * {@link #transform} rewrites a client's operations, written against an older version,
+ * so they can be applied after the operations the server accepted meanwhile. Inserts at
+ * the same position keep the server's text first; text deleted on both sides is deleted
+ * once; an insert inside a deleted range survives at the start of that range.
+ */
+public final class OperationTransformer {
+
+    private OperationTransformer() {
+    }
+
+    /**
+     * Applies the operations in order.
+     *
+     * @throws IllegalArgumentException if an operation does not fit the document
+     */
+    public static String apply(String document, List<TextOperation> operations) {
+        StringBuilder sb = new StringBuilder(document);
+        for (TextOperation operation : operations) {
+            if (operation.position() < 0 || operation.position() > sb.length()
+                    || (!operation.isInsert() && (operation.length() < 0 || operation.end() > sb.length()))) {
+                throw new IllegalArgumentException("Operation " + operation + " does not fit a document of "
+                        + sb.length() + " chars");
+            }
+            if (operation.isInsert()) {
+                sb.insert(operation.position(), operation.text());
+            } else {
+                sb.delete(operation.position(), operation.end());
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the operations turning {@code before} into {@code after}.
+     */
+    public static List<TextOperation> diff(String before, String after) {
+        DeltaList deltas = new DeltaList();
+        StringMerger.diffVariant(before, after, 0, deltas);
+
+        List<TextOperation> operations = new ArrayList<>(deltas.size() * 2);
+        // positions move by what the earlier deltas already inserted or deleted
+        int shift = 0;
+        for (int i = 0; i < deltas.size(); i++) {
+            int position = deltas.sourcePosition(i) + shift;
+            if (deltas.sourceLength(i) > 0) {
+                operations.add(TextOperation.delete(position, deltas.sourceLength(i)));
+            }
+            if (deltas.targetLength(i) > 0) {
+                int targetPosition = deltas.targetPosition(i);
+                operations.add(TextOperation.insert(position,
+                        after.substring(targetPosition, targetPosition + deltas.targetLength(i))));
+            }
+            shift += deltas.targetLength(i) - deltas.sourceLength(i);
+        }
+        return operations;
+    }
+
+    /**
+     * Transforms {@code client} against {@code server}, both written against the same
+     * document, and returns the client operations to apply after the server ones.
+     */
+    public static List<TextOperation> transform(List<TextOperation> client, List<TextOperation> server) {
+        return transformBoth(client, server).client();
+    }
+
+    /**
+     * Transforms the operations against each other, one pair at a time in a loop rather
+     * than by recursion, so a frame of any length cannot exhaust the stack. Only a delete
+     * is ever split, and only by an insert inside it, so at most one side of a pair
+     * carries several pieces on to the next operation.
+     */
+    static Transformed transformBoth(List<TextOperation> client, List<TextOperation> server) {
+        List<TextOperation> transformedClient = new ArrayList<>(client.size());
+        List<TextOperation> transformedServer = server;
+        for (TextOperation operation : client) {
+            // the client operation, carried past the server operations one by one
+            List<TextOperation> pieces = List.of(operation);
+            List<TextOperation> nextServer = new ArrayList<>(transformedServer.size());
+            for (TextOperation serverOperation : transformedServer) {
+                List<TextOperation> serverPieces = List.of(serverOperation);
+                List<TextOperation> nextPieces = new ArrayList<>(pieces.size());
+                for (TextOperation piece : pieces) {
+                    if (serverPieces.isEmpty()) {
+                        nextPieces.add(piece);
+                        continue;
+                    }
+                    Transformed pair = transformPair(piece, serverPieces.get(0));
+                    nextPieces.addAll(pair.client());
+                    serverPieces = pair.server();
+                }
+                pieces = nextPieces;
+                nextServer.addAll(serverPieces);
+            }
+            transformedClient.addAll(pieces);
+            transformedServer = nextServer;
+        }
+        return new Transformed(transformedClient, transformedServer);
+    }
+
+    private static Transformed transformPair(TextOperation client, TextOperation server) {
+        if (client.isInsert() && server.isInsert()) {
+            // the server's insert stays first when both insert at the same position
+            if (client.position() < server.position()) {
+                return new Transformed(List.of(client), List.of(moved(server, client.length())));
+            }
+            return new Transformed(List.of(moved(client, server.length())), List.of(server));
+        }
+
+        if (client.isInsert()) {
+            return insertAgainstDelete(client, server, true);
+        }
+
+        if (server.isInsert()) {
+            return insertAgainstDelete(server, client, false);
+        }
+
+        // both delete: drop what the other side already removed
+        return new Transformed(deleteAfterDelete(client, server), deleteAfterDelete(server, client));
+    }
+
+    private static Transformed insertAgainstDelete(TextOperation insert, TextOperation delete,
+            boolean insertIsClient) {
+        List<TextOperation> insertAfter;
+        List<TextOperation> deleteAfter;
+
+        if (insert.position() <= delete.position()) {
+            insertAfter = List.of(insert);
+            deleteAfter = List.of(moved(delete, insert.length()));
+        } else if (insert.position() >= delete.end()) {
+            insertAfter = List.of(moved(insert, -delete.length()));
+            deleteAfter = List.of(delete);
+        } else {
+            // the insert lands inside the deleted range: keep it and delete around it
+            insertAfter = List.of(TextOperation.insert(delete.position(), insert.text()));
+            deleteAfter = List.of(
+                    TextOperation.delete(delete.position(), insert.position() - delete.position()),
+                    TextOperation.delete(delete.position() + insert.length(), delete.end() - insert.position()));
+        }
+
+        return insertIsClient
+                ? new Transformed(insertAfter, deleteAfter)
+                : new Transformed(deleteAfter, insertAfter);
+    }
+
+    private static List<TextOperation> deleteAfterDelete(TextOperation delete, TextOperation applied) {
+        int overlap = Math.max(0, Math.min(delete.end(), applied.end()) - Math.max(delete.position(),
+                applied.position()));
+        int length = delete.length() - overlap;
+        if (length == 0) {
+            return List.of();
+        }
+
+        int position;
+        if (delete.position() <= applied.position()) {
+            position = delete.position();
+        } else if (delete.position() >= applied.end()) {
+            position = delete.position() - applied.length();
+        } else {
+            position = applied.position();
+        }
+        return List.of(TextOperation.delete(position, length));
+    }
+
+    private static TextOperation moved(TextOperation operation, int by) {
+        return new TextOperation(operation.kind(), operation.position() + by, operation.text(), operation.length());
+    }
+
+    record Transformed(List<TextOperation> client, List<TextOperation> server) {
+    }
+}
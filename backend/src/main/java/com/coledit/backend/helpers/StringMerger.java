@@ -1,101 +1,173 @@
 package com.coledit.backend.helpers;
 
-import com.github.difflib.DiffUtils;
-import com.github.difflib.patch.AbstractDelta;
-import com.github.difflib.patch.Patch;
-import com.github.difflib.patch.PatchFailedException;
-
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.TreeMap;
 
 public class StringMerger {
-    
-    public static String mergeVariants(String original, List<String> variants) throws PatchFailedException {
-        List<List<Character>> decomposedVariants = variants.stream().map(StringMerger::stringToList)
-                .collect(Collectors.toList());
-        return listToString(mergeListVariants(stringToList(original), decomposedVariants));
-    }
 
-    private static List<Character> stringToList(String string) {
-        return string.chars()
-                .mapToObj(c -> (char) c)
-                .collect(Collectors.toList());
+    public static String mergeVariants(String original, List<String> variants) {
+        if (variants.isEmpty()) {
+            return original;
+        }
+
+        DeltaList deltas = new DeltaList();
+        for (int variant = 0; variant < variants.size(); variant++) {
+            diffVariant(original, variants.get(variant), variant, deltas);
+        }
+
+        // Resolve conflicts
+        int[] resolved = resolveConflicts(deltas);
+
+        // Apply the resolved deltas to the original document
+        return applyDeltas(original, variants, deltas, resolved);
     }
 
-    private static String listToString(List<Character> list) {
-        return list.stream()
-                .map(String::valueOf)
-                .collect(Collectors.joining());
+    /**
+     * Returns the deltas turning original into variant, ordered by source position.
+     */
+    public static DeltaList diff(String original, String variant) {
+        DeltaList deltas = new DeltaList();
+        diffVariant(original, variant, 0, deltas);
+        return deltas;
     }
 
-    private static List<Character> mergeListVariants(List<Character> original,
-            List<List<Character>> variants)
-            throws PatchFailedException {
-        List<Patch<Character>> patches = variants.stream().map(variant -> DiffUtils.diff(original, variant))
-                .collect(Collectors.toList());
+    /**
+     * Appends the deltas turning original into variant. The common prefix and suffix are
+     * skipped first, so a keystroke costs a scan of the document plus a diff of the edited
+     * window only; a lone insert or delete does not run the diff at all.
+     */
+    static void diffVariant(String original, String variant, int variantIndex, DeltaList deltas) {
+        int originalLength = original.length();
+        int variantLength = variant.length();
+        int shorterLength = Math.min(originalLength, variantLength);
+
+        int prefix = 0;
+        while (prefix < shorterLength && original.charAt(prefix) == variant.charAt(prefix)) {
+            prefix++;
+        }
+
+        int suffix = 0;
+        while (suffix < shorterLength - prefix
+                && original.charAt(originalLength - 1 - suffix) == variant.charAt(variantLength - 1 - suffix)) {
+            suffix++;
+        }
 
-        List<AbstractDelta<Character>> mergedDeltas = patches.stream().flatMap(patch -> patch.getDeltas().stream())
-                .collect(Collectors.toList());
-                mergedDeltas.stream().forEach(System.out::println);
+        int originalEnd = originalLength - suffix;
+        int variantEnd = variantLength - suffix;
 
-        // Resolve conflicts
-        List<AbstractDelta<Character>> resolvedDeltas = resolveConflicts(mergedDeltas);
-        resolvedDeltas.stream().forEach(System.out::println);
-
-        // Create a new patch with the resolved deltas
-        Patch<Character> mergedPatch = new Patch<>();
-        resolvedDeltas.forEach(mergedPatch::addDelta);
-
-        // Apply the merged patch to the original document
-        List<Character> mergedDocument = new ArrayList<>(original);
-        try {
-            mergedDocument = DiffUtils.patch(mergedDocument, mergedPatch);
-        } catch (PatchFailedException e) {
-            System.err.println("Failed to apply merged patch: " + e.getMessage());
+        if (prefix == originalEnd || prefix == variantEnd) {
+            // identical, or a single insert or delete between the prefix and the suffix
+            if (originalEnd != variantEnd) {
+                deltas.add(prefix, originalEnd - prefix, prefix, variantEnd - prefix, variantIndex);
+            }
+            return;
         }
 
-        return mergedDocument;
+        char[] source = new char[originalEnd - prefix];
+        char[] target = new char[variantEnd - prefix];
+        original.getChars(prefix, originalEnd, source, 0);
+        variant.getChars(prefix, variantEnd, target, 0);
+
+        int firstDelta = deltas.size();
+        MyersDiff.diff(source, 0, source.length, target, 0, target.length, variantIndex, deltas);
+        deltas.shift(firstDelta, prefix, prefix);
     }
 
-    private static List<AbstractDelta<Character>> resolveConflicts(List<AbstractDelta<Character>> deltas) {
-        List<AbstractDelta<Character>> resolvedDeltas = new ArrayList<>();
-
-        for (AbstractDelta<Character> delta : deltas) {
-            boolean conflictResolved = false;
-
-            for (AbstractDelta<Character> resolvedDelta : resolvedDeltas) {
-                if (hasIntersection(delta, resolvedDelta)) {
-                    // Resolve the conflict by taking either delta or resolvedDelta
-                    AbstractDelta<Character> selectedDelta = selectDelta(delta, resolvedDelta);
-                    resolvedDeltas.remove(resolvedDelta);
-                    resolvedDeltas.add(selectedDelta);
-                    conflictResolved = true;
-                    break;
-                }
+    /**
+     * Picks the deltas to keep and returns them in the order they are laid out.
+     *
+     * Deltas whose source ranges intersect are in conflict and the one with the bigger
+     * source range wins; between equally big ones the later delta wins, so the order of
+     * the variants list decides. Ranges are accepted from the biggest down and checked
+     * against an ordered set of the ranges already kept, which is O(n log n) instead of
+     * comparing every pair. Inserts have an empty range and never beat a range: they are
+     * dropped only when they fall strictly inside a kept range.
+     *
+     * The rule is applied across all deltas at once, not in the order they come in as
+     * the pairwise resolution used to: a delta only ever competed with the first kept one
+     * it met, so an edit could outlive a bigger range it also intersected, and deltas
+     * could be kept overlapping. Now a small edit inside a bigger replaced range is
+     * always dropped, whichever variant it came from.
+     */
+    static int[] resolveConflicts(DeltaList deltas) {
+        int count = deltas.size();
+        if (count == 0) {
+            return new int[0];
+        }
+
+        // biggest source range first, later deltas first between equal sizes
+        long[] bySize = new long[count];
+        for (int delta = 0; delta < count; delta++) {
+            bySize[delta] = ((long) deltas.sourceLength(delta) << 32) | delta;
+        }
+        Arrays.sort(bySize);
+
+        // start -> end of every range kept so far, the ranges never intersect
+        TreeMap<Integer, Integer> keptRanges = new TreeMap<>();
+        long[] layout = new long[count];
+        int keptCount = 0;
+
+        for (int i = count - 1; i >= 0; i--) {
+            int delta = (int) bySize[i];
+            int start = deltas.sourcePosition(delta);
+            int end = deltas.sourceEnd(delta);
+            boolean insert = start == end;
+
+            // only the kept range starting last before the end of this one can intersect it
+            Map.Entry<Integer, Integer> before = keptRanges.floorEntry(insert ? start - 1 : end - 1);
+            if (before != null && before.getValue() > start) {
+                continue;
             }
 
-            if (!conflictResolved) {
-                resolvedDeltas.add(delta);
+            if (!insert) {
+                keptRanges.put(start, end);
             }
+            // by position, an insert goes before a range starting at the same position,
+            // inserts at the same position keep the order of the variants list
+            layout[keptCount++] = ((long) start << 32) | (insert ? 0 : 1L << 31) | delta;
         }
 
-        return resolvedDeltas;
+        Arrays.sort(layout, 0, keptCount);
+        int[] resolved = new int[keptCount];
+        for (int i = 0; i < keptCount; i++) {
+            resolved[i] = (int) (layout[i] & Integer.MAX_VALUE);
+        }
+        return resolved;
     }
 
-    private static boolean hasIntersection(AbstractDelta<Character> delta1, AbstractDelta<Character> delta2) {
-        // checking if there is an intersection between the deltas
-        int start1 = delta1.getSource().getPosition();
-        int end1 = start1 + delta1.getSource().size();
-        int start2 = delta2.getSource().getPosition();
-        int end2 = start2 + delta2.getSource().size();
+    private static String applyDeltas(String original, List<String> variants, DeltaList deltas, int[] resolved) {
+        int mergedLength = original.length();
+        for (int delta : resolved) {
+            mergedLength += deltas.targetLength(delta) - deltas.sourceLength(delta);
+        }
 
-        return (start1 < end2 && end1 > start2) || (start2 < end1 && end2 > start1);
-    }
+        char[] merged = new char[mergedLength];
+        int sourceCursor = 0;
+        int mergedCursor = 0;
+
+        for (int delta : resolved) {
+            int position = deltas.sourcePosition(delta);
+            if (position < sourceCursor) {
+                throw new IllegalStateException("Resolved deltas overlap at " + position);
+            }
+            original.getChars(sourceCursor, position, merged, mergedCursor);
+            mergedCursor += position - sourceCursor;
+
+            int targetPosition = deltas.targetPosition(delta);
+            int targetLength = deltas.targetLength(delta);
+            variants.get(deltas.variant(delta)).getChars(targetPosition, targetPosition + targetLength, merged,
+                    mergedCursor);
+            mergedCursor += targetLength;
+            sourceCursor = deltas.sourceEnd(delta);
+        }
 
-    private static AbstractDelta<Character> selectDelta(AbstractDelta<Character> delta1,
-            AbstractDelta<Character> delta2) {
-        // selecting the delta with the bigger size
-        return delta1.getSource().size() >= delta2.getSource().size() ? delta1 : delta2;
+        original.getChars(sourceCursor, original.length(), merged, mergedCursor);
+        if (mergedCursor + original.length() - sourceCursor != mergedLength) {
+            throw new IllegalStateException("Merged " + (mergedCursor + original.length() - sourceCursor)
+                    + " chars instead of " + mergedLength);
+        }
+        return new String(merged);
     }
 }
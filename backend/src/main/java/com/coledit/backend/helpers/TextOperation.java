@@ -0,0 +1,29 @@
+package com.coledit.backend.helpers;
+
+/**
+ * A positional edit of a document: inserting {@code text} at {@code position}, or
+ * deleting {@code length} chars starting at {@code position}. Operations of one message
+ * are applied in sequence, each position refers to the document left by the previous one.
+ */
+public record TextOperation(Kind kind, int position, String text, int length) {
+
+    public enum Kind {
+        INSERT, DELETE
+    }
+
+    public static TextOperation insert(int position, String text) {
+        return new TextOperation(Kind.INSERT, position, text, text.length());
+    }
+
+    public static TextOperation delete(int position, int length) {
+        return new TextOperation(Kind.DELETE, position, null, length);
+    }
+
+    public boolean isInsert() {
+        return kind == Kind.INSERT;
+    }
+
+    public int end() {
+        return position + length;
+    }
+}
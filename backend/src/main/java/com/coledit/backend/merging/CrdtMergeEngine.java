@@ -0,0 +1,66 @@
+package com.coledit.backend.merging;
+
+import java.util.List;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.coledit.backend.helpers.DeltaList;
+import com.coledit.backend.helpers.StringMerger;
+
+/**
+ * Merges through an {@link RgaSequence}: the original is inserted by one replica and
+ * every variant's changes are integrated as the operations of a replica of its own.
+ * Nothing is thrown away, text deleted by any variant is deleted and text inserted by
+ * every variant is kept, ordered by the sequence's ids where two insert at the same
+ * place. The result does not depend on the order the variants are integrated in.
+ */
+@Component
+@ConditionalOnProperty(name = "document.merge-engine", havingValue = "crdt")
+public class CrdtMergeEngine implements MergeEngine {
+
+    private static final int ORIGINAL_REPLICA = 0;
+
+    @Override
+    public String merge(String original, List<String> variants) {
+        if (variants.isEmpty()) {
+            return original;
+        }
+
+        int originalLength = original.length();
+        RgaSequence sequence = new RgaSequence(originalLength + 64);
+        // the original's char i gets clock i + 1, the clocks of the variants follow
+        sequence.insert(ORIGINAL_REPLICA, 1, RgaSequence.HEAD_REPLICA, RgaSequence.HEAD_CLOCK, original);
+
+        for (int variant = 0; variant < variants.size(); variant++) {
+            integrate(sequence, original, variants.get(variant), variant + 1);
+        }
+        return sequence.toString();
+    }
+
+    private static void integrate(RgaSequence sequence, String original, String variant, int replica) {
+        DeltaList deltas = StringMerger.diff(original, variant);
+        int clock = original.length() + 1;
+
+        for (int i = 0; i < deltas.size(); i++) {
+            int sourcePosition = deltas.sourcePosition(i);
+            if (deltas.sourceLength(i) > 0) {
+                sequence.delete(ORIGINAL_REPLICA, sourcePosition + 1, deltas.sourceLength(i));
+            }
+
+            int targetLength = deltas.targetLength(i);
+            if (targetLength > 0) {
+                int targetPosition = deltas.targetPosition(i);
+                // inserted after the original char in front of the change
+                if (sourcePosition == 0) {
+                    sequence.insert(replica, clock, RgaSequence.HEAD_REPLICA, RgaSequence.HEAD_CLOCK,
+                            variant.substring(targetPosition, targetPosition + targetLength));
+                } else {
+                    sequence.insert(replica, clock, ORIGINAL_REPLICA, sourcePosition,
+                            variant.substring(targetPosition, targetPosition + targetLength));
+                }
+                clock += targetLength;
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.coledit.backend.merging;
+
+import java.util.List;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.coledit.backend.helpers.StringMerger;
+
+/**
+ * Merges with {@link StringMerger}: of two overlapping changes the bigger one wins.
+ */
+@Component
+@ConditionalOnProperty(name = "document.merge-engine", havingValue = "diff", matchIfMissing = true)
+public class DiffMergeEngine implements MergeEngine {
+
+    @Override
+    public String merge(String original, List<String> variants) {
+        return StringMerger.mergeVariants(original, variants);
+    }
+}
@@ -0,0 +1,13 @@
+package com.coledit.backend.merging;
+
+import java.util.List;
+
+/**
+ * Merges the variants clients made of the same version of a document into its next
+ * version. The engine used by the document rooms is picked with the
+ * {@code document.merge-engine} property.
+ */
+public interface MergeEngine {
+
+    String merge(String original, List<String> variants);
+}
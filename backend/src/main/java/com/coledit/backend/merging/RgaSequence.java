@@ -0,0 +1,308 @@
+package com.coledit.backend.merging;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A replicated growable array (RGA) of chars.
+ *
+ * Every char has an id (replica, clock) and is inserted after an origin char. Concurrent
+ * inserts after the same origin are ordered by id, greater clock first and lower replica
+ * first on equal clocks, and deletes only mark chars as tombstones. Integrating the same
+ * operations in any causal order therefore gives the same text.
+ *
+ * Chars inserted together are stored as one block: the blocks are parallel int arrays
+ * linked in document order and their chars live in one shared buffer, so a large
+ * document costs a few arrays instead of an object per char. Blocks are split when an
+ * insert lands inside one. {@link #compact()} drops the tombstones once no later
+ * operation can refer to them.
+ */
+public class RgaSequence {
+
+    public static final int HEAD_REPLICA = -1;
+    public static final int HEAD_CLOCK = 0;
+
+    private static final int END = -1;
+    private static final int HEAD = 0;
+
+    // chars of every block, with a tombstone bit per char
+    private char[] text;
+    private long[] tombstones;
+    private int textLength;
+
+    // blocks, block 0 is the head and holds no chars
+    private int[] blockReplica;
+    private int[] blockClock;
+    private int[] blockOffset;
+    private int[] blockLength;
+    private int[] blockNext;
+    private int blockCount;
+
+    private final Map<Integer, ReplicaBlocks> replicas = new HashMap<>();
+    private int visibleLength;
+
+    public RgaSequence() {
+        this(16);
+    }
+
+    public RgaSequence(int initialCapacity) {
+        text = new char[Math.max(initialCapacity, 16)];
+        tombstones = new long[(text.length >> 6) + 1];
+        blockReplica = new int[16];
+        blockClock = new int[16];
+        blockOffset = new int[16];
+        blockLength = new int[16];
+        blockNext = new int[16];
+        addBlock(HEAD_REPLICA, HEAD_CLOCK, 0, 0);
+        blockNext[HEAD] = END;
+    }
+
+    /**
+     * Inserts {@code chars} after the char with the given origin id, or at the start for
+     * {@link #HEAD_REPLICA}/{@link #HEAD_CLOCK}. The chars get the ids
+     * {@code (replica, clock)} to {@code (replica, clock + chars.length() - 1)}.
+     *
+     * @throws IllegalArgumentException if the origin is unknown
+     */
+    public void insert(int replica, int clock, int originReplica, int originClock, CharSequence chars) {
+        int length = chars.length();
+        if (length == 0) {
+            return;
+        }
+
+        int cursor = originReplica == HEAD_REPLICA ? HEAD : splitAfter(originReplica, originClock);
+
+        // concurrent inserts after the same origin with greater ids stay in front, with
+        // everything inserted after them, which has greater clocks still
+        int next = blockNext[cursor];
+        while (next != END && precedes(blockReplica[next], blockClock[next], replica, clock)) {
+            cursor = next;
+            next = blockNext[cursor];
+        }
+
+        int offset = appendText(chars);
+        if (cursor != HEAD && blockReplica[cursor] == replica
+                && blockClock[cursor] + blockLength[cursor] == clock
+                && blockOffset[cursor] + blockLength[cursor] == offset) {
+            // typing continues the block before it
+            blockLength[cursor] += length;
+        } else {
+            int block = addBlock(replica, clock, offset, length);
+            blockNext[block] = next;
+            blockNext[cursor] = block;
+            replicaBlocks(replica).add(clock, block);
+        }
+        visibleLength += length;
+    }
+
+    /**
+     * Marks the chars {@code (replica, clock)} to {@code (replica, clock + length - 1)}
+     * as deleted. Deleting a char twice is a no-op.
+     *
+     * @throws IllegalArgumentException if one of the chars is unknown
+     */
+    public void delete(int replica, int clock, int length) {
+        int end = clock + length;
+        while (clock < end) {
+            int block = blockOf(replica, clock);
+            int blockEnd = Math.min(end, blockClock[block] + blockLength[block]);
+            int offset = blockOffset[block] + clock - blockClock[block];
+            for (int i = offset; i < offset + blockEnd - clock; i++) {
+                if (!isTombstone(i)) {
+                    tombstones[i >> 6] |= 1L << i;
+                    visibleLength--;
+                }
+            }
+            clock = blockEnd;
+        }
+    }
+
+    public int length() {
+        return visibleLength;
+    }
+
+    public int blockCount() {
+        return blockCount - 1;
+    }
+
+    /**
+     * Drops the deleted chars and the blocks left empty. Operations may no longer refer
+     * to the dropped ids, so this is only safe once every replica has integrated the
+     * deletes.
+     */
+    public void compact() {
+        char[] compactedText = new char[Math.max(visibleLength, 16)];
+        int compactedLength = 0;
+        int[] order = new int[blockCount];
+        int ordered = 0;
+        for (int block = blockNext[HEAD]; block != END; block = blockNext[block]) {
+            order[ordered++] = block;
+        }
+
+        int[] replicaOf = Arrays.copyOf(blockReplica, blockCount);
+        int[] clockOf = Arrays.copyOf(blockClock, blockCount);
+        int[] offsetOf = Arrays.copyOf(blockOffset, blockCount);
+        int[] lengthOf = Arrays.copyOf(blockLength, blockCount);
+        long[] deleted = tombstones;
+
+        blockCount = 1;
+        blockNext[HEAD] = END;
+        replicas.clear();
+        int last = HEAD;
+
+        for (int i = 0; i < ordered; i++) {
+            int block = order[i];
+            int offset = offsetOf[block];
+            int length = lengthOf[block];
+            int run = 0;
+            // every run of live chars becomes a block of its own, their ids keep
+            for (int j = 0; j <= length; j++) {
+                boolean live = j < length && (deleted[(offset + j) >> 6] & (1L << (offset + j))) == 0;
+                if (live) {
+                    compactedText[compactedLength + run++] = text[offset + j];
+                    continue;
+                }
+                if (run > 0) {
+                    int compacted = addBlock(replicaOf[block], clockOf[block] + j - run, compactedLength, run);
+                    blockNext[compacted] = END;
+                    blockNext[last] = compacted;
+                    last = compacted;
+                    replicaBlocks(replicaOf[block]).add(clockOf[block] + j - run, compacted);
+                    compactedLength += run;
+                    run = 0;
+                }
+            }
+        }
+
+        text = compactedText;
+        textLength = compactedLength;
+        tombstones = new long[(text.length >> 6) + 1];
+    }
+
+    @Override
+    public String toString() {
+        char[] visible = new char[visibleLength];
+        int length = 0;
+        for (int block = blockNext[HEAD]; block != END; block = blockNext[block]) {
+            int offset = blockOffset[block];
+            for (int i = offset; i < offset + blockLength[block]; i++) {
+                if (!isTombstone(i)) {
+                    visible[length++] = text[i];
+                }
+            }
+        }
+        return new String(visible, 0, length);
+    }
+
+    private static boolean precedes(int replica, int clock, int otherReplica, int otherClock) {
+        return clock > otherClock || (clock == otherClock && replica < otherReplica);
+    }
+
+    /**
+     * Splits the block holding the given char so the char ends its block, and returns
+     * that block.
+     */
+    private int splitAfter(int replica, int clock) {
+        int block = blockOf(replica, clock);
+        int kept = clock - blockClock[block] + 1;
+        if (kept == blockLength[block]) {
+            return block;
+        }
+
+        int tail = addBlock(replica, clock + 1, blockOffset[block] + kept, blockLength[block] - kept);
+        blockNext[tail] = blockNext[block];
+        blockNext[block] = tail;
+        blockLength[block] = kept;
+        replicaBlocks(replica).add(clock + 1, tail);
+        return block;
+    }
+
+    private int blockOf(int replica, int clock) {
+        ReplicaBlocks blocks = replicas.get(replica);
+        int block = blocks == null ? END : blocks.find(clock);
+        if (block == END || clock >= blockClock[block] + blockLength[block]) {
+            throw new IllegalArgumentException("Unknown char (" + replica + ", " + clock + ")");
+        }
+        return block;
+    }
+
+    private ReplicaBlocks replicaBlocks(int replica) {
+        return replicas.computeIfAbsent(replica, r -> new ReplicaBlocks());
+    }
+
+    private boolean isTombstone(int offset) {
+        return (tombstones[offset >> 6] & (1L << offset)) != 0;
+    }
+
+    private int appendText(CharSequence chars) {
+        int length = chars.length();
+        if (textLength + length > text.length) {
+            text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + length));
+            tombstones = Arrays.copyOf(tombstones, (text.length >> 6) + 1);
+        }
+        int offset = textLength;
+        if (chars instanceof String string) {
+            string.getChars(0, length, text, offset);
+        } else {
+            for (int i = 0; i < length; i++) {
+                text[offset + i] = chars.charAt(i);
+            }
+        }
+        textLength += length;
+        return offset;
+    }
+
+    private int addBlock(int replica, int clock, int offset, int length) {
+        if (blockCount == blockReplica.length) {
+            int capacity = blockCount * 2;
+            blockReplica = Arrays.copyOf(blockReplica, capacity);
+            blockClock = Arrays.copyOf(blockClock, capacity);
+            blockOffset = Arrays.copyOf(blockOffset, capacity);
+            blockLength = Arrays.copyOf(blockLength, capacity);
+            blockNext = Arrays.copyOf(blockNext, capacity);
+        }
+        int block = blockCount++;
+        blockReplica[block] = replica;
+        blockClock[block] = clock;
+        blockOffset[block] = offset;
+        blockLength[block] = length;
+        return block;
+    }
+
+    /**
+     * The blocks of one replica sorted by their first clock, to find the block of an id.
+     */
+    private static final class ReplicaBlocks {
+
+        private int[] clocks = new int[4];
+        private int[] blocks = new int[4];
+        private int size;
+
+        void add(int clock, int block) {
+            int index = Arrays.binarySearch(clocks, 0, size, clock);
+            if (index >= 0) {
+                blocks[index] = block;
+                return;
+            }
+            index = -index - 1;
+            if (size == clocks.length) {
+                clocks = Arrays.copyOf(clocks, size * 2);
+                blocks = Arrays.copyOf(blocks, size * 2);
+            }
+            System.arraycopy(clocks, index, clocks, index + 1, size - index);
+            System.arraycopy(blocks, index, blocks, index + 1, size - index);
+            clocks[index] = clock;
+            blocks[index] = block;
+            size++;
+        }
+
+        int find(int clock) {
+            int index = Arrays.binarySearch(clocks, 0, size, clock);
+            if (index < 0) {
+                index = -index - 2;
+            }
+            return index < 0 ? END : blocks[index];
+        }
+    }
+}
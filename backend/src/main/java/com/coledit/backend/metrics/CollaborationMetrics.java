@@ -0,0 +1,156 @@
+package com.coledit.backend.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * The meters recorded on the collaboration hot path: merges, broadcasts, sends to each
+ * session, the outcome of each update, connections and persistence flushes.
+ *
+ * Every meter is registered once here, so recording looks nothing up and allocates
+ * nothing: durations are measured with {@link System#nanoTime()} by the caller and
+ * passed in, instead of through a {@link Timer.Sample}. Timers and summaries publish
+ * histogram buckets, which Prometheus turns into percentiles across nodes.
+ */
+@Component
+public class CollaborationMetrics {
+
+    private final Timer merge;
+    private final Timer broadcast;
+    private final DistributionSummary recipients;
+    private final Timer send;
+    private final DistributionSummary documentSessions;
+    private final Counter acceptedUpdates;
+    private final Counter rebasedUpdates;
+    private final Counter heldBackUpdates;
+    private final Counter resyncedUpdates;
+    private final Counter resumedSessions;
+    private final Counter openedSessions;
+    private final Counter closedSessions;
+    private final AtomicInteger liveSessions = new AtomicInteger();
+    private final Timer flush;
+    private final Counter flushedNotes;
+    private final Counter failedFlushes;
+
+    @Autowired
+    public CollaborationMetrics(MeterRegistry registry) {
+        this.merge = Timer.builder("coledit.document.merge")
+                .description("Time to merge the pending variants of a note")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.broadcast = Timer.builder("coledit.document.broadcast")
+                .description("Time to encode and queue a notification for every session of a note")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.recipients = DistributionSummary.builder("coledit.document.broadcast.recipients")
+                .description("Sessions a notification was queued for")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.send = Timer.builder("coledit.outbound.send")
+                .description("Time to send a queued message to one session")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.documentSessions = DistributionSummary.builder("coledit.document.sessions")
+                .description("Sessions in a note's room, recorded as each one joins")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.acceptedUpdates = updates(registry, "accepted");
+        this.rebasedUpdates = updates(registry, "rebased");
+        this.heldBackUpdates = updates(registry, "held-back");
+        this.resyncedUpdates = updates(registry, "resynced");
+        this.resumedSessions = Counter.builder("coledit.sessions.resumed")
+                .description("Reconnecting sessions sent only the operations they missed")
+                .register(registry);
+        this.openedSessions = Counter.builder("coledit.sessions.opened").register(registry);
+        this.closedSessions = Counter.builder("coledit.sessions.closed").register(registry);
+        Gauge.builder("coledit.sessions.live", liveSessions, AtomicInteger::get)
+                .description("WebSocket sessions connected to this node")
+                .register(registry);
+        this.flush = Timer.builder("coledit.persistence.flush")
+                .description("Time to write the dirty notes to the database")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.flushedNotes = Counter.builder("coledit.persistence.flushed.notes").register(registry);
+        this.failedFlushes = Counter.builder("coledit.persistence.flush.failures").register(registry);
+    }
+
+    /**
+     * Meters kept in a registry of their own, for code constructed outside Spring.
+     */
+    public static CollaborationMetrics disabled() {
+        return new CollaborationMetrics(new SimpleMeterRegistry());
+    }
+
+    private static Counter updates(MeterRegistry registry, String outcome) {
+        return Counter.builder("coledit.document.updates")
+                .description("Full-text updates by what became of them")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    public void merged(long nanos) {
+        merge.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void broadcast(long nanos, int recipientCount) {
+        broadcast.record(nanos, TimeUnit.NANOSECONDS);
+        recipients.record(recipientCount);
+    }
+
+    public void sent(long nanos) {
+        send.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void joined(int sessionsInRoom) {
+        documentSessions.record(sessionsInRoom);
+    }
+
+    public void updateAccepted() {
+        acceptedUpdates.increment();
+    }
+
+    public void updateRebased() {
+        rebasedUpdates.increment();
+    }
+
+    public void updateHeldBack() {
+        heldBackUpdates.increment();
+    }
+
+    public void updateResynced() {
+        resyncedUpdates.increment();
+    }
+
+    public void sessionResumed() {
+        resumedSessions.increment();
+    }
+
+    public void sessionOpened() {
+        openedSessions.increment();
+        liveSessions.incrementAndGet();
+    }
+
+    public void sessionClosed() {
+        closedSessions.increment();
+        liveSessions.decrementAndGet();
+    }
+
+    public void flushed(long nanos, int notes) {
+        flush.record(nanos, TimeUnit.NANOSECONDS);
+        flushedNotes.increment(notes);
+    }
+
+    public void flushFailed() {
+        failedFlushes.increment();
+    }
+}
@@ -0,0 +1,82 @@
+package com.coledit.backend.metrics;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.coledit.backend.cluster.SessionForwarder;
+import com.coledit.backend.rooms.BroadcastStats;
+import com.coledit.backend.rooms.DocumentRoomRegistry;
+import com.coledit.backend.rooms.DocumentStateCache;
+import com.coledit.backend.rooms.SessionOutboxes;
+import com.coledit.backend.services.NoteContentFlusher;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Exposes the counters the rooms, outbound queues, cache and flusher already keep. They
+ * are read when metrics are scraped, so nothing is added to the paths updating them.
+ */
+@Component
+public class DocumentStateMetrics implements MeterBinder {
+
+    private final DocumentRoomRegistry rooms;
+    private final SessionOutboxes outboxes;
+    private final DocumentStateCache cache;
+    private final NoteContentFlusher flusher;
+    private final SessionForwarder forwarder;
+
+    @Autowired
+    public DocumentStateMetrics(DocumentRoomRegistry rooms, SessionOutboxes outboxes, DocumentStateCache cache,
+            NoteContentFlusher flusher, SessionForwarder forwarder) {
+        this.rooms = rooms;
+        this.outboxes = outboxes;
+        this.cache = cache;
+        this.flusher = flusher;
+        this.forwarder = forwarder;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("coledit.rooms.open", rooms, DocumentRoomRegistry::size)
+                .description("Notes with a room on this node")
+                .register(registry);
+        Gauge.builder("coledit.sessions.forwarded", forwarder, SessionForwarder::size)
+                .description("Sessions forwarded to the node owning their note")
+                .register(registry);
+
+        BroadcastStats stats = outboxes.getStats();
+        Gauge.builder("coledit.outbound.queued", stats, BroadcastStats::getQueuedMessages)
+                .description("Messages waiting in all outbound queues")
+                .register(registry);
+        Gauge.builder("coledit.outbound.queue.depth.max", stats, BroadcastStats::getMaxQueueDepth)
+                .description("The deepest a single session's queue has been")
+                .register(registry);
+        FunctionCounter.builder("coledit.outbound.sent", stats, BroadcastStats::getSentMessages)
+                .register(registry);
+        FunctionCounter.builder("coledit.outbound.dropped", stats, BroadcastStats::getDroppedMessages)
+                .description("Messages superseded or dropped by the overflow policy")
+                .register(registry);
+        FunctionCounter.builder("coledit.outbound.disconnected", stats, BroadcastStats::getDisconnectedSessions)
+                .register(registry);
+
+        Gauge.builder("coledit.cache.live.bytes", cache, DocumentStateCache::getLiveBytes)
+                .register(registry);
+        Gauge.builder("coledit.cache.idle.bytes", cache, DocumentStateCache::getIdleBytes)
+                .register(registry);
+        Gauge.builder("coledit.cache.idle.notes", cache, DocumentStateCache::getIdleCount)
+                .register(registry);
+        FunctionCounter.builder("coledit.cache.hits", cache, DocumentStateCache::getHitCount)
+                .register(registry);
+        FunctionCounter.builder("coledit.cache.misses", cache, DocumentStateCache::getMissCount)
+                .register(registry);
+        FunctionCounter.builder("coledit.cache.evictions", cache, DocumentStateCache::getEvictionCount)
+                .register(registry);
+
+        Gauge.builder("coledit.persistence.dirty.notes", flusher, NoteContentFlusher::getDirtyCount)
+                .description("Notes edited but not written to the database yet")
+                .register(registry);
+    }
+}
@@ -1,6 +1,7 @@
 package com.coledit.backend.repositories;
 
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -23,4 +24,7 @@ public interface NoteRepository extends JpaRepository<Note, UUID> {
 
     @Query("SELECT n FROM Note n WHERE :userId MEMBER OF n.collaborators")
     List<Note> findByCollaboratorId(UUID userId);
+
+    @Query("SELECT n.content FROM Note n WHERE n.noteId = :noteId")
+    Optional<String> findContentByNoteId(@Param("noteId") UUID noteId);
 }
\ No newline at end of file
@@ -0,0 +1,64 @@
+package com.coledit.backend.rooms;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the outbound queues, shared by all sessions. How long sends take is
+ * recorded by {@code CollaborationMetrics}.
+ */
+public class BroadcastStats {
+
+    private final AtomicInteger queuedMessages = new AtomicInteger();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final LongAdder sentMessages = new LongAdder();
+    private final LongAdder droppedMessages = new LongAdder();
+    private final LongAdder disconnectedSessions = new LongAdder();
+
+    void queued(int depth) {
+        queuedMessages.incrementAndGet();
+        maxQueueDepth.accumulateAndGet(depth, Math::max);
+    }
+
+    void dequeued(int count) {
+        queuedMessages.addAndGet(-count);
+    }
+
+    void sent() {
+        sentMessages.increment();
+    }
+
+    void dropped(int count) {
+        droppedMessages.add(count);
+    }
+
+    void disconnected() {
+        disconnectedSessions.increment();
+    }
+
+    /**
+     * Messages waiting in all outbound queues right now.
+     */
+    public int getQueuedMessages() {
+        return queuedMessages.get();
+    }
+
+    /**
+     * The deepest a single session's queue has been.
+     */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    public long getSentMessages() {
+        return sentMessages.sum();
+    }
+
+    public long getDroppedMessages() {
+        return droppedMessages.sum();
+    }
+
+    public long getDisconnectedSessions() {
+        return disconnectedSessions.sum();
+    }
+}
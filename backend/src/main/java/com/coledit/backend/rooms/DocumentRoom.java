@@ -0,0 +1,692 @@
+package com.coledit.backend.rooms;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.coledit.backend.backplane.Backplane;
+import com.coledit.backend.backplane.DocumentUpdate;
+import com.coledit.backend.helpers.BinaryFrames;
+import com.coledit.backend.helpers.OperationTransformer;
+import com.coledit.backend.helpers.TextOperation;
+import com.coledit.backend.rooms.NotificationFrames.Frame;
+
+/**
+ * The collaborative editing state of one note: its content, version, the variants
+ * waiting to be merged and the connected sessions.
+ *
+ * That state is only touched by the room's own lane. WebSocket callbacks post an event
+ * to the mailbox and return, and at most one drain of the mailbox runs at a time, so
+ * updates are ordered and merged without locks and a hot note never blocks the
+ * container threads serving other notes. Notifications are only queued on the
+ * sessions' {@link SessionOutboxes}, so a slow client does not hold up the lane either.
+ * A busy room merges every update as it comes but notifies at most once per
+ * {@link UpdateCoalescing} window.
+ *
+ * A new room first loads the note's content through the {@link NoteContentLoader};
+ * events arriving meanwhile wait and are handled once it is there, so every joining
+ * session gets a snapshot and the first merge starts from the stored content. The size
+ * of the content is accounted in the {@link DocumentStateCache} while the room is live,
+ * and the content is left there when the last session leaves.
+ *
+ * Sessions speak one of two protocols. Full-text sessions send and receive the whole
+ * content, as before. Operation sessions send insert/delete operations against the
+ * version they last saw; the room transforms them against the operations accepted since
+ * and broadcasts only the transformed operations. Both kinds can edit the same note.
+ * Independently of that, a session gets JSON text frames or, when it negotiated the
+ * binary sub-protocol, {@link BinaryFrames}. Each notification is encoded at most once
+ * per format and the encoded frame is shared by all its recipients.
+ *
+ * A full-text update is made on what its session showed at the version before, which
+ * {@link SessionVersions} keeps track of. When that is no longer the room's content, the
+ * update is rebased: merged with the content from there rather than taken as a variant
+ * of it. Updates arriving ahead of the one they were made on wait for it, and an update
+ * made on a content no longer kept gets its session a snapshot.
+ *
+ * Every version accepted here is appended to the write-ahead log as it is accepted, and
+ * the room's notifications, the author's acknowledgment included, are held back until
+ * the log is as durable as its fsync policy asks for.
+ *
+ * A client reconnecting can name the version it last got and the hash of its content.
+ * While the {@link OperationHistory} still holds that version, the client is sent the
+ * operations since then instead of the whole content.
+ *
+ * Every version accepted here is published on the {@link Backplane}, and versions other
+ * nodes accepted come back as events of their own, which {@link RoomReplication} decides
+ * to ignore, adopt, or adopt and merge the room's content onto as the next version.
+ *
+ * When another node becomes the owner of the note, the room is handed off: once the
+ * backplane has sent its last version, it retires and closes its sessions with
+ * {@link CloseStatus#SERVICE_RESTARTED} so they reconnect to the new owner, which then
+ * starts from that version. What arrives meanwhile follows the retirement.
+ *
+ * The room itself handles the events and owns the content, version and history; its
+ * sessions, merges, notifications, replication and persistence are left to
+ * {@link RoomSessions}, {@link RoomMerger}, {@link NotificationFrames},
+ * {@link RoomReplication} and {@link RoomPersistence}.
+ */
+public class DocumentRoom {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentRoom.class);
+
+    // events handled before the lane is handed back, so one busy room cannot hog it
+    private static final int MAX_EVENTS_PER_DRAIN = 256;
+
+    // versions an operation session may lag behind before it is sent a snapshot instead
+    private static final int OPERATION_HISTORY_SIZE = 256;
+
+    private final String documentId;
+    private final DocumentRoomRegistry registry;
+
+    private final Queue<RoomEvent> mailbox = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    // confined to the lane
+    private final RoomSessions sessions;
+    private final RoomMerger merger;
+    private final NotificationFrames frames;
+    private final RoomReplication replication;
+    private final RoomPersistence persistence;
+    private final OperationHistory history = new OperationHistory(OPERATION_HISTORY_SIZE);
+    private String content;
+    private int version;
+    private boolean retired;
+    private boolean handingOff;
+
+    // events waiting for the content to be loaded
+    private final ArrayDeque<RoomEvent> waiting = new ArrayDeque<>();
+    private boolean loading;
+    private boolean hydrated;
+
+    // events waiting for the last version to be sent before a handoff
+    private final ArrayDeque<RoomEvent> handOffWaiting = new ArrayDeque<>();
+
+    // merged versions the sessions have not been notified of yet
+    private int unpublishedFrom;
+    private final Map<WebSocketSession, String> unpublishedVariants = new HashMap<>();
+    private int unpublishedUpdates;
+    private long lastPublished;
+    private boolean flushScheduled;
+
+    DocumentRoom(String documentId, DocumentRoomRegistry registry) {
+        this.documentId = documentId;
+        this.registry = registry;
+        this.sessions = new RoomSessions(registry.getOutboxes());
+        this.merger = new RoomMerger(registry.getMergeEngine(), registry.getMetrics());
+        this.frames = registry.getFrames();
+        this.replication = new RoomReplication(documentId, registry.getBackplane());
+        this.persistence = new RoomPersistence(documentId, registry.getFlusher(), registry.getCache());
+        UpdateCoalescing coalescing = registry.getCoalescing();
+        this.lastPublished = coalescing.now() - coalescing.getWindowNanos();
+    }
+
+    public String getDocumentId() {
+        return documentId;
+    }
+
+    public void join(WebSocketSession session) {
+        join(session, false);
+    }
+
+    /**
+     * Joins a session, which receives operations instead of full content when
+     * {@code operations} is set.
+     */
+    public void join(WebSocketSession session, boolean operations) {
+        join(session, operations, false);
+    }
+
+    /**
+     * Joins a session, which receives operations instead of full content when
+     * {@code operations} is set and binary frames instead of JSON when {@code binary} is.
+     */
+    public void join(WebSocketSession session, boolean operations, boolean binary) {
+        join(session, operations, binary, -1, 0);
+    }
+
+    /**
+     * Joins a reconnecting session that last got {@code sinceVersion}, whose content
+     * hashes to {@code sinceHash}; a negative version joins it like a new one.
+     */
+    public void join(WebSocketSession session, boolean operations, boolean binary, int sinceVersion,
+            int sinceHash) {
+        post(new Join(session, operations, binary, sinceVersion, sinceHash));
+    }
+
+    public void leave(WebSocketSession session) {
+        post(new Leave(session));
+    }
+
+    /**
+     * Queues the full content a client sent for the given version.
+     */
+    public void update(WebSocketSession session, String newContent, int version) {
+        post(new Update(session, newContent, version));
+    }
+
+    /**
+     * Queues the operations a client applied on top of {@code baseVersion}.
+     */
+    public void updateOperations(WebSocketSession session, int baseVersion, List<TextOperation> operations) {
+        post(new OperationsUpdate(session, baseVersion, operations));
+    }
+
+    /**
+     * Hands the note off to its new owner.
+     */
+    public void handOff() {
+        post(new HandOff());
+    }
+
+    /**
+     * Queues a content stored through the REST API, or null for a deleted note.
+     */
+    void replace(String storedContent) {
+        post(new ContentReplaced(storedContent));
+    }
+
+    /**
+     * Queues a version another node accepted.
+     */
+    void replicate(DocumentUpdate update) {
+        post(new Replicated(update));
+    }
+
+    private void post(RoomEvent event) {
+        mailbox.add(event);
+        if (scheduled.compareAndSet(false, true)) {
+            registry.getLanes().execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            RoomEvent event;
+            int handled = 0;
+            while (handled < MAX_EVENTS_PER_DRAIN && (event = mailbox.poll()) != null) {
+                handle(event);
+                handled++;
+            }
+            // variants that arrived together are merged in one pass
+            flush();
+        } catch (RuntimeException e) {
+            // the whole trace, a message alone rarely tells where a room went wrong
+            logger.error("Error in document room {}", documentId, e);
+        } finally {
+            scheduled.set(false);
+            if (!mailbox.isEmpty() && scheduled.compareAndSet(false, true)) {
+                registry.getLanes().execute(this::drain);
+            }
+        }
+    }
+
+    private void handle(RoomEvent event) {
+        if (event instanceof Flush) {
+            // the drain this event started publishes
+            flushScheduled = false;
+            return;
+        }
+
+        if (retired) {
+            // the last session left while this event was queued, hand it to the new room;
+            // only a join opens one
+            switch (event) {
+                case Replicated replicated -> registry.replicated(replicated.update());
+                case Leave leave -> registry.leave(documentId, leave.session());
+                case ContentReplaced replaced -> registry.replace(documentId, replaced.content());
+                case HandOff handOff -> {
+                }
+                case HandedOff handedOff -> {
+                }
+                case Durable durable -> {
+                }
+                default -> registry.room(documentId).post(event);
+            }
+            return;
+        }
+
+        if (handingOff && !(event instanceof HandedOff || event instanceof Durable)) {
+            handOffWaiting.add(event);
+            return;
+        }
+
+        if (!hydrated && !(event instanceof Hydrated)) {
+            waiting.add(event);
+            if (!loading) {
+                loading = true;
+                registry.getLoader().load(documentId)
+                        .whenComplete((snapshot, error) -> post(new Hydrated(snapshot, error)));
+            }
+            return;
+        }
+
+        switch (event) {
+            case Hydrated hydration -> handleHydrated(hydration);
+            case Join join -> handleJoin(join);
+            case Leave leave -> handleLeave(leave.session());
+            case Update update -> handleUpdate(update);
+            case OperationsUpdate update -> handleOperationsUpdate(update);
+            case Replicated replicated -> handleReplicated(replicated.update());
+            case ContentReplaced replaced -> handleContentReplaced(replaced.content());
+            case HandOff handOff -> handleHandOff();
+            case HandedOff handedOff -> handleHandedOff();
+            case Durable durable -> sessions.release(durable.position());
+            case Flush flush -> {
+            }
+        }
+    }
+
+    private void handleHydrated(Hydrated hydration) {
+        loading = false;
+        if (hydration.error() != null) {
+            logger.warn("Error loading note {}", documentId, hydration.error());
+            failLoading();
+            return;
+        }
+
+        DocumentSnapshot snapshot = hydration.snapshot();
+        content = snapshot.content() == null ? "" : snapshot.content();
+        version = snapshot.version();
+        replication.hydrated(snapshot, content);
+        history.reset(version, content);
+        hydrated = true;
+        persistence.opened(content);
+        RoomEvent event;
+        while ((event = waiting.poll()) != null) {
+            handle(event);
+        }
+    }
+
+    /**
+     * Without its content the room cannot serve anyone: the sessions that wanted to join
+     * are closed and the next one to connect gets a new room that loads again.
+     */
+    private void failLoading() {
+        for (RoomEvent event : waiting) {
+            if (event instanceof Join join) {
+                try {
+                    join.session().close(CloseStatus.SERVER_ERROR);
+                } catch (IOException e) {
+                    logger.warn("Error closing session {}: {}", join.session().getId(), e.getMessage());
+                }
+            }
+        }
+        waiting.clear();
+        retired = true;
+        registry.retire(this);
+    }
+
+    private void handleJoin(Join join) {
+        // the snapshot has to follow everything the others were notified of
+        publish();
+        WebSocketSession session = join.session();
+        sessions.add(session, join.operations(), join.binary());
+        registry.getMetrics().joined(sessions.size());
+
+        if (join.sinceVersion() >= 0 && history.matches(join.sinceVersion(), join.sinceHash())) {
+            // only what the client missed while it was away, which for a full-text client
+            // makes it show the room's content
+            SessionVersions known = sessions.versions(session);
+            if (known != null) {
+                known.record(version, content);
+            }
+            sessions.send(session, frames.operations(history.since(join.sinceVersion()), version));
+            registry.getMetrics().sessionResumed();
+            return;
+        }
+        resync(session);
+    }
+
+    private void handleLeave(WebSocketSession session) {
+        sessions.remove(session);
+        if (!sessions.isEmpty()) {
+            return;
+        }
+
+        // every merged content is already on its way to the database
+        mergePendingVariants();
+        persistence.closed(new DocumentSnapshot(content, version, replication.getLineage()));
+        retired = true;
+        registry.retire(this);
+    }
+
+    private void handleHandOff() {
+        // what was merged reaches the new owner over the backplane, the sessions get it
+        // there in their snapshot, so they are only closed once it was sent
+        mergePendingVariants();
+        handingOff = true;
+        replication.flush().whenComplete((ignored, error) -> {
+            if (error != null) {
+                // still queued, the backplane sends it with its next batch
+                logger.warn("Error sending the last version of note {} before its handoff", documentId, error);
+            }
+            post(new HandedOff());
+        });
+    }
+
+    private void handleHandedOff() {
+        persistence.handedOff(content);
+        // retired before the sessions learn of it, so none of them reconnects to this room
+        retired = true;
+        registry.retire(this);
+        sessions.closeAll(CloseStatus.SERVICE_RESTARTED);
+        RoomEvent event;
+        while ((event = handOffWaiting.poll()) != null) {
+            if (event instanceof Join join) {
+                // joined while the version was on its way, the new owner has it as well
+                sessions.close(join.session(), CloseStatus.SERVICE_RESTARTED);
+            } else {
+                handle(event);
+            }
+        }
+    }
+
+    private void handleContentReplaced(String stored) {
+        if (stored == null) {
+            // deleted, the sessions have nothing to reconnect to
+            sessions.closeAll(CloseStatus.NORMAL);
+            persistence.deleted(content);
+            retired = true;
+            registry.retire(this);
+            registry.forget(documentId);
+            return;
+        }
+
+        // the stored content replaces what the sessions were editing, as the next version
+        mergePendingVariants();
+        accept(stored);
+        publish();
+    }
+
+    private void handleUpdate(Update update) {
+        WebSocketSession author = update.session();
+        SessionVersions known = sessions.versions(author);
+        if (known == null) {
+            // left meanwhile, or joined for operations
+            return;
+        }
+
+        String base = known.baseOf(update.version() - 1, update.content());
+        if (base == null) {
+            if (known.isAhead(update.version() - 1)) {
+                // waits for the update it was made on
+                if (known.holdBack(update.version(), update.content())) {
+                    registry.getMetrics().updateHeldBack();
+                } else {
+                    registry.getMetrics().updateResynced();
+                    resync(author);
+                }
+            } else {
+                // made on a content no longer kept: the client starts over from a snapshot
+                registry.getMetrics().updateResynced();
+                resync(author);
+            }
+            return;
+        }
+
+        // an update made on something other than the room's content is rebased onto it,
+        // which has to include the variants still waiting to be merged; when coalescing
+        // the notification can still wait
+        if (!base.equals(content) && merger.hasPending()) {
+            if (registry.getCoalescing().isEnabled()) {
+                mergePendingVariants();
+            } else {
+                publish();
+            }
+        }
+
+        String variant;
+        if (base.equals(content)) {
+            variant = update.content();
+            registry.getMetrics().updateAccepted();
+        } else {
+            variant = merger.merge(base, List.of(content, update.content()));
+            registry.getMetrics().updateRebased();
+        }
+        merger.add(variant, author, update.content());
+        unpublishedUpdates++;
+        known.record(update.version(), update.content());
+
+        String next = known.release(update.version() + 1);
+        if (next != null) {
+            handleUpdate(new Update(author, next, update.version() + 1));
+        }
+    }
+
+    /**
+     * Publishes what was merged, unless the room published less than a window ago and
+     * fewer updates than the limit came in since; a flush is scheduled for then instead.
+     */
+    private void flush() {
+        if (!merger.hasPending() && unpublishedFrom == 0) {
+            return;
+        }
+
+        UpdateCoalescing coalescing = registry.getCoalescing();
+        long sinceLastPublished = coalescing.now() - lastPublished;
+        if (!coalescing.isEnabled() || sinceLastPublished >= coalescing.getWindowNanos()
+                || unpublishedUpdates >= coalescing.getMaxUpdates()) {
+            publish();
+        } else if (!flushScheduled) {
+            flushScheduled = true;
+            coalescing.schedule(() -> post(new Flush()), coalescing.getWindowNanos() - sinceLastPublished);
+        }
+    }
+
+    private void mergePendingVariants() {
+        String merged = merger.mergePending(content, unpublishedVariants);
+        if (merged != null) {
+            accept(merged);
+        }
+    }
+
+    /**
+     * Makes a merged content the next version, to be published with the next flush.
+     */
+    private void accept(String merged) {
+        String previous = content;
+        content = merged;
+        version++;
+
+        // operation sessions only get the difference, which later operations are
+        // transformed against
+        history.record(version, OperationTransformer.diff(previous, merged), merged);
+        awaitDurable(persistence.changed(previous, merged));
+        replication.announce(version, content);
+
+        if (unpublishedFrom == 0) {
+            unpublishedFrom = version;
+        }
+    }
+
+    /**
+     * Holds back what the sessions are sent until the log is durable up to
+     * {@code position}, unless it already is.
+     */
+    private void awaitDurable(long position) {
+        CompletableFuture<Void> durable = persistence.whenDurable(position);
+        if (durable.isDone() && !durable.isCompletedExceptionally()) {
+            return;
+        }
+        sessions.holdUntil(position);
+        durable.whenComplete((ignored, error) -> {
+            if (error != null) {
+                // the version is still written by the next flush, the clients are not kept waiting
+                logger.warn("Error logging note {}", documentId, error);
+            }
+            post(new Durable(position));
+        });
+    }
+
+    private void handleReplicated(DocumentUpdate update) {
+        // variants accepted here so far are part of what is compared
+        mergePendingVariants();
+        switch (replication.decide(update, version)) {
+            case IGNORE -> {
+            }
+            case ADOPT -> adopt(update);
+            case MERGE -> {
+                String base = replication.getSharedContent();
+                String ours = content;
+                adopt(update);
+                accept(merger.merge(base, List.of(update.content(), ours)));
+                // the version operation sessions built on may have been replaced, they start over
+                history.reset(version, content);
+            }
+        }
+    }
+
+    private void adopt(DocumentUpdate update) {
+        String previous = content;
+        if (update.version() == version + 1) {
+            history.record(update.version(), OperationTransformer.diff(previous, update.content()), update.content());
+        } else {
+            // operation sessions get a snapshot of this version
+            history.reset(update.version(), update.content());
+        }
+        content = update.content();
+        version = update.version();
+        replication.adopted(update);
+        persistence.replicated(previous, content);
+        if (unpublishedFrom == 0) {
+            unpublishedFrom = version;
+        }
+    }
+
+    /**
+     * Merges what is pending and notifies the sessions of every version merged since the
+     * last publish at once: the latest content for full-text sessions, the operations of
+     * all those versions for operation sessions.
+     */
+    private void publish() {
+        mergePendingVariants();
+        if (unpublishedFrom == 0) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        int recipients = 0;
+        Frame notification = frames.content(content, version);
+        Frame operationsNotification = history.covers(unpublishedFrom - 1, version)
+                ? frames.operations(history.since(unpublishedFrom - 1), version)
+                : notification;
+        for (WebSocketSession session : sessions.all()) {
+            if (sessions.isOperations(session)) {
+                sessions.send(session, operationsNotification);
+                recipients++;
+                continue;
+            }
+            // an author whose last variant is exactly the merged content already shows it
+            String authored = unpublishedVariants.get(session);
+            if (authored == null || !authored.equals(content)) {
+                sessions.sendContent(session, notification, version, content);
+                recipients++;
+            }
+        }
+        registry.getMetrics().broadcast(System.nanoTime() - start, recipients);
+
+        unpublishedFrom = 0;
+        unpublishedVariants.clear();
+        unpublishedUpdates = 0;
+        lastPublished = registry.getCoalescing().now();
+    }
+
+    private void handleOperationsUpdate(OperationsUpdate update) {
+        // operations are transformed against accepted versions only, and their
+        // notifications follow the ones of those versions
+        publish();
+
+        WebSocketSession author = update.session();
+        if (!history.covers(update.baseVersion(), version)) {
+            // too far behind, or ahead of the room: the client starts over from a snapshot
+            resync(author);
+            return;
+        }
+
+        List<TextOperation> operations = merger.transform(update.operations(), history.since(update.baseVersion()));
+        String updated;
+        try {
+            updated = OperationTransformer.apply(content, operations);
+        } catch (IllegalArgumentException e) {
+            logger.info("Rejected operations from session {}: {}", author.getId(), e.getMessage());
+            resync(author);
+            return;
+        }
+
+        String previous = content;
+        content = updated;
+        version++;
+        history.record(version, operations, updated);
+        awaitDurable(persistence.changed(previous, updated));
+        replication.announce(version, content);
+
+        long start = System.nanoTime();
+        Frame operationsNotification = frames.operations(operations, version);
+        Frame notification = frames.content(updated, version);
+        for (WebSocketSession session : sessions.all()) {
+            if (session == author) {
+                sessions.send(session, frames.ack(version));
+            } else if (sessions.isOperations(session)) {
+                sessions.send(session, operationsNotification);
+            } else {
+                sessions.sendContent(session, notification, version, content);
+            }
+        }
+        registry.getMetrics().broadcast(System.nanoTime() - start, sessions.size());
+    }
+
+    private void resync(WebSocketSession session) {
+        sessions.sendContent(session, frames.content(content, version), version, content);
+    }
+
+    private sealed interface RoomEvent
+            permits Hydrated, Join, Leave, Update, OperationsUpdate, Replicated, ContentReplaced, HandOff, HandedOff,
+            Durable, Flush {
+    }
+
+    private record Hydrated(DocumentSnapshot snapshot, Throwable error) implements RoomEvent {
+    }
+
+    private record Join(WebSocketSession session, boolean operations, boolean binary, int sinceVersion,
+            int sinceHash) implements RoomEvent {
+    }
+
+    private record Leave(WebSocketSession session) implements RoomEvent {
+    }
+
+    private record Update(WebSocketSession session, String content, int version) implements RoomEvent {
+    }
+
+    private record Replicated(DocumentUpdate update) implements RoomEvent {
+    }
+
+    private record ContentReplaced(String content) implements RoomEvent {
+    }
+
+    private record HandOff() implements RoomEvent {
+    }
+
+    private record HandedOff() implements RoomEvent {
+    }
+
+    private record Durable(long position) implements RoomEvent {
+    }
+
+    private record Flush() implements RoomEvent {
+    }
+
+    private record OperationsUpdate(WebSocketSession session, int baseVersion, List<TextOperation> operations)
+            implements RoomEvent {
+    }
+}
@@ -0,0 +1,213 @@
+package com.coledit.backend.rooms;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.coledit.backend.backplane.Backplane;
+import com.coledit.backend.backplane.DocumentUpdate;
+import com.coledit.backend.merging.MergeEngine;
+import com.coledit.backend.metrics.CollaborationMetrics;
+import com.coledit.backend.services.NoteContentFlusher;
+import com.coledit.backend.services.NoteContentReplaced;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Keeps one {@link DocumentRoom} per note that has connected sessions and the lanes
+ * their mailboxes are served on.
+ *
+ * Versions other nodes accepted arrive from the {@link Backplane} and go to the open
+ * room of their note. A note without a room here only drops its idle content, so the
+ * next room loads the replicated version, and has the replicated content written
+ * instead of an older one still waiting for the flusher.
+ *
+ * Contents stored through the REST API reach the rooms as {@link NoteContentReplaced}
+ * events, so the note service never has to know about rooms, caches or the backplane.
+ */
+@Component
+public class DocumentRoomRegistry {
+
+    private final Map<String, DocumentRoom> rooms = new ConcurrentHashMap<>();
+
+    private final NoteContentFlusher flusher;
+    private final NotificationFrames frames;
+    private final MergeEngine mergeEngine;
+    private final SessionOutboxes outboxes;
+    private final UpdateCoalescing coalescing;
+    private final NoteContentLoader loader;
+    private final DocumentStateCache cache;
+    private final Backplane backplane;
+    private final CollaborationMetrics metrics;
+    private final Executor lanes;
+
+    @Autowired
+    public DocumentRoomRegistry(NoteContentFlusher flusher, ObjectMapper objectMapper, MergeEngine mergeEngine,
+            SessionOutboxes outboxes, UpdateCoalescing coalescing, NoteContentLoader loader,
+            DocumentStateCache cache, Backplane backplane, CollaborationMetrics metrics) {
+        // each drain of a mailbox runs on its own virtual thread, rooms never share one
+        this(flusher, objectMapper, mergeEngine, outboxes, coalescing, loader, cache, backplane, metrics,
+                Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    DocumentRoomRegistry(NoteContentFlusher flusher, ObjectMapper objectMapper, MergeEngine mergeEngine,
+            SessionOutboxes outboxes, UpdateCoalescing coalescing, NoteContentLoader loader,
+            DocumentStateCache cache, Backplane backplane, CollaborationMetrics metrics, Executor lanes) {
+        this.flusher = flusher;
+        this.frames = new NotificationFrames(objectMapper);
+        this.mergeEngine = mergeEngine;
+        this.outboxes = outboxes;
+        this.coalescing = coalescing;
+        this.loader = loader;
+        this.cache = cache;
+        this.backplane = backplane;
+        this.metrics = metrics;
+        this.lanes = lanes;
+        backplane.subscribe(this::replicated);
+    }
+
+    /**
+     * Returns the live room of a document, opening it if nobody is connected yet.
+     */
+    public DocumentRoom room(String documentId) {
+        return rooms.computeIfAbsent(documentId, id -> new DocumentRoom(id, this));
+    }
+
+    /**
+     * Removes a session from the room of its document, if one is open.
+     */
+    public void leave(String documentId, WebSocketSession session) {
+        DocumentRoom room = rooms.get(documentId);
+        if (room != null) {
+            room.leave(session);
+        }
+    }
+
+    /**
+     * Hands off the rooms of documents another node owns now: each sends its last version,
+     * which the new owner loads, and then closes its sessions so they reconnect there.
+     */
+    public void handOff(Predicate<String> moved) {
+        for (DocumentRoom room : rooms.values()) {
+            if (moved.test(room.getDocumentId())) {
+                room.handOff();
+            }
+        }
+    }
+
+    public int size() {
+        return rooms.size();
+    }
+
+    /**
+     * Makes a content stored through the REST API the note's content: an open room takes
+     * it as its next version, or closes its sessions if the note was deleted. Without a
+     * room the cached and replicated versions and any unflushed content are dropped, so
+     * the next room loads it from the database. Runs in the transaction that stored it.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void contentReplaced(NoteContentReplaced replaced) {
+        replace(replaced.noteId(), replaced.content());
+    }
+
+    void replace(String documentId, String content) {
+        DocumentRoom room = rooms.get(documentId);
+        if (room != null) {
+            // a room retired meanwhile hands it back here
+            room.replace(content);
+            return;
+        }
+        forget(documentId);
+    }
+
+    /**
+     * Drops everything kept for a note besides its stored content.
+     */
+    void forget(String documentId) {
+        cache.invalidate(documentId);
+        flusher.forget(documentId);
+        backplane.forget(documentId);
+    }
+
+    void retire(DocumentRoom room) {
+        rooms.remove(room.getDocumentId(), room);
+    }
+
+    /**
+     * Applies a version another node accepted.
+     */
+    void replicated(DocumentUpdate update) {
+        if (update.origin().equals(backplane.getNodeId())) {
+            return;
+        }
+
+        DocumentRoom room = rooms.get(update.noteId());
+        if (room != null) {
+            // a room retired meanwhile hands the update back here
+            room.replicate(update);
+            return;
+        }
+
+        cache.invalidate(update.noteId());
+        if (flusher.getDirtyContent(update.noteId()) != null) {
+            flusher.markDirty(update.noteId(), update.content());
+        }
+    }
+
+    NoteContentFlusher getFlusher() {
+        return flusher;
+    }
+
+    NotificationFrames getFrames() {
+        return frames;
+    }
+
+    MergeEngine getMergeEngine() {
+        return mergeEngine;
+    }
+
+    SessionOutboxes getOutboxes() {
+        return outboxes;
+    }
+
+    UpdateCoalescing getCoalescing() {
+        return coalescing;
+    }
+
+    NoteContentLoader getLoader() {
+        return loader;
+    }
+
+    DocumentStateCache getCache() {
+        return cache;
+    }
+
+    Backplane getBackplane() {
+        return backplane;
+    }
+
+    CollaborationMetrics getMetrics() {
+        return metrics;
+    }
+
+    Executor getLanes() {
+        return lanes;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (lanes instanceof ExecutorService executorService) {
+            executorService.shutdown();
+        }
+    }
+}
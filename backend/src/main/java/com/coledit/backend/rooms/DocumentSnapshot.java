@@ -0,0 +1,18 @@
+package com.coledit.backend.rooms;
+
+import java.util.Map;
+
+/**
+ * The content of a note at a version, as a room starts from it, and the versions of each
+ * node it includes, see {@link com.coledit.backend.backplane.DocumentUpdate}.
+ */
+public record DocumentSnapshot(String content, int version, Map<String, Integer> lineage) {
+
+    public DocumentSnapshot {
+        lineage = Map.copyOf(lineage);
+    }
+
+    public DocumentSnapshot(String content, int version) {
+        this(content, version, Map.of());
+    }
+}
@@ -0,0 +1,238 @@
+package com.coledit.backend.rooms;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Keeps the heap held by document contents within a byte budget.
+ *
+ * Live rooms report the size of their content, which cannot be dropped while sessions
+ * edit it. Rooms that close leave their content here so a note reopened soon after does
+ * not go back to the database; those idle contents are evicted least recently used first
+ * whenever live and idle contents together exceed the budget, and expire once unused for
+ * the idle expiry. A content larger than a quarter of the budget is not kept at all.
+ * Evicting a content never loses edits: a dirty content stays with the flusher until it is
+ * written, and a room reopening the note takes it from there. Evictions therefore never
+ * wait for the database, which keeps it off the rooms' lanes.
+ */
+@Component
+public class DocumentStateCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentStateCache.class);
+
+    // rough per-entry cost of the map node, the entry and the String header
+    private static final long ENTRY_OVERHEAD_BYTES = 96;
+
+    private final long maxBytes;
+    private final long idleExpiryNanos;
+    private final LongSupplier clock;
+    private final ScheduledExecutorService expirer;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // guarded by the lock, in access order
+    private final LinkedHashMap<String, Idle> idle = new LinkedHashMap<>(16, 0.75f, true);
+    // written under the lock, read without it on the live path
+    private volatile long idleBytes;
+
+    private final AtomicLong liveBytes = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    @Autowired
+    public DocumentStateCache(@Value("${document.cache.max-bytes:67108864}") long maxBytes,
+            @Value("${document.cache.idle-expiry-ms:600000}") long idleExpiryMillis) {
+        this(maxBytes, TimeUnit.MILLISECONDS.toNanos(idleExpiryMillis), System::nanoTime,
+                Executors.newSingleThreadScheduledExecutor(
+                        Thread.ofPlatform().name("document-cache-expiry").daemon().factory()));
+        long period = Math.max(1000, idleExpiryMillis / 4);
+        expirer.scheduleWithFixedDelay(this::expireQuietly, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    DocumentStateCache(long maxBytes, long idleExpiryNanos, LongSupplier clock, ScheduledExecutorService expirer) {
+        this.maxBytes = maxBytes;
+        this.idleExpiryNanos = idleExpiryNanos;
+        this.clock = clock;
+        this.expirer = expirer;
+    }
+
+    /**
+     * Estimated heap held by a content.
+     */
+    public static long weigh(String content) {
+        return ENTRY_OVERHEAD_BYTES + 2L * content.length();
+    }
+
+    /**
+     * Takes the idle content of a note a room is opening for, which the room owns from
+     * now on, with the version it had. Returns null on a miss.
+     */
+    public DocumentSnapshot claim(String noteId) {
+        lock.lock();
+        try {
+            Idle entry = idle.remove(noteId);
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            idleBytes -= entry.bytes();
+            hits.increment();
+            return entry.snapshot();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Keeps the content of a room that closed and its version.
+     */
+    public void retain(String noteId, DocumentSnapshot snapshot) {
+        long bytes = weigh(snapshot.content());
+        lock.lock();
+        try {
+            Idle previous = idle.remove(noteId);
+            if (previous != null) {
+                idleBytes -= previous.bytes();
+            }
+            if (bytes <= maxBytes / 4) {
+                idle.put(noteId, new Idle(snapshot, bytes, clock.getAsLong()));
+                idleBytes += bytes;
+            }
+            evictOverBudget();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records that the contents of live rooms grew or shrank by {@code delta} bytes.
+     */
+    public void adjustLive(long delta) {
+        long live = liveBytes.addAndGet(delta);
+        if (delta > 0 && live + idleBytes > maxBytes) {
+            lock.lock();
+            try {
+                evictOverBudget();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Drops the idle content of a note changed outside of a room.
+     */
+    public void invalidate(String noteId) {
+        lock.lock();
+        try {
+            Idle entry = idle.remove(noteId);
+            if (entry != null) {
+                idleBytes -= entry.bytes();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops the idle contents unused for longer than the idle expiry.
+     */
+    public void expire() {
+        long now = clock.getAsLong();
+        lock.lock();
+        try {
+            Iterator<Map.Entry<String, Idle>> entries = idle.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<String, Idle> entry = entries.next();
+                // access order, everything after this one was used more recently
+                if (now - entry.getValue().lastUsed() < idleExpiryNanos) {
+                    break;
+                }
+                idleBytes -= entry.getValue().bytes();
+                entries.remove();
+                expirations.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // called with the lock held
+    private void evictOverBudget() {
+        Iterator<Map.Entry<String, Idle>> entries = idle.entrySet().iterator();
+        while (idleBytes + liveBytes.get() > maxBytes && entries.hasNext()) {
+            Map.Entry<String, Idle> entry = entries.next();
+            idleBytes -= entry.getValue().bytes();
+            entries.remove();
+            evictions.increment();
+        }
+    }
+
+    private void expireQuietly() {
+        try {
+            expire();
+        } catch (RuntimeException e) {
+            logger.error("Error expiring document contents", e);
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public long getExpiredCount() {
+        return expirations.sum();
+    }
+
+    public long getLiveBytes() {
+        return liveBytes.get();
+    }
+
+    public long getIdleBytes() {
+        return idleBytes;
+    }
+
+    public int getIdleCount() {
+        lock.lock();
+        try {
+            return idle.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (expirer != null) {
+            expirer.shutdownNow();
+        }
+    }
+
+    private record Idle(DocumentSnapshot snapshot, long bytes, long lastUsed) {
+    }
+}
@@ -0,0 +1,100 @@
+package com.coledit.backend.rooms;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.coledit.backend.backplane.Backplane;
+import com.coledit.backend.services.NoteContentFlusher;
+import com.coledit.backend.services.NoteService;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Loads the content a room starts from. Content edited here but not flushed yet is
+ * taken as is, then the content a recently closed room left in the
+ * {@link DocumentStateCache}; anything else is read from the database, and concurrent
+ * loads of the same note share one query. A newer version another node published on the
+ * {@link Backplane} wins over all of them.
+ */
+@Component
+public class NoteContentLoader {
+
+    private final Map<String, CompletableFuture<DocumentSnapshot>> inFlight = new ConcurrentHashMap<>();
+
+    private final NoteService noteService;
+    private final NoteContentFlusher flusher;
+    private final DocumentStateCache cache;
+    private final Backplane backplane;
+    private final Executor loaders;
+
+    @Autowired
+    public NoteContentLoader(NoteService noteService, NoteContentFlusher flusher, DocumentStateCache cache,
+            Backplane backplane) {
+        this(noteService, flusher, cache, backplane, Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    NoteContentLoader(NoteService noteService, NoteContentFlusher flusher, DocumentStateCache cache,
+            Backplane backplane, Executor loaders) {
+        this.noteService = noteService;
+        this.flusher = flusher;
+        this.cache = cache;
+        this.backplane = backplane;
+        this.loaders = loaders;
+    }
+
+    /**
+     * Returns the latest content of a note and its version, completing once it is loaded.
+     */
+    public CompletableFuture<DocumentSnapshot> load(String noteId) {
+        return loadStored(noteId).thenCombine(backplane.latest(noteId),
+                (stored, replicated) -> replicated != null && replicated.version() > stored.version()
+                        ? new DocumentSnapshot(replicated.content(), replicated.version(), replicated.lineage())
+                        : stored);
+    }
+
+    private CompletableFuture<DocumentSnapshot> loadStored(String noteId) {
+        // the room that opens owns the content from now on, the idle copy goes
+        DocumentSnapshot cached = cache.claim(noteId);
+        // the flusher removes a content only once the database has it
+        String dirtyContent = flusher.getDirtyContent(noteId);
+        if (dirtyContent != null) {
+            return CompletableFuture.completedFuture(cached != null
+                    ? new DocumentSnapshot(dirtyContent, cached.version(), cached.lineage())
+                    : new DocumentSnapshot(dirtyContent, 0));
+        }
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        CompletableFuture<DocumentSnapshot> load = new CompletableFuture<>();
+        CompletableFuture<DocumentSnapshot> running = inFlight.putIfAbsent(noteId, load);
+        if (running != null) {
+            return running;
+        }
+
+        loaders.execute(() -> {
+            try {
+                load.complete(new DocumentSnapshot(noteService.getNoteContent(noteId), 0));
+            } catch (RuntimeException e) {
+                load.completeExceptionally(e);
+            } finally {
+                inFlight.remove(noteId, load);
+            }
+        });
+        return load;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (loaders instanceof ExecutorService executorService) {
+            executorService.shutdown();
+        }
+    }
+}
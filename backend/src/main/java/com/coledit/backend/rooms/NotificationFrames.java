@@ -0,0 +1,114 @@
+package com.coledit.backend.rooms;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+
+import com.coledit.backend.dtos.WSOperation;
+import com.coledit.backend.dtos.WSOperationsNotification;
+import com.coledit.backend.dtos.WSUpdateNotification;
+import com.coledit.backend.helpers.BinaryFrames;
+import com.coledit.backend.helpers.TextOperation;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Builds the notifications rooms send, as JSON text for some sessions and
+ * {@link BinaryFrames} for others. Nothing is encoded until a recipient needs a format,
+ * and then only once for all of them.
+ */
+final class NotificationFrames {
+
+    private final ObjectMapper objectMapper;
+
+    NotificationFrames(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    Frame content(String content, int version) {
+        return new Frame(() -> json("updateNotification", content, version),
+                () -> BinaryFrames.encodeContent(BinaryFrames.UPDATE_NOTIFICATION, content, version));
+    }
+
+    Frame ack(int version) {
+        return new Frame(() -> json("ack", null, version), () -> BinaryFrames.encodeAck(version));
+    }
+
+    Frame operations(List<TextOperation> operations, int version) {
+        return new Frame(() -> json(operations, version),
+                () -> BinaryFrames.encodeOperations(BinaryFrames.OPS_NOTIFICATION, operations, version));
+    }
+
+    private String json(String type, String content, int version) {
+        WSUpdateNotification notification = WSUpdateNotification.builder()
+                .type(type)
+                .payload(content)
+                .version(version)
+                .build();
+
+        try {
+            return objectMapper.writeValueAsString(notification);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize update notification", e);
+        }
+    }
+
+    private String json(List<TextOperation> operations, int version) {
+        List<WSOperation> ops = new ArrayList<>(operations.size());
+        for (TextOperation operation : operations) {
+            ops.add(WSOperation.builder()
+                    .type(operation.isInsert() ? "insert" : "delete")
+                    .position(operation.position())
+                    .text(operation.text())
+                    .length(operation.isInsert() ? null : operation.length())
+                    .build());
+        }
+
+        WSOperationsNotification notification = WSOperationsNotification.builder()
+                .type("opsNotification")
+                .version(version)
+                .ops(ops)
+                .build();
+
+        try {
+            return objectMapper.writeValueAsString(notification);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize operations notification", e);
+        }
+    }
+
+    /**
+     * One notification, encoded in a format the first time a recipient needs it. The
+     * JSON message is shared as is; binary recipients each get their own buffer over the
+     * shared bytes, as sending advances a buffer's position.
+     */
+    static final class Frame {
+
+        private final Supplier<String> json;
+        private final Supplier<byte[]> binary;
+        private TextMessage text;
+        private byte[] bytes;
+
+        private Frame(Supplier<String> json, Supplier<byte[]> binary) {
+            this.json = json;
+            this.binary = binary;
+        }
+
+        TextMessage text() {
+            if (text == null) {
+                text = new TextMessage(json.get());
+            }
+            return text;
+        }
+
+        BinaryMessage binary() {
+            if (bytes == null) {
+                bytes = binary.get();
+            }
+            return new BinaryMessage(bytes);
+        }
+    }
+}
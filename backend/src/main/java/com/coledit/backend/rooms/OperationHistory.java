@@ -0,0 +1,93 @@
+package com.coledit.backend.rooms;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.coledit.backend.helpers.TextOperation;
+
+/**
+ * The operations of the most recent versions of a document, kept in a fixed ring so
+ * operations sent against a slightly older version can be transformed, or replayed to a
+ * client resuming from it. Anything older than the ring is answered with a full
+ * snapshot instead.
+ *
+ * Version numbers start over when a note is loaded from the database again, so the
+ * ring also keeps a hash of each version's content, which tells whether the version a
+ * client resumes from is the one held here.
+ */
+class OperationHistory {
+
+    private final List<TextOperation>[] ring;
+    // one more than the operations, the version before the oldest of them is held too
+    private final int[] hashes;
+    private int latestVersion;
+    private int recorded;
+
+    @SuppressWarnings("unchecked")
+    OperationHistory(int capacity) {
+        this.ring = new List[capacity];
+        this.hashes = new int[capacity + 1];
+    }
+
+    void record(int version, List<TextOperation> operations, String content) {
+        ring[Math.floorMod(version, ring.length)] = operations;
+        hashes[Math.floorMod(version, hashes.length)] = hash(content);
+        latestVersion = version;
+        recorded = Math.min(recorded + 1, ring.length);
+    }
+
+    /**
+     * Forgets every version, for a document that jumped to {@code version} without
+     * operations leading there, or was just loaded.
+     */
+    void reset(int version, String content) {
+        hashes[Math.floorMod(version, hashes.length)] = hash(content);
+        latestVersion = version;
+        recorded = 0;
+    }
+
+    /**
+     * Returns whether {@code version} is held and its content hashed to {@code hash}.
+     */
+    boolean matches(int version, int hash) {
+        return version <= latestVersion && version >= latestVersion - recorded
+                && hashes[Math.floorMod(version, hashes.length)] == hash;
+    }
+
+    /**
+     * Returns whether the operations after {@code baseVersion} up to the latest version
+     * are all still held.
+     */
+    boolean covers(int baseVersion, int currentVersion) {
+        if (baseVersion > currentVersion || baseVersion < 0) {
+            return false;
+        }
+        if (baseVersion == currentVersion) {
+            return true;
+        }
+        return latestVersion == currentVersion && baseVersion >= latestVersion - recorded;
+    }
+
+    /**
+     * Returns the operations of every version after {@code baseVersion}, in order.
+     */
+    List<TextOperation> since(int baseVersion) {
+        List<TextOperation> operations = new ArrayList<>();
+        for (int version = baseVersion + 1; version <= latestVersion; version++) {
+            operations.addAll(ring[Math.floorMod(version, ring.length)]);
+        }
+        return operations;
+    }
+
+    /**
+     * FNV-1a over the UTF-16 chars of a content, the same the web client computes.
+     */
+    static int hash(String content) {
+        int hash = 0x811c9dc5;
+        for (int i = 0; i < content.length(); i++) {
+            hash ^= content.charAt(i);
+            hash *= 0x01000193;
+        }
+        return hash;
+    }
+}
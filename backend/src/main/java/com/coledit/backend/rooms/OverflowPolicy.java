@@ -0,0 +1,18 @@
+package com.coledit.backend.rooms;
+
+/**
+ * What happens when a session's outbound queue is full.
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Full-content notifications still queued are replaced by the newest one, which
+     * supersedes them. Sessions receiving operations cannot skip any and are disconnected.
+     */
+    DROP_TO_LATEST,
+
+    /**
+     * The slow session is disconnected, it gets a fresh snapshot when it reconnects.
+     */
+    DISCONNECT
+}
@@ -0,0 +1,80 @@
+package com.coledit.backend.rooms;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.web.socket.WebSocketSession;
+
+import com.coledit.backend.helpers.OperationTransformer;
+import com.coledit.backend.helpers.TextOperation;
+import com.coledit.backend.merging.MergeEngine;
+import com.coledit.backend.metrics.CollaborationMetrics;
+
+/**
+ * The variants of a room's content waiting to be merged, and the merges and
+ * transformations of its updates, timed on the room's metrics. Only used on the room's
+ * lane.
+ */
+final class RoomMerger {
+
+    private final MergeEngine mergeEngine;
+    private final CollaborationMetrics metrics;
+
+    private final List<String> pendingVariants = new ArrayList<>();
+    private final List<WebSocketSession> pendingAuthors = new ArrayList<>();
+    // what each author shows, which differs from its variant when that was rebased
+    private final List<String> pendingShown = new ArrayList<>();
+
+    RoomMerger(MergeEngine mergeEngine, CollaborationMetrics metrics) {
+        this.mergeEngine = mergeEngine;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Queues a variant to be merged with the next ones, from an author that shows
+     * {@code shown}.
+     */
+    void add(String variant, WebSocketSession author, String shown) {
+        pendingVariants.add(variant);
+        pendingAuthors.add(author);
+        pendingShown.add(shown);
+    }
+
+    boolean hasPending() {
+        return !pendingVariants.isEmpty();
+    }
+
+    /**
+     * Merges the pending variants onto {@code content} and returns the result, or null if
+     * none were pending. What each author shows is put in {@code shownBy}.
+     */
+    String mergePending(String content, Map<WebSocketSession, String> shownBy) {
+        if (pendingVariants.isEmpty()) {
+            return null;
+        }
+
+        String merged = merge(content, pendingVariants);
+        for (int i = 0; i < pendingVariants.size(); i++) {
+            shownBy.put(pendingAuthors.get(i), pendingShown.get(i));
+        }
+        pendingVariants.clear();
+        pendingAuthors.clear();
+        pendingShown.clear();
+        return merged;
+    }
+
+    String merge(String original, List<String> variants) {
+        long start = System.nanoTime();
+        String merged = mergeEngine.merge(original, variants);
+        metrics.merged(System.nanoTime() - start);
+        return merged;
+    }
+
+    /**
+     * Transforms a client's operations against the ones accepted since its base version.
+     */
+    List<TextOperation> transform(List<TextOperation> operations, List<TextOperation> acceptedSince) {
+        return OperationTransformer.transform(operations, acceptedSince);
+    }
+}
@@ -0,0 +1,76 @@
+package com.coledit.backend.rooms;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.coledit.backend.services.NoteContentFlusher;
+
+/**
+ * Where a room's content goes as it changes: to the {@link NoteContentFlusher} to be
+ * written, and into the {@link DocumentStateCache}'s accounting while the room is live.
+ * Only used on the room's lane.
+ */
+final class RoomPersistence {
+
+    private static final CompletableFuture<Void> DURABLE = CompletableFuture.completedFuture(null);
+
+    private final String documentId;
+    private final NoteContentFlusher flusher;
+    private final DocumentStateCache cache;
+
+    RoomPersistence(String documentId, NoteContentFlusher flusher, DocumentStateCache cache) {
+        this.documentId = documentId;
+        this.flusher = flusher;
+        this.cache = cache;
+    }
+
+    void opened(String content) {
+        cache.adjustLive(DocumentStateCache.weigh(content));
+    }
+
+    /**
+     * A version accepted here, which this node writes. Returns the log position to wait
+     * for before the version is acknowledged.
+     */
+    long changed(String previous, String content) {
+        long position = flusher.markDirty(documentId, content);
+        cache.adjustLive(DocumentStateCache.weigh(content) - DocumentStateCache.weigh(previous));
+        return position;
+    }
+
+    CompletableFuture<Void> whenDurable(long position) {
+        return position == 0 ? DURABLE : flusher.whenDurable(position);
+    }
+
+    /**
+     * A version another node accepted, which its origin writes.
+     */
+    void replicated(String previous, String content) {
+        // an older one waiting here must not follow it
+        if (flusher.getDirtyContent(documentId) != null) {
+            flusher.markDirty(documentId, content);
+        }
+        cache.adjustLive(DocumentStateCache.weigh(content) - DocumentStateCache.weigh(previous));
+    }
+
+    /**
+     * The last session left, the content stays in the cache for a while.
+     */
+    void closed(DocumentSnapshot snapshot) {
+        cache.adjustLive(-DocumentStateCache.weigh(snapshot.content()));
+        cache.retain(documentId, snapshot);
+    }
+
+    /**
+     * The note was deleted, its sessions are gone with it.
+     */
+    void deleted(String content) {
+        cache.adjustLive(-DocumentStateCache.weigh(content));
+    }
+
+    /**
+     * The note moved to another node, which loads it from there.
+     */
+    void handedOff(String content) {
+        cache.adjustLive(-DocumentStateCache.weigh(content));
+    }
+}
@@ -0,0 +1,95 @@
+package com.coledit.backend.rooms;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import com.coledit.backend.backplane.Backplane;
+import com.coledit.backend.backplane.DocumentUpdate;
+
+/**
+ * A room's side of the {@link Backplane}: it publishes the versions accepted here and
+ * decides what becomes of the versions other nodes accepted. Only used on the room's
+ * lane.
+ *
+ * A newer version that includes everything accepted here is adopted as is. Of two
+ * concurrent versions, the higher one wins, or on a tie the one from the node with the
+ * smaller id; the node that lost adopts it and merges its own content onto it.
+ */
+final class RoomReplication {
+
+    enum Decision {
+        IGNORE, ADOPT, MERGE
+    }
+
+    private final String documentId;
+    private final Backplane backplane;
+
+    // per node, the highest version accepted there that the content includes
+    private final Map<String, Integer> lineage = new HashMap<>();
+    // the content last taken from another node, concurrent versions are merged from it
+    private String sharedContent;
+
+    RoomReplication(String documentId, Backplane backplane) {
+        this.documentId = documentId;
+        this.backplane = backplane;
+    }
+
+    void hydrated(DocumentSnapshot snapshot, String content) {
+        lineage.putAll(snapshot.lineage());
+        sharedContent = content;
+    }
+
+    /**
+     * Publishes a version accepted here.
+     */
+    void announce(int version, String content) {
+        lineage.put(backplane.getNodeId(), version);
+        backplane.publish(new DocumentUpdate(documentId, version, content, backplane.getNodeId(), lineage));
+    }
+
+    /**
+     * Completes once the other nodes can see every version announced so far.
+     */
+    CompletableFuture<Void> flush() {
+        return backplane.flush();
+    }
+
+    /**
+     * Decides what to do with a version another node accepted, the room being at
+     * {@code version}.
+     */
+    Decision decide(DocumentUpdate update, int version) {
+        if (lineage.getOrDefault(update.origin(), -1) >= update.version()) {
+            // already included
+            return Decision.IGNORE;
+        }
+
+        String nodeId = backplane.getNodeId();
+        if (update.lineage().getOrDefault(nodeId, -1) >= lineage.getOrDefault(nodeId, -1)) {
+            // built on everything accepted here
+            return update.version() > version ? Decision.ADOPT : Decision.IGNORE;
+        }
+        if (update.version() < version || (update.version() == version && nodeId.compareTo(update.origin()) < 0)) {
+            // concurrent and ours wins, the other node merges onto it
+            return Decision.IGNORE;
+        }
+        return Decision.MERGE;
+    }
+
+    /**
+     * Records that the room took a version another node accepted.
+     */
+    void adopted(DocumentUpdate update) {
+        update.lineage().forEach((node, accepted) -> lineage.merge(node, accepted, Math::max));
+        sharedContent = update.content();
+    }
+
+    String getSharedContent() {
+        return sharedContent;
+    }
+
+    Map<String, Integer> getLineage() {
+        return lineage;
+    }
+}
@@ -0,0 +1,171 @@
+package com.coledit.backend.rooms;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.coledit.backend.rooms.NotificationFrames.Frame;
+
+/**
+ * The sessions of a room, the protocol and frame format each one speaks, and for
+ * full-text sessions the contents they were last sent. Only used on the room's lane.
+ *
+ * While the room waits for an accepted version to be durable in the write-ahead log,
+ * what it sends is held back here and queued once the log has it.
+ */
+final class RoomSessions {
+
+    private static final Logger logger = LoggerFactory.getLogger(RoomSessions.class);
+
+    // contents kept per full-text session to rebase its updates on, and how many of its
+    // updates may wait for an earlier one
+    private static final int SESSION_VERSIONS = 16;
+    private static final int MAX_EARLY_UPDATES = 8;
+
+    private final SessionOutboxes outboxes;
+    private final List<WebSocketSession> sessions = new ArrayList<>();
+    private final Set<WebSocketSession> operationSessions = new HashSet<>();
+    private final Set<WebSocketSession> binarySessions = new HashSet<>();
+    private final Map<WebSocketSession, SessionVersions> sessionVersions = new HashMap<>();
+
+    // sends waiting for the log to be durable up to heldUntil, 0 when nothing waits
+    private final List<HeldSend> held = new ArrayList<>();
+    private long heldUntil;
+
+    RoomSessions(SessionOutboxes outboxes) {
+        this.outboxes = outboxes;
+    }
+
+    void add(WebSocketSession session, boolean operations, boolean binary) {
+        sessions.add(session);
+        if (operations) {
+            operationSessions.add(session);
+        } else {
+            sessionVersions.put(session, new SessionVersions(SESSION_VERSIONS, MAX_EARLY_UPDATES));
+        }
+        if (binary) {
+            binarySessions.add(session);
+        }
+    }
+
+    /**
+     * Removes a session and drops what is still queued for it.
+     */
+    void remove(WebSocketSession session) {
+        sessions.remove(session);
+        operationSessions.remove(session);
+        binarySessions.remove(session);
+        sessionVersions.remove(session);
+        held.removeIf(send -> send.session() == session);
+        outboxes.remove(session);
+    }
+
+    /**
+     * Removes every session and closes it with the given status.
+     */
+    void closeAll(CloseStatus status) {
+        for (WebSocketSession session : sessions) {
+            close(session, status);
+        }
+        sessions.clear();
+        operationSessions.clear();
+        binarySessions.clear();
+        sessionVersions.clear();
+        held.clear();
+        heldUntil = 0;
+    }
+
+    /**
+     * Closes a session, which may never have been added.
+     */
+    void close(WebSocketSession session, CloseStatus status) {
+        outboxes.remove(session);
+        try {
+            session.close(status);
+        } catch (IOException e) {
+            logger.warn("Error closing session {}: {}", session.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Holds back everything sent from now on until the log is durable up to
+     * {@code position}.
+     */
+    void holdUntil(long position) {
+        heldUntil = Math.max(heldUntil, position);
+    }
+
+    /**
+     * Queues what was held back once the log is durable up to the last position held for.
+     */
+    void release(long durable) {
+        if (heldUntil == 0 || durable < heldUntil) {
+            return;
+        }
+        heldUntil = 0;
+        for (HeldSend send : held) {
+            outboxes.send(send.session(), send.message(), send.replaceable());
+        }
+        held.clear();
+    }
+
+    List<WebSocketSession> all() {
+        return sessions;
+    }
+
+    int size() {
+        return sessions.size();
+    }
+
+    boolean isEmpty() {
+        return sessions.isEmpty();
+    }
+
+    boolean isOperations(WebSocketSession session) {
+        return operationSessions.contains(session);
+    }
+
+    /**
+     * Returns the contents a full-text session was sent, or null for an operation session
+     * or one that left.
+     */
+    SessionVersions versions(WebSocketSession session) {
+        return sessionVersions.get(session);
+    }
+
+    /**
+     * Sends a content notification of the given content and version, which a full-text
+     * session is then known to show.
+     */
+    void sendContent(WebSocketSession session, Frame notification, int version, String content) {
+        SessionVersions known = sessionVersions.get(session);
+        if (known != null) {
+            known.record(version, content);
+        }
+        send(session, notification);
+    }
+
+    void send(WebSocketSession session, Frame frame) {
+        WebSocketMessage<?> message = binarySessions.contains(session) ? frame.binary() : frame.text();
+        // only queued here, full-text sessions can skip to the newest content
+        boolean replaceable = !operationSessions.contains(session);
+        if (heldUntil > 0) {
+            held.add(new HeldSend(session, message, replaceable));
+        } else {
+            outboxes.send(session, message, replaceable);
+        }
+    }
+
+    private record HeldSend(WebSocketSession session, WebSocketMessage<?> message, boolean replaceable) {
+    }
+}
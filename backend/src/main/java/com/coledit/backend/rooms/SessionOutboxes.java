@@ -0,0 +1,222 @@
+package com.coledit.backend.rooms;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.coledit.backend.metrics.CollaborationMetrics;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * A bounded outbound queue per session, so a broadcast only enqueues and a slow client
+ * never holds up its room. Each queue is drained by at most one task at a time, which
+ * keeps the messages of a session in order; the same message instance is queued for
+ * every session it goes to. Each send is timed, so a slow client shows up in the send
+ * latency percentiles.
+ */
+@Component
+public class SessionOutboxes {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionOutboxes.class);
+
+    // messages sent before the drain task is handed back
+    private static final int MAX_MESSAGES_PER_DRAIN = 64;
+
+    private final Map<String, Outbox> outboxes = new ConcurrentHashMap<>();
+    private final BroadcastStats stats = new BroadcastStats();
+
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final Executor senders;
+    private final CollaborationMetrics metrics;
+
+    @Autowired
+    public SessionOutboxes(@Value("${document.outbound.capacity:64}") int capacity,
+            @Value("${document.outbound.overflow-policy:drop-to-latest}") String overflowPolicy,
+            CollaborationMetrics metrics) {
+        this(capacity, OverflowPolicy.valueOf(overflowPolicy.toUpperCase().replace('-', '_')),
+                Executors.newVirtualThreadPerTaskExecutor(), metrics);
+    }
+
+    SessionOutboxes(int capacity, OverflowPolicy overflowPolicy, Executor senders, CollaborationMetrics metrics) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Outbound queue capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.senders = senders;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Queues a message for a session. A {@code replaceable} message carries the full
+     * state and supersedes the ones queued before it.
+     */
+    public void send(WebSocketSession session, WebSocketMessage<?> message, boolean replaceable) {
+        if (!session.isOpen()) {
+            return;
+        }
+        outboxes.computeIfAbsent(session.getId(), id -> new Outbox(session)).offer(message, replaceable);
+    }
+
+    /**
+     * Forgets a session's queue, dropping what it still holds.
+     */
+    public void remove(WebSocketSession session) {
+        Outbox outbox = outboxes.remove(session.getId());
+        if (outbox != null) {
+            outbox.discard();
+        }
+    }
+
+    public BroadcastStats getStats() {
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (senders instanceof ExecutorService executorService) {
+            executorService.shutdown();
+        }
+    }
+
+    private final class Outbox {
+
+        private final WebSocketSession session;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        // guarded by the lock
+        private final ArrayDeque<WebSocketMessage<?>> queue = new ArrayDeque<>();
+        // set while the queue holds only messages the next replaceable one supersedes
+        private boolean replaceableOnly = true;
+        private boolean closed;
+
+        Outbox(WebSocketSession session) {
+            this.session = session;
+        }
+
+        void offer(WebSocketMessage<?> message, boolean replaceable) {
+            boolean disconnect = false;
+            lock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                if (queue.size() >= capacity) {
+                    if (overflowPolicy == OverflowPolicy.DROP_TO_LATEST && replaceable && replaceableOnly) {
+                        stats.dropped(queue.size());
+                        stats.dequeued(queue.size());
+                        queue.clear();
+                    } else {
+                        disconnect = true;
+                        closed = true;
+                        stats.dropped(queue.size() + 1);
+                        stats.dequeued(queue.size());
+                        queue.clear();
+                    }
+                }
+                if (!disconnect) {
+                    queue.add(message);
+                    replaceableOnly &= replaceable;
+                    stats.queued(queue.size());
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (disconnect) {
+                stats.disconnected();
+                senders.execute(this::close);
+            } else if (scheduled.compareAndSet(false, true)) {
+                senders.execute(this::drain);
+            }
+        }
+
+        void discard() {
+            lock.lock();
+            try {
+                closed = true;
+                stats.dequeued(queue.size());
+                queue.clear();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private WebSocketMessage<?> poll() {
+            lock.lock();
+            try {
+                WebSocketMessage<?> message = queue.poll();
+                if (message != null) {
+                    stats.dequeued(1);
+                }
+                if (queue.isEmpty()) {
+                    replaceableOnly = true;
+                }
+                return message;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean isEmpty() {
+            lock.lock();
+            try {
+                return queue.isEmpty();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void drain() {
+            try {
+                WebSocketMessage<?> message;
+                int sent = 0;
+                while (sent < MAX_MESSAGES_PER_DRAIN && (message = poll()) != null) {
+                    if (!session.isOpen()) {
+                        discard();
+                        break;
+                    }
+                    long start = System.nanoTime();
+                    session.sendMessage(message);
+                    metrics.sent(System.nanoTime() - start);
+                    stats.sent();
+                    sent++;
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Error sending update to session {}", session.getId(), e);
+            } finally {
+                scheduled.set(false);
+                if (!isEmpty() && scheduled.compareAndSet(false, true)) {
+                    senders.execute(this::drain);
+                }
+            }
+        }
+
+        private void close() {
+            try {
+                logger.info("Disconnecting slow session {}", session.getId());
+                session.close(CloseStatus.SESSION_NOT_RELIABLE);
+            } catch (IOException e) {
+                logger.warn("Error closing session {}: {}", session.getId(), e.getMessage());
+            }
+        }
+    }
+}
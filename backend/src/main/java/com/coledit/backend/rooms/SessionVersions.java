@@ -0,0 +1,115 @@
+package com.coledit.backend.rooms;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * What one full-text session is known to show, by the version number it uses: the
+ * contents it was sent and the ones it sent itself, of its most recent versions. A
+ * client numbers its edits on from the last version it was sent, so its update for
+ * version {@code n} was made on its content at {@code n - 1}, which may be a version the
+ * room has merged other variants onto since.
+ *
+ * The same number can stand for two contents: a version the session sent, and the
+ * merged one it was notified of meanwhile, which it then replaced its own with. Which one
+ * a later update was made on depends on whether the notification reached the client
+ * first, so the one closest to the update is taken.
+ *
+ * Updates that arrive before the one they were made on are held back, a few at most,
+ * until it comes in.
+ */
+class SessionVersions {
+
+    private final int capacity;
+    private final int maxEarly;
+    // insertion ordered, so the eldest entry is the one recorded longest ago
+    private final LinkedHashMap<Integer, List<String>> contents = new LinkedHashMap<>();
+    private final TreeMap<Integer, String> early = new TreeMap<>();
+    private int latestVersion = -1;
+
+    SessionVersions(int capacity, int maxEarly) {
+        this.capacity = capacity;
+        this.maxEarly = maxEarly;
+    }
+
+    /**
+     * Records that the session shows {@code content} as {@code version}, next to the
+     * last content recorded for it before.
+     */
+    void record(int version, String content) {
+        List<String> previous = contents.remove(version);
+        contents.put(version, previous == null || previous.getLast().equals(content) ? List.of(content)
+                : List.of(previous.getLast(), content));
+        if (contents.size() > capacity) {
+            Iterator<Map.Entry<Integer, List<String>>> eldest = contents.entrySet().iterator();
+            eldest.next();
+            eldest.remove();
+        }
+        latestVersion = Math.max(latestVersion, version);
+    }
+
+    /**
+     * Returns the content the session showed as {@code version} that {@code updated}
+     * differs least from, or null when none is kept.
+     */
+    String baseOf(int version, String updated) {
+        List<String> candidates = contents.get(version);
+        if (candidates == null) {
+            return null;
+        }
+        String base = candidates.getLast();
+        if (candidates.size() > 1 && changed(candidates.getFirst(), updated) < changed(base, updated)) {
+            base = candidates.getFirst();
+        }
+        return base;
+    }
+
+    /**
+     * Returns whether {@code version} is past every version recorded, so an update made
+     * on it is early rather than outdated.
+     */
+    boolean isAhead(int version) {
+        return version > latestVersion;
+    }
+
+    /**
+     * Holds back an update that arrived early. Returns false when the buffer is full, in
+     * which case it is cleared, as the session will not get back in step by itself.
+     */
+    boolean holdBack(int version, String content) {
+        if (early.size() >= maxEarly && !early.containsKey(version)) {
+            early.clear();
+            return false;
+        }
+        early.put(version, content);
+        return true;
+    }
+
+    /**
+     * Removes and returns the held back update for {@code version}, if there is one.
+     */
+    String release(int version) {
+        return early.remove(version);
+    }
+
+    /**
+     * Returns how many chars were removed from and inserted into {@code a} to get
+     * {@code b}, past their common prefix and suffix.
+     */
+    static int changed(String a, String b) {
+        int shorter = Math.min(a.length(), b.length());
+        int prefix = 0;
+        while (prefix < shorter && a.charAt(prefix) == b.charAt(prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < shorter - prefix
+                && a.charAt(a.length() - 1 - suffix) == b.charAt(b.length() - 1 - suffix)) {
+            suffix++;
+        }
+        return a.length() + b.length() - 2 * (prefix + suffix);
+    }
+}
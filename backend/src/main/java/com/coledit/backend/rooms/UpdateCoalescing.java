@@ -0,0 +1,95 @@
+package com.coledit.backend.rooms;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * How long a busy room holds back its notifications. A room publishes right away when
+ * it has not published for a whole window, so an idle note echoes immediately; within
+ * the window, updates are merged as they come but notified once, when the window ends
+ * or {@code maxUpdates} updates have piled up. A window of 0 publishes every merge.
+ */
+@Component
+public class UpdateCoalescing {
+
+    /**
+     * Runs a task after a delay.
+     */
+    interface Timer {
+        void schedule(Runnable task, long delayNanos);
+    }
+
+    private final long windowNanos;
+    private final int maxUpdates;
+    private final LongSupplier clock;
+    private final Timer timer;
+    private final ScheduledExecutorService scheduler;
+
+    @Autowired
+    public UpdateCoalescing(@Value("${document.coalescing.window-ms:20}") long windowMillis,
+            @Value("${document.coalescing.max-updates:32}") int maxUpdates) {
+        this(TimeUnit.MILLISECONDS.toNanos(windowMillis), maxUpdates,
+                Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("document-coalescing")
+                        .daemon().factory()));
+    }
+
+    private UpdateCoalescing(long windowNanos, int maxUpdates, ScheduledExecutorService scheduler) {
+        this(windowNanos, maxUpdates, System::nanoTime,
+                (task, delayNanos) -> scheduler.schedule(task, delayNanos, TimeUnit.NANOSECONDS), scheduler);
+    }
+
+    UpdateCoalescing(long windowNanos, int maxUpdates, LongSupplier clock, Timer timer) {
+        this(windowNanos, maxUpdates, clock, timer, null);
+    }
+
+    private UpdateCoalescing(long windowNanos, int maxUpdates, LongSupplier clock, Timer timer,
+            ScheduledExecutorService scheduler) {
+        this.windowNanos = Math.max(0, windowNanos);
+        this.maxUpdates = Math.max(1, maxUpdates);
+        this.clock = clock;
+        this.timer = timer;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Publishes every merge right away, for tests and when coalescing is configured off.
+     */
+    static UpdateCoalescing disabled() {
+        return new UpdateCoalescing(0, 1, System::nanoTime, (task, delayNanos) -> task.run());
+    }
+
+    boolean isEnabled() {
+        return windowNanos > 0;
+    }
+
+    long getWindowNanos() {
+        return windowNanos;
+    }
+
+    int getMaxUpdates() {
+        return maxUpdates;
+    }
+
+    long now() {
+        return clock.getAsLong();
+    }
+
+    void schedule(Runnable task, long delayNanos) {
+        timer.schedule(task, delayNanos);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+}
@@ -5,16 +5,22 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
+import com.coledit.backend.dtos.AuthenticatedPrincipal;
+import com.coledit.backend.entities.User;
+
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.io.Decoders;
@@ -24,15 +30,43 @@ import jakarta.servlet.http.HttpServletRequest;
 
 /**
  * Service class for handling JWT (JSON Web Token) operations.
+ *
+ * The signing key and the parser are built once. Claims of verified tokens are cached,
+ * so a token is verified once per {@code security.jwt.claims-cache.ttl-ms} however often
+ * the filters read it.
  */
 @Service
 public class JwtService {
 
-    @Value("${security.jwt.secret-key}")
-    public String secretKey;
+    private static final long ALLOWED_CLOCK_SKEW_SECONDS = 3600;
+    private static final String ROLES_CLAIM = "roles";
+    private static final String USER_ID_CLAIM = "userId";
+
+    private final long jwtExpiration;
+    private final Key signInKey;
+    private final JwtParser parser;
+    private final VerifiedClaimsCache claimsCache;
 
-    @Value("${security.jwt.expire-time}")
-    public long jwtExpiration;
+    @Autowired
+    public JwtService(@Value("${security.jwt.secret-key}") String secretKey,
+            @Value("${security.jwt.expire-time}") long jwtExpiration,
+            @Value("${security.jwt.claims-cache.max-entries:10000}") int claimsCacheEntries,
+            @Value("${security.jwt.claims-cache.ttl-ms:60000}") long claimsCacheTtlMillis) {
+        this(secretKey, jwtExpiration,
+                new VerifiedClaimsCache(claimsCacheEntries, claimsCacheTtlMillis, System::currentTimeMillis));
+    }
+
+    JwtService(String secretKey, long jwtExpiration, VerifiedClaimsCache claimsCache) {
+        this.jwtExpiration = jwtExpiration;
+        this.signInKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(secretKey));
+        // the parser is immutable and can be shared by all requests
+        this.parser = Jwts
+                .parserBuilder()
+                .setSigningKey(signInKey)
+                .setAllowedClockSkewSeconds(ALLOWED_CLOCK_SKEW_SECONDS)
+                .build();
+        this.claimsCache = claimsCache;
+    }
 
     /**
      * Extracts the username from the JWT token.
@@ -71,9 +105,13 @@ public class JwtService {
      */
     public String generateToken(UserDetails userDetails) {
         Map<String, Object> claims = new HashMap<>();
-        claims.put("roles", userDetails.getAuthorities().stream()
+        claims.put(ROLES_CLAIM, userDetails.getAuthorities().stream()
                 .map(GrantedAuthority::getAuthority)
                 .collect(Collectors.toList()));
+        // lets requests know who they are from without looking the user up
+        if (userDetails instanceof User user && user.getUserId() != null) {
+            claims.put(USER_ID_CLAIM, user.getUserId().toString());
+        }
         return generateToken(claims, userDetails);
     }
 
@@ -127,8 +165,28 @@ public class JwtService {
      * @return true if the token is valid, false otherwise
      */
     public boolean isTokenValid(String token, UserDetails userDetails) {
-        final String username = extractUsername(token);
-        return (username.equals(userDetails.getUsername())) && !isTokenExpired(token);
+        final Claims claims = extractClaim(token, Function.identity());
+        return claims != null && userDetails.getUsername().equals(claims.getSubject())
+                && claims.getExpiration() != null && !claims.getExpiration().before(new Date());
+    }
+
+    /**
+     * Resolves the principal a JWT token was issued to from its claims alone, without
+     * loading the user.
+     * 
+     * @param token the JWT token
+     * @return the principal, or null if the token is invalid or expired
+     */
+    public AuthenticatedPrincipal resolvePrincipal(String token) {
+        final Claims claims = extractClaim(token, Function.identity());
+        if (claims == null || claims.getSubject() == null || claims.getExpiration() == null
+                || claims.getExpiration().before(new Date())) {
+            return null;
+        }
+        String userId = claims.get(USER_ID_CLAIM, String.class);
+        List<?> roles = claims.get(ROLES_CLAIM, List.class);
+        return new AuthenticatedPrincipal(userId == null ? null : UUID.fromString(userId), claims.getSubject(),
+                roles == null ? List.of() : roles.stream().map(String::valueOf).toList());
     }
 
     /**
@@ -157,19 +215,22 @@ public class JwtService {
     }
 
     /**
-     * Extracts all claims from a JWT token.
+     * Extracts all claims from a JWT token, verifying it unless it was verified lately.
+     * The claims returned may be shared and must not be modified.
      * 
      * @param token the JWT token
      * @return the claims extracted from the token
      */
     private Claims extractAllClaims(String token) {
-        return Jwts
-                .parserBuilder()
-                .setSigningKey(getSignInKey())
-                .setAllowedClockSkewSeconds(3600)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        Claims claims = claimsCache.get(token);
+        if (claims == null) {
+            claims = parser.parseClaimsJws(token).getBody();
+            // the parser accepts a token until its expiration plus the skew, so may the cache
+            Date expiration = claims.getExpiration();
+            claimsCache.put(token, claims, expiration == null ? Long.MAX_VALUE
+                    : expiration.getTime() + ALLOWED_CLOCK_SKEW_SECONDS * 1000);
+        }
+        return claims;
     }
 
     /**
@@ -180,7 +241,7 @@ public class JwtService {
      */
     @SuppressWarnings("unchecked")
     public List<String> extractRoles(String token) {
-        return extractClaim(token, claims -> claims.get("roles", List.class));
+        return extractClaim(token, claims -> claims.get(ROLES_CLAIM, List.class));
     }
 
     /**
@@ -189,8 +250,7 @@ public class JwtService {
      * @return the signing key
      */
     public Key getSignInKey() {
-        byte[] keyBytes = Decoders.BASE64.decode(secretKey);
-        return Keys.hmacShaKeyFor(keyBytes);
+        return signInKey;
     }
 
     /**
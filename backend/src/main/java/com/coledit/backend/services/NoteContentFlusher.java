@@ -0,0 +1,219 @@
+package com.coledit.backend.services;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.coledit.backend.metrics.CollaborationMetrics;
+import com.coledit.backend.wal.WriteAheadLog;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Write-behind persistence of note contents edited over WebSocket.
+ *
+ * Rooms only mark a note dirty with its latest content. A background task writes all
+ * dirty notes every {@code flushInterval} in one JDBC batch, which bounds how stale the
+ * database can get without putting it on the keystroke path. A note changed again while
+ * its batch was written stays dirty for the next one, and a failed batch is retried.
+ *
+ * Every content marked dirty is also appended to the {@link WriteAheadLog} before the
+ * room acknowledges it, and the room waits for {@link #whenDurable(long)} rather than
+ * for a force of its own, so concurrent rooms share one group commit and no fsync runs
+ * on their lanes. The log is checkpointed after each complete flush and replayed into
+ * the dirty notes on startup, so a crash loses no acknowledged edit.
+ */
+@Service
+public class NoteContentFlusher {
+
+    private static final String UPDATE_CONTENT = "UPDATE notes SET content = ? WHERE note_id = ?";
+
+    private final Map<String, String> dirty = new ConcurrentHashMap<>();
+    // one flush at a time, so an older batch never overwrites a newer one
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final WriteAheadLog log;
+    private final int batchSize;
+    private final ScheduledExecutorService scheduler;
+    private final CollaborationMetrics metrics;
+
+    @Autowired
+    public NoteContentFlusher(JdbcTemplate jdbcTemplate, WriteAheadLog log,
+            @Value("${document.persistence.flush-interval-ms:1000}") long flushIntervalMillis,
+            @Value("${document.persistence.batch-size:500}") int batchSize,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+            CollaborationMetrics metrics) {
+        // a flush mostly waits on the database, which a virtual thread does without a carrier
+        this(jdbcTemplate, log, batchSize, Executors.newSingleThreadScheduledExecutor(
+                (virtualThreads ? Thread.ofVirtual() : Thread.ofPlatform().daemon())
+                        .name("note-content-flusher").factory()), metrics);
+
+        // contents accepted before the last shutdown or crash and possibly never written
+        Map<String, String> unflushed = log.replay();
+        if (!unflushed.isEmpty()) {
+            System.out.println("Replaying " + unflushed.size() + " note contents from the write-ahead log");
+            dirty.putAll(unflushed);
+        }
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    NoteContentFlusher(JdbcTemplate jdbcTemplate, WriteAheadLog log, int batchSize,
+            ScheduledExecutorService scheduler, CollaborationMetrics metrics) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.log = log;
+        this.batchSize = Math.max(1, batchSize);
+        this.scheduler = scheduler;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Records the latest content of a note, replacing any content not yet written, and
+     * appends it to the log. Returns the log position to wait for with
+     * {@link #whenDurable(long)}, or 0 if there is nothing to wait for.
+     */
+    public long markDirty(String noteId, String content) {
+        // dirty first, so a record logged before a flush's checkpoint is always seen by that flush
+        dirty.put(noteId, content);
+        try {
+            return log.append(noteId, content);
+        } catch (RuntimeException e) {
+            // still written by the next flush, only a crash before then would lose it
+            System.err.println("Error appending note " + noteId + " to the write-ahead log: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Completes once the log is durable up to a position {@link #markDirty} returned.
+     */
+    public CompletableFuture<Void> whenDurable(long position) {
+        return log.whenDurable(position);
+    }
+
+    /**
+     * Drops the content of a note not written yet, for a note whose stored content was
+     * replaced or which was deleted.
+     */
+    public void forget(String noteId) {
+        dirty.remove(noteId);
+    }
+
+    /**
+     * Returns the content of a note not written to the database yet, or null.
+     */
+    public String getDirtyContent(String noteId) {
+        return dirty.get(noteId);
+    }
+
+    public int getDirtyCount() {
+        return dirty.size();
+    }
+
+    /**
+     * Writes every dirty note and returns how many were written.
+     *
+     * @throws DataAccessException if a batch fails, its notes stay dirty
+     */
+    public int flush() {
+        flushLock.lock();
+        try {
+            long start = System.nanoTime();
+            long checkpoint = log.position();
+            List<Map.Entry<String, String>> batch = new ArrayList<>(Math.min(dirty.size(), batchSize));
+            int written = 0;
+            for (Map.Entry<String, String> entry : dirty.entrySet()) {
+                if (!isNoteId(entry.getKey())) {
+                    System.err.println("Dropping content of unknown note " + entry.getKey());
+                    dirty.remove(entry.getKey(), entry.getValue());
+                    continue;
+                }
+                batch.add(Map.entry(entry.getKey(), entry.getValue()));
+                if (batch.size() == batchSize) {
+                    written += write(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                written += write(batch);
+            }
+            // every content logged before the checkpoint is in the database now
+            log.checkpoint(checkpoint);
+            // the idle flushes every interval would only bury the ones that wrote something
+            if (written > 0) {
+                metrics.flushed(System.nanoTime() - start, written);
+            }
+            return written;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private int write(List<Map.Entry<String, String>> batch) {
+        jdbcTemplate.batchUpdate(UPDATE_CONTENT, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ps.setString(1, batch.get(i).getValue());
+                ps.setObject(2, UUID.fromString(batch.get(i).getKey()));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return batch.size();
+            }
+        });
+
+        // content that changed while the batch was written stays dirty
+        for (Map.Entry<String, String> entry : batch) {
+            dirty.remove(entry.getKey(), entry.getValue());
+        }
+        return batch.size();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            metrics.flushFailed();
+            System.err.println("Error flushing note contents, retrying later: " + e.getMessage());
+        }
+    }
+
+    private static boolean isNoteId(String noteId) {
+        try {
+            UUID.fromString(noteId);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Stops the periodic flush and writes what is still dirty; what the database cannot
+     * take stays in the log.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+        flushQuietly();
+    }
+}
@@ -0,0 +1,13 @@
+package com.coledit.backend.services;
+
+/**
+ * Published when the stored content of a note is replaced through the REST API, or the
+ * note is deleted, in which case {@code content} is null. Nothing the rooms hold for the
+ * note may win over the stored content after that.
+ */
+public record NoteContentReplaced(String noteId, String content) {
+
+    public boolean isDeleted() {
+        return content == null;
+    }
+}
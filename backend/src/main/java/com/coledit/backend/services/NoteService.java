@@ -5,6 +5,7 @@ import java.util.Optional;
 import java.util.UUID;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import com.coledit.backend.entities.Note;
@@ -20,11 +21,14 @@ public class NoteService {
 
     private final NoteRepository noteRepository;
     private final UserRepository userRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Autowired
-    public NoteService(NoteRepository noteRepository, UserRepository userRepository) {
+    public NoteService(NoteRepository noteRepository, UserRepository userRepository,
+            ApplicationEventPublisher eventPublisher) {
         this.noteRepository = noteRepository;
         this.userRepository = userRepository;
+        this.eventPublisher = eventPublisher;
     }
 
     public Note createNote(Note note) {
@@ -40,14 +44,18 @@ public class NoteService {
         return noteRepository.findAll();
     }
 
-    @Transactional
-    public void updateNoteContent(String documentId, String newContent) {
-        Note note = noteRepository.findById(UUID.fromString(documentId)).orElse(null);
-
-        if (note != null) {
-            note.setContent(newContent);
-            noteRepository.save(note);
+    /**
+     * Returns the stored content of a note, or an empty string if it has none or does
+     * not exist.
+     */
+    public String getNoteContent(String id) {
+        UUID noteId;
+        try {
+            noteId = UUID.fromString(id);
+        } catch (IllegalArgumentException e) {
+            return "";
         }
+        return noteRepository.findContentByNoteId(noteId).orElse("");
     }
 
     @Transactional
@@ -56,6 +64,8 @@ public class NoteService {
         if (existingNote.isPresent()) {
             Note noteToUpdate = existingNote.get();
             noteToUpdate.setContent(newNote.getContent());
+            // the rooms take it over whatever they hold for the note
+            eventPublisher.publishEvent(new NoteContentReplaced(id, newNote.getContent()));
             noteToUpdate.setOwner(newNote.getOwner());
             noteToUpdate.setCollaborators(newNote.getCollaborators());
             return noteRepository.save(noteToUpdate);
@@ -67,6 +77,7 @@ public class NoteService {
     public boolean deleteNoteById(String id) {
         if (noteRepository.existsById(UUID.fromString(id))) {
             noteRepository.deleteById(UUID.fromString(id));
+            eventPublisher.publishEvent(new NoteContentReplaced(id, null));
             return true;
         }
         return false;
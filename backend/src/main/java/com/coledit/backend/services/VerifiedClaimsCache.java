@@ -0,0 +1,99 @@
+package com.coledit.backend.services;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import io.jsonwebtoken.Claims;
+
+/**
+ * Claims of tokens whose signature was already verified, so a token sent with every
+ * request is parsed and verified once per time to live rather than several times per
+ * request.
+ *
+ * Tokens are kept by their SHA-256 digest, never as they are. An entry is dropped after
+ * the time to live, or when its token expires if that is sooner. When the cache is full,
+ * expired entries are swept and, if that is not enough, arbitrary ones are evicted.
+ */
+class VerifiedClaimsCache {
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private record Entry(Claims claims, long expiresAt) {
+    }
+
+    VerifiedClaimsCache(int maxEntries, long ttlMillis, LongSupplier clock) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the claims verified for the token, or null if it has not been verified
+     * lately.
+     */
+    Claims get(String token) {
+        if (maxEntries <= 0) {
+            return null;
+        }
+        String digest = digest(token);
+        Entry entry = entries.get(digest);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt() <= clock.getAsLong()) {
+            entries.remove(digest, entry);
+            return null;
+        }
+        return entry.claims();
+    }
+
+    /**
+     * Keeps the claims of a token whose signature has just been verified.
+     */
+    void put(String token, Claims claims, long tokenExpiresAt) {
+        if (maxEntries <= 0) {
+            return;
+        }
+        long now = clock.getAsLong();
+        long expiresAt = Math.min(now + ttlMillis, tokenExpiresAt);
+        if (expiresAt <= now) {
+            return;
+        }
+        if (entries.size() >= maxEntries) {
+            makeRoom(now);
+        }
+        entries.put(digest(token), new Entry(claims, expiresAt));
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private void makeRoom(long now) {
+        entries.values().removeIf(entry -> entry.expiresAt() <= now);
+        Iterator<String> digests = entries.keySet().iterator();
+        while (entries.size() >= maxEntries && digests.hasNext()) {
+            digests.next();
+            digests.remove();
+        }
+    }
+
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
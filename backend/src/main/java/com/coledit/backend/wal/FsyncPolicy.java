@@ -0,0 +1,23 @@
+package com.coledit.backend.wal;
+
+/**
+ * When appended updates are forced to disk.
+ */
+public enum FsyncPolicy {
+
+    /**
+     * An append is durable once it is on disk. Appends waiting together share one force.
+     */
+    ALWAYS,
+
+    /**
+     * An append is durable once written, the log is forced every interval. A crash of the
+     * machine loses at most that interval, a crash of the process nothing.
+     */
+    INTERVAL,
+
+    /**
+     * The operating system decides when to write back.
+     */
+    NEVER
+}
@@ -0,0 +1,470 @@
+package com.coledit.backend.wal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * An append-only log of the note contents accepted by this node, kept until they are
+ * checkpointed to the database.
+ *
+ * Records are appended to segment files through a {@link FileChannel}; a segment is
+ * named after the log position it starts at and a new one is started once it is full.
+ * An append only writes, {@link #whenDurable(long)} tells when a position is as durable
+ * as the fsync policy asks for; under {@link FsyncPolicy#ALWAYS} the callers waiting
+ * together share one force on the sync thread, a group commit.
+ *
+ * {@link #checkpoint(long)} records a position whose contents are all in the database
+ * and deletes the segments ending before it, and {@link #replay()} reads back the
+ * records after it following a restart, stopping at a torn or corrupt record.
+ *
+ * A record is its length, a CRC32C of the rest, the note id and the content.
+ */
+@Component
+public class WriteAheadLog {
+
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final CompletableFuture<Void> DURABLE = CompletableFuture.completedFuture(null);
+    private static final int HEADER_BYTES = Integer.BYTES * 2;
+
+    private final Path directory;
+    private final FsyncPolicy fsyncPolicy;
+    private final long segmentBytes;
+    private final ScheduledExecutorService syncer;
+
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final ReentrantLock syncLock = new ReentrantLock();
+
+    // guarded by appendLock
+    private FileChannel segment;
+    private long segmentStart;
+    private long position;
+    private final List<Long> segmentStarts = new ArrayList<>();
+    private long checkpointPosition;
+
+    // forced up to here, and the callers waiting for a position to be
+    private final AtomicLong syncedPosition = new AtomicLong();
+    private final ConcurrentNavigableMap<Long, CompletableFuture<Void>> waiting = new ConcurrentSkipListMap<>();
+    private final AtomicBoolean syncScheduled = new AtomicBoolean();
+
+    @Autowired
+    public WriteAheadLog(@Value("${document.wal.enabled:true}") boolean enabled,
+            @Value("${document.wal.directory:data/wal}") String directory,
+            @Value("${document.wal.fsync:interval}") String fsyncPolicy,
+            @Value("${document.wal.fsync-interval-ms:100}") long fsyncIntervalMillis,
+            @Value("${document.wal.segment-bytes:16777216}") long segmentBytes) throws IOException {
+        this(enabled ? Paths.get(directory) : null, FsyncPolicy.valueOf(fsyncPolicy.toUpperCase()),
+                fsyncIntervalMillis, segmentBytes);
+    }
+
+    public WriteAheadLog(Path directory, FsyncPolicy fsyncPolicy, long fsyncIntervalMillis, long segmentBytes)
+            throws IOException {
+        this.directory = directory;
+        this.fsyncPolicy = fsyncPolicy;
+        this.segmentBytes = segmentBytes;
+
+        if (directory == null) {
+            this.syncer = null;
+            return;
+        }
+
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .forEach(segmentStarts::add);
+        }
+        checkpointPosition = readCheckpoint();
+        openTail();
+        syncedPosition.set(position);
+
+        if (fsyncPolicy == FsyncPolicy.NEVER) {
+            this.syncer = null;
+            return;
+        }
+        // a platform thread even with virtual threads on, force() holds its carrier anyway
+        this.syncer = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("write-ahead-log-sync").daemon().factory());
+        if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+            syncer.scheduleWithFixedDelay(this::syncQuietly, fsyncIntervalMillis, fsyncIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * A log that keeps nothing, for when it is switched off.
+     */
+    public static WriteAheadLog disabled() {
+        try {
+            return new WriteAheadLog(null, FsyncPolicy.NEVER, 0, 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Writes the content of a note and returns the position after it, or 0 when the log
+     * is off. The record is not forced, see {@link #whenDurable(long)}.
+     */
+    public long append(String noteId, String content) {
+        if (directory == null) {
+            return 0;
+        }
+
+        ByteBuffer record = encode(noteId, content);
+        appendLock.lock();
+        try {
+            if (position > segmentStart && position - segmentStart + record.remaining() > segmentBytes) {
+                rotate();
+            }
+            while (record.hasRemaining()) {
+                segment.write(record);
+            }
+            position = segmentStart + segment.position();
+            return position;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not append to the write-ahead log", e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Completes once the records up to {@code upTo} are as durable as the fsync policy
+     * asks for: at once when written is enough, after the next group commit under
+     * {@link FsyncPolicy#ALWAYS}. Completes exceptionally if that force fails.
+     */
+    public CompletableFuture<Void> whenDurable(long upTo) {
+        if (fsyncPolicy != FsyncPolicy.ALWAYS || directory == null || syncedPosition.get() >= upTo) {
+            return DURABLE;
+        }
+
+        CompletableFuture<Void> durable = waiting.computeIfAbsent(upTo, position -> new CompletableFuture<>());
+        // whoever comes while a force runs is picked up by the next one
+        if (syncScheduled.compareAndSet(false, true)) {
+            syncer.execute(this::groupCommit);
+        }
+        return durable;
+    }
+
+    /**
+     * The position after the last appended record.
+     */
+    public long position() {
+        appendLock.lock();
+        try {
+            return position;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Records that every content up to {@code checkpoint} is in the database, so replay
+     * skips those records, and deletes the segments holding only such records. The
+     * segment being written is kept until it is full.
+     */
+    public void checkpoint(long checkpoint) {
+        if (directory == null) {
+            return;
+        }
+
+        appendLock.lock();
+        try {
+            if (checkpoint <= checkpointPosition) {
+                return;
+            }
+            writeCheckpoint(checkpoint);
+            checkpointPosition = checkpoint;
+            // a segment can go once the next one starts at or before the checkpoint
+            while (segmentStarts.size() > 1 && segmentStarts.get(1) <= checkpoint) {
+                Files.deleteIfExists(segmentPath(segmentStarts.remove(0)));
+            }
+        } catch (IOException e) {
+            System.err.println("Error truncating the write-ahead log: " + e.getMessage());
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Reads the latest content of every note logged after the last checkpoint, in the
+     * order the notes were last written.
+     */
+    public Map<String, String> replay() {
+        Map<String, String> contents = new LinkedHashMap<>();
+        if (directory == null) {
+            return contents;
+        }
+
+        appendLock.lock();
+        try {
+            for (long start : segmentStarts) {
+                readSegment(segmentPath(start), (end, noteId, content) -> {
+                    if (start + end > checkpointPosition) {
+                        contents.remove(noteId);
+                        contents.put(noteId, content);
+                    }
+                });
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not replay the write-ahead log", e);
+        } finally {
+            appendLock.unlock();
+        }
+        return contents;
+    }
+
+    int segmentCount() {
+        appendLock.lock();
+        try {
+            return segmentStarts.size();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Forces the log to disk up to at least {@code upTo}. Callers arriving while a force
+     * runs wait for it and usually find their records covered by it.
+     */
+    private void sync(long upTo) {
+        if (syncedPosition.get() >= upTo) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            if (syncedPosition.get() >= upTo) {
+                return;
+            }
+            FileChannel channel;
+            long target;
+            appendLock.lock();
+            try {
+                channel = segment;
+                target = position;
+            } finally {
+                appendLock.unlock();
+            }
+            try {
+                // appends go on while the force runs, the next caller forces those
+                channel.force(false);
+            } catch (ClosedChannelException e) {
+                // rotated meanwhile, which forced the whole segment
+            }
+            syncedPosition.accumulateAndGet(target, Math::max);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not sync the write-ahead log", e);
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync(position());
+        } catch (RuntimeException e) {
+            System.err.println("Error syncing the write-ahead log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Forces everything written so far and completes the callers it covers.
+     */
+    private void groupCommit() {
+        syncScheduled.set(false);
+        try {
+            sync(position());
+        } catch (RuntimeException e) {
+            System.err.println("Error syncing the write-ahead log: " + e.getMessage());
+            waiting.values().forEach(durable -> durable.completeExceptionally(e));
+            waiting.clear();
+            return;
+        }
+        Map<Long, CompletableFuture<Void>> covered = waiting.headMap(syncedPosition.get(), true);
+        covered.values().forEach(durable -> durable.complete(null));
+        covered.clear();
+    }
+
+    private long readCheckpoint() throws IOException {
+        Path path = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(Files.readString(path).trim());
+        } catch (NumberFormatException e) {
+            // replaying from the start only writes contents the database already has
+            return 0;
+        }
+    }
+
+    private void writeCheckpoint(long checkpoint) throws IOException {
+        Path written = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        Files.writeString(written, Long.toString(checkpoint));
+        Files.move(written, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void openTail() throws IOException {
+        if (segmentStarts.isEmpty()) {
+            segmentStarts.add(0L);
+        }
+        segmentStart = segmentStarts.get(segmentStarts.size() - 1);
+        Path path = segmentPath(segmentStart);
+        segment = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+
+        // a record torn by a crash is cut off, appends continue after the last whole one
+        long valid = readSegment(path, (end, noteId, content) -> {
+        });
+        segment.truncate(valid);
+        segment.position(valid);
+        position = segmentStart + valid;
+    }
+
+    private void rotate() throws IOException {
+        segment.force(false);
+        segment.close();
+        syncedPosition.accumulateAndGet(position, Math::max);
+
+        segmentStart = position;
+        segmentStarts.add(segmentStart);
+        segment = FileChannel.open(segmentPath(segmentStart), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private Path segmentPath(long start) {
+        return directory.resolve(String.format("%020d%s", start, SEGMENT_SUFFIX));
+    }
+
+    private interface RecordConsumer {
+        void accept(long end, String noteId, String content);
+    }
+
+    /**
+     * Reads the whole records of a segment and returns where the last one ends.
+     */
+    private static long readSegment(Path path, RecordConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long offset = 0;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (offset + HEADER_BYTES <= size) {
+                header.clear();
+                readFully(channel, header, offset);
+                int length = header.getInt();
+                int checksum = header.getInt();
+                if (length < Short.BYTES || offset + HEADER_BYTES + length > size) {
+                    break;
+                }
+
+                ByteBuffer body = ByteBuffer.allocate(length);
+                readFully(channel, body, offset + HEADER_BYTES);
+                CRC32C crc = new CRC32C();
+                crc.update(body.array(), 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                int idLength = body.getShort() & 0xFFFF;
+                if (idLength > body.remaining()) {
+                    break;
+                }
+                String noteId = new String(body.array(), Short.BYTES, idLength, StandardCharsets.UTF_8);
+                String content = new String(body.array(), Short.BYTES + idLength, length - Short.BYTES - idLength,
+                        StandardCharsets.UTF_8);
+                offset += HEADER_BYTES + length;
+                consumer.accept(offset, noteId, content);
+            }
+            return offset;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of segment");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static ByteBuffer encode(String noteId, String content) {
+        byte[] id = noteId.getBytes(StandardCharsets.UTF_8);
+        byte[] text = content.getBytes(StandardCharsets.UTF_8);
+        int length = Short.BYTES + id.length + text.length;
+
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + length);
+        record.putInt(length);
+        record.putInt(0);
+        record.putShort((short) id.length);
+        record.put(id);
+        record.put(text);
+
+        CRC32C crc = new CRC32C();
+        crc.update(record.array(), HEADER_BYTES, length);
+        record.putInt(Integer.BYTES, (int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (directory == null) {
+            return;
+        }
+        if (syncer != null) {
+            syncer.shutdown();
+        }
+        appendLock.lock();
+        try {
+            segment.force(false);
+            segment.close();
+            // the final force covers whoever is still waiting
+            waiting.values().forEach(durable -> durable.complete(null));
+        } catch (IOException e) {
+            System.err.println("Error closing the write-ahead log: " + e.getMessage());
+            waiting.values().forEach(durable -> durable.completeExceptionally(e));
+        } finally {
+            waiting.clear();
+            appendLock.unlock();
+        }
+    }
+}
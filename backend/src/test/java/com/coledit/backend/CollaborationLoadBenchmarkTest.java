@@ -0,0 +1,351 @@
+package com.coledit.backend;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.net.URI;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import com.coledit.backend.entities.Note;
+import com.coledit.backend.entities.User;
+import com.coledit.backend.repositories.NoteRepository;
+import com.coledit.backend.repositories.UserRepository;
+import com.coledit.backend.services.JwtService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Starts the whole backend on an in-memory H2 database and has simulated editors type
+ * into its notes over WebSocket, speaking the same {@code updateNote}/heartbeat protocol
+ * as the web client, through the real handshake, JWT checks and rooms.
+ *
+ * Each editor types words into its own line of a note at about
+ * {@code load.keystroke-ms} per char, with jitter, the odd typo it corrects and pauses
+ * between some words. Every word is unique, and the latency of the keystroke completing
+ * it is measured until each other editor of the note receives a content with the word
+ * in it. Words some editor never received by the end count as lost.
+ *
+ * The size of the run is set with {@code -Dload.notes}, {@code -Dload.editors} (per
+ * note) and {@code -Dload.seconds}. Tagged as a benchmark, so it only runs with
+ * {@code mvn test -Pbenchmark}; the latency distribution is also written to
+ * {@code target/load/edit-latency.hgrm}.
+ */
+@Tag("benchmark")
+class CollaborationLoadBenchmarkTest {
+
+    private static final int NOTES = Integer.getInteger("load.notes", 400);
+    private static final int EDITORS_PER_NOTE = Integer.getInteger("load.editors", 5);
+    private static final int SECONDS = Integer.getInteger("load.seconds", 30);
+    private static final long KEYSTROKE_MILLIS = Long.getLong("load.keystroke-ms", 120);
+
+    // time the editors have after the last keystroke for their words to arrive
+    private static final long GRACE_MILLIS = 3_000;
+    private static final long HEARTBEAT_MILLIS = 30_000;
+    private static final double TYPO_CHANCE = 0.05;
+    private static final double PAUSE_CHANCE = 0.1;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Histogram latency = new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(1), 3);
+    private final LongAdder keystrokes = new LongAdder();
+    private final LongAdder notifications = new LongAdder();
+    private final LongAdder expectedDeliveries = new LongAdder();
+    private final LongAdder deliveries = new LongAdder();
+
+    @Test
+    void benchmarkEditLatency() throws Exception {
+        ConfigurableApplicationContext backend = start();
+        List<Editor> editors = new ArrayList<>();
+        try (ExecutorService typists = Executors.newVirtualThreadPerTaskExecutor()) {
+            int port = ((WebServerApplicationContext) backend).getWebServer().getPort();
+            String token = backend.getBean(JwtService.class)
+                    .generateToken(backend.getBean(UserRepository.class).findByEmail("user1@example.com").get());
+
+            StandardWebSocketClient client = new StandardWebSocketClient();
+            for (Note note : createNotes(backend)) {
+                Room room = new Room();
+                for (int i = 0; i < EDITORS_PER_NOTE; i++) {
+                    Editor editor = new Editor(i, room);
+                    WebSocketHttpHeaders headers = new WebSocketHttpHeaders();
+                    headers.setOrigin("https://localhost");
+                    headers.add("Cookie", "token=" + token);
+                    editor.session = client
+                            .execute(editor, headers, URI.create("ws://localhost:" + port + "/document/" + note.getNoteId()))
+                            .get(30, TimeUnit.SECONDS);
+                    room.editors.add(editor);
+                    editors.add(editor);
+                }
+            }
+
+            long start = System.nanoTime();
+            long deadline = start + TimeUnit.SECONDS.toNanos(SECONDS);
+            List<CompletableFuture<Void>> typing = new ArrayList<>(editors.size());
+            for (Editor editor : editors) {
+                typing.add(CompletableFuture.runAsync(() -> editor.type(deadline), typists));
+            }
+            CompletableFuture.allOf(typing.toArray(CompletableFuture[]::new)).get(SECONDS + 60, TimeUnit.SECONDS);
+            double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+            Thread.sleep(GRACE_MILLIS);
+
+            report(backend.getBean(MeterRegistry.class), editors.size(), elapsedSeconds);
+        } finally {
+            for (Editor editor : editors) {
+                if (editor.session.isOpen()) {
+                    editor.session.close();
+                }
+            }
+            backend.close();
+        }
+    }
+
+    private ConfigurableApplicationContext start() {
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        // devtools would restart the context in a new class loader
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        return new SpringApplicationBuilder(BackendApplication.class)
+                .run("--server.port=0",
+                        "--management.server.port=0",
+                        "--spring.main.keep-alive=false",
+                        "--spring.datasource.url=jdbc:h2:mem:load;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                        "--spring.jpa.hibernate.ddl-auto=create-drop",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.org.springframework=WARN",
+                        "--logging.level.org.hibernate=WARN",
+                        "--security.jwt.secret-key=" + Base64.getEncoder().encodeToString(key),
+                        "--custom.hostname=localhost",
+                        "--document.wal.enabled=false");
+    }
+
+    private List<Note> createNotes(ConfigurableApplicationContext backend) {
+        User owner = backend.getBean(UserRepository.class).findByEmail("user1@example.com").get();
+        // a line per editor, each types at the end of its own
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < EDITORS_PER_NOTE; i++) {
+            lines.append(Editor.line(i)).append('\n');
+        }
+
+        NoteRepository notes = backend.getBean(NoteRepository.class);
+        List<Note> created = new ArrayList<>(NOTES);
+        for (int i = 0; i < NOTES; i++) {
+            created.add(notes.save(Note.builder().title("Load " + i).content(lines.toString()).owner(owner).build()));
+        }
+        return created;
+    }
+
+    private void report(MeterRegistry meters, int clients, double elapsedSeconds) throws Exception {
+        long lost = expectedDeliveries.sum() - deliveries.sum();
+        System.out.printf("%6s %8s %8s %10s %10s %8s %8s %8s %8s %8s %8s%n", "notes", "editors", "clients",
+                "keys/s", "notifs/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "lost");
+        System.out.printf("%6d %8d %8d %10.0f %10.0f %8.1f %8.1f %8.1f %8.1f %8.1f %8d%n", NOTES, EDITORS_PER_NOTE,
+                clients, keystrokes.sum() / elapsedSeconds, notifications.sum() / elapsedSeconds,
+                millis(latency.getValueAtPercentile(50)), millis(latency.getValueAtPercentile(90)),
+                millis(latency.getValueAtPercentile(99)), millis(latency.getValueAtPercentile(99.9)),
+                millis(latency.getMaxValue()), lost);
+        System.out.printf("updates rebased %d, held back %d, resynced %d; outbound messages dropped %d%n",
+                (long) count(meters, "rebased"), (long) count(meters, "held-back"), (long) count(meters, "resynced"),
+                (long) functionCount(meters, "coledit.outbound.dropped"));
+
+        File file = new File("target/load/edit-latency.hgrm");
+        file.getParentFile().mkdirs();
+        try (PrintStream out = new PrintStream(file)) {
+            latency.outputPercentileDistribution(out, 1000.0);
+        }
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+    private static double count(MeterRegistry meters, String outcome) {
+        Counter counter = meters.find("coledit.document.updates").tag("outcome", outcome).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    private static double functionCount(MeterRegistry meters, String name) {
+        FunctionCounter counter = meters.find(name).functionCounter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    /**
+     * The editors of one note and the words they typed that not all others have seen.
+     */
+    private final class Room {
+
+        private final List<Editor> editors = new ArrayList<>();
+        private final Map<String, Word> pending = new ConcurrentHashMap<>();
+
+        void typed(String word, Editor author) {
+            expectedDeliveries.add(editors.size() - 1);
+            pending.put(word + " ", new Word(System.nanoTime(), author, new AtomicInteger(editors.size() - 1),
+                    ConcurrentHashMap.newKeySet()));
+        }
+
+        void received(Editor editor, String content) {
+            long now = System.nanoTime();
+            for (Map.Entry<String, Word> entry : pending.entrySet()) {
+                Word word = entry.getValue();
+                if (word.author() != editor && content.contains(entry.getKey()) && word.seenBy().add(editor)) {
+                    latency.recordValue(TimeUnit.NANOSECONDS.toMicros(now - word.typedAt()));
+                    deliveries.increment();
+                    if (word.remaining().decrementAndGet() == 0) {
+                        pending.remove(entry.getKey());
+                    }
+                }
+            }
+        }
+    }
+
+    private record Word(long typedAt, Editor author, AtomicInteger remaining, Set<Editor> seenBy) {
+    }
+
+    /**
+     * A client of one note, which keeps the content and version it last got like the web
+     * client does and numbers each keystroke as the next version.
+     */
+    private final class Editor extends TextWebSocketHandler {
+
+        private final int id;
+        private final Room room;
+        private final ReentrantLock lock = new ReentrantLock();
+        private String content = "";
+        private int version;
+        private WebSocketSession session;
+
+        Editor(int id, Room room) {
+            this.id = id;
+            this.room = room;
+        }
+
+        static String line(int id) {
+            return "e" + id + ":";
+        }
+
+        @Override
+        protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+            JsonNode notification = objectMapper.readTree(message.getPayload());
+            if (!"updateNotification".equals(notification.get("type").asText())) {
+                return;
+            }
+            String payload = notification.get("payload").asText();
+            lock.lock();
+            try {
+                content = payload;
+                version = notification.get("version").asInt();
+            } finally {
+                lock.unlock();
+            }
+            notifications.increment();
+            room.received(this, payload);
+        }
+
+        void type(long deadline) {
+            Random random = ThreadLocalRandom.current();
+            long lastHeartbeat = System.nanoTime();
+            try {
+                // editors of a note do not all start on the same version
+                Thread.sleep(random.nextLong(2 * KEYSTROKE_MILLIS));
+                for (int words = 0; System.nanoTime() < deadline; words++) {
+                    String word = "e" + id + "w" + words;
+                    for (int i = 0; i < word.length(); i++) {
+                        if (random.nextDouble() < TYPO_CHANCE) {
+                            keystroke((char) ('a' + random.nextInt(26)));
+                            think(random);
+                            keystroke('\b');
+                            think(random);
+                        }
+                        keystroke(word.charAt(i));
+                        think(random);
+                    }
+                    room.typed(word, this);
+                    keystroke(' ');
+
+                    if (System.nanoTime() - lastHeartbeat > TimeUnit.MILLISECONDS.toNanos(HEARTBEAT_MILLIS)) {
+                        session.sendMessage(new TextMessage("{\"type\":\"heartbeat\"}"));
+                        lastHeartbeat = System.nanoTime();
+                    }
+                    if (random.nextDouble() < PAUSE_CHANCE) {
+                        Thread.sleep(500 + random.nextInt(1500));
+                    } else {
+                        think(random);
+                    }
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException("Editor " + id + " stopped", e);
+            }
+        }
+
+        private void think(Random random) throws InterruptedException {
+            long jitter = (long) (random.nextGaussian() * KEYSTROKE_MILLIS / 3);
+            Thread.sleep(Math.max(10, KEYSTROKE_MILLIS + jitter));
+        }
+
+        /**
+         * Types a char, or a backspace for {@code '\b'}, at the end of the editor's line
+         * and sends the whole content as the next version.
+         */
+        private void keystroke(char typed) throws Exception {
+            String message;
+            lock.lock();
+            try {
+                String line = line(id);
+                int start = content.startsWith(line) ? 0 : content.indexOf("\n" + line) + 1;
+                if (start == 0 && !content.startsWith(line)) {
+                    content = content + line + "\n";
+                    start = content.length() - line.length() - 1;
+                }
+                int end = content.indexOf('\n', start);
+                if (end < 0) {
+                    end = content.length();
+                }
+                if (typed == '\b') {
+                    content = end > start + line.length() ? content.substring(0, end - 1) + content.substring(end)
+                            : content;
+                } else {
+                    content = content.substring(0, end) + typed + content.substring(end);
+                }
+                version++;
+                message = objectMapper.writeValueAsString(
+                        Map.of("type", "updateNote", "payload", content, "version", version));
+            } finally {
+                lock.unlock();
+            }
+            session.sendMessage(new TextMessage(message));
+            keystrokes.increment();
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.coledit.backend;
+
+import java.net.URI;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import com.coledit.backend.entities.Note;
+import com.coledit.backend.entities.User;
+import com.coledit.backend.repositories.NoteRepository;
+import com.coledit.backend.repositories.UserRepository;
+import com.coledit.backend.services.JwtService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Starts the whole backend on an in-memory H2 database, once with Tomcat's pool of
+ * platform threads and once with virtual threads, and measures how many WebSocket
+ * connections it serves: how long the handshakes take, how many fail, and how long an
+ * edit takes to reach the other client of its note with all of them open.
+ *
+ * The connection counts are set with {@code -Dload.capacity-steps}. Tagged as a
+ * benchmark, so it only runs with {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+class ConnectionCapacityBenchmarkTest {
+
+    private static final String CAPACITY_STEPS = System.getProperty("load.capacity-steps", "200,1000,2000");
+
+    private static final String EDIT_MARKER = "capacity probe";
+    // clients arrive a few at a time rather than in one burst the accept queue drops
+    private static final int HANDSHAKES_IN_FLIGHT = 50;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Opens growing numbers of connections, two per note, to the backend running with
+     * Tomcat's pool of 200 platform threads and with virtual threads. For each step it
+     * reports how long the handshakes took and how many failed, then has one client of
+     * every note edit it at once and measures until the other client receives the edit.
+     * The steps are set with {@code -Dload.capacity-steps}.
+     */
+    @Test
+    void benchmarkConnectionCapacity() throws Exception {
+        System.out.printf("%-9s %11s %8s %10s %10s %10s %10s %8s%n", "threads", "connections", "failed",
+                "conn p50", "conn p99", "edit p50", "edit p99", "lost");
+        for (boolean virtual : new boolean[] { false, true }) {
+            ConfigurableApplicationContext backend = start(virtual ? "capacity-virtual" : "capacity-platform",
+                    "--spring.threads.virtual.enabled=" + virtual);
+            try {
+                for (String step : CAPACITY_STEPS.split(",")) {
+                    measureCapacity(backend, virtual ? "virtual" : "platform", Integer.parseInt(step.trim()));
+                }
+            } finally {
+                backend.close();
+            }
+        }
+    }
+
+    private void measureCapacity(ConfigurableApplicationContext backend, String threads, int connections)
+            throws Exception {
+        WebSocketHttpHeaders headers = headers(backend);
+        List<Note> notes = createNotes(backend, (connections + 1) / 2, "capacity\n");
+        Histogram connectLatency = new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(1), 3);
+        Histogram editLatency = new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(1), 3);
+        LongAdder failed = new LongAdder();
+        LongAdder lost = new LongAdder();
+        Probe[] probes = new Probe[connections];
+
+        StandardWebSocketClient client = new StandardWebSocketClient();
+        // Tomcat's client gives up on a handshake after 5 seconds by default
+        client.getUserProperties().put("org.apache.tomcat.websocket.IO_TIMEOUT_MS", "30000");
+        Semaphore handshakes = new Semaphore(HANDSHAKES_IN_FLIGHT);
+        try {
+            try (ExecutorService connecting = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < connections; i++) {
+                    int index = i;
+                    handshakes.acquire();
+                    connecting.execute(() -> {
+                        Probe probe = new Probe();
+                        long start = System.nanoTime();
+                        try {
+                            probe.session = client.execute(probe, headers, uri(backend, notes.get(index / 2)))
+                                    .get(30, TimeUnit.SECONDS);
+                            connectLatency.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                            probes[index] = probe;
+                        } catch (Exception e) {
+                            failed.increment();
+                        } finally {
+                            handshakes.release();
+                        }
+                    });
+                }
+            }
+
+            try (ExecutorService editing = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i + 1 < connections; i += 2) {
+                    Probe author = probes[i];
+                    Probe reader = probes[i + 1];
+                    if (author == null || reader == null) {
+                        continue;
+                    }
+                    editing.execute(() -> {
+                        try {
+                            long sent = System.nanoTime();
+                            author.edit();
+                            long received = reader.edited.get(30, TimeUnit.SECONDS);
+                            editLatency.recordValue(TimeUnit.NANOSECONDS.toMicros(received - sent));
+                        } catch (Exception e) {
+                            lost.increment();
+                        }
+                    });
+                }
+            }
+
+            System.out.printf("%-9s %11d %8d %10.1f %10.1f %10.1f %10.1f %8d%n", threads, connections,
+                    failed.sum(), millis(connectLatency.getValueAtPercentile(50)),
+                    millis(connectLatency.getValueAtPercentile(99)), millis(editLatency.getValueAtPercentile(50)),
+                    millis(editLatency.getValueAtPercentile(99)), lost.sum());
+        } finally {
+            try (ExecutorService closing = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (Probe probe : probes) {
+                    if (probe != null && probe.session.isOpen()) {
+                        closing.execute(probe::close);
+                    }
+                }
+            }
+            awaitNoSessions(backend.getBean(MeterRegistry.class));
+        }
+    }
+
+    // the backend closes its side asynchronously, the next step starts without any left
+    private static void awaitNoSessions(MeterRegistry meters) throws InterruptedException {
+        Gauge live = meters.find("coledit.sessions.live").gauge();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (live != null && live.value() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+        }
+    }
+
+    private static WebSocketHttpHeaders headers(ConfigurableApplicationContext backend) {
+        String token = backend.getBean(JwtService.class)
+                .generateToken(backend.getBean(UserRepository.class).findByEmail("user1@example.com").get());
+        WebSocketHttpHeaders headers = new WebSocketHttpHeaders();
+        headers.setOrigin("https://localhost");
+        headers.add("Cookie", "token=" + token);
+        return headers;
+    }
+
+    private static URI uri(ConfigurableApplicationContext backend, Note note) {
+        int port = ((WebServerApplicationContext) backend).getWebServer().getPort();
+        return URI.create("ws://localhost:" + port + "/document/" + note.getNoteId());
+    }
+
+    private ConfigurableApplicationContext start(String database, String... arguments) {
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        // devtools would restart the context in a new class loader
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        List<String> options = new ArrayList<>(List.of("--server.port=0",
+                "--management.server.port=0",
+                "--spring.main.keep-alive=false",
+                "--spring.datasource.url=jdbc:h2:mem:" + database + ";DB_CLOSE_DELAY=-1",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                "--spring.jpa.hibernate.ddl-auto=create-drop",
+                "--spring.jpa.show-sql=false",
+                "--logging.level.org.springframework=WARN",
+                "--logging.level.org.hibernate=WARN",
+                "--logging.level.org.springframework.security=WARN",
+                "--logging.level.org.springframework.web.socket=WARN",
+                "--logging.level.org.springframework.messaging=WARN",
+                "--security.jwt.secret-key=" + Base64.getEncoder().encodeToString(key),
+                "--custom.hostname=localhost",
+                "--document.wal.enabled=false"));
+        options.addAll(List.of(arguments));
+        return new SpringApplicationBuilder(BackendApplication.class).run(options.toArray(String[]::new));
+    }
+
+    private List<Note> createNotes(ConfigurableApplicationContext backend, int count, String content) {
+        User owner = backend.getBean(UserRepository.class).findByEmail("user1@example.com").get();
+        NoteRepository notes = backend.getBean(NoteRepository.class);
+        List<Note> created = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            created.add(notes.save(Note.builder().title("Load " + i).content(content).owner(owner).build()));
+        }
+        return created;
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+    /**
+     * A client that joins a note, makes one edit on the version it joined at if asked to,
+     * and notes when it receives an edit.
+     */
+    private final class Probe extends TextWebSocketHandler {
+
+        private final CompletableFuture<Long> edited = new CompletableFuture<>();
+        private volatile String content = "";
+        private volatile int version;
+        private WebSocketSession session;
+
+        @Override
+        protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+            JsonNode notification = objectMapper.readTree(message.getPayload());
+            if (!"updateNotification".equals(notification.get("type").asText())) {
+                return;
+            }
+            content = notification.get("payload").asText();
+            version = notification.get("version").asInt();
+            if (content.contains(EDIT_MARKER)) {
+                edited.complete(System.nanoTime());
+            }
+        }
+
+        void edit() throws Exception {
+            session.sendMessage(new TextMessage(objectMapper.writeValueAsString(
+                    Map.of("type", "updateNote", "payload", content + EDIT_MARKER, "version", version + 1))));
+        }
+
+        void close() {
+            try {
+                session.close();
+            } catch (Exception e) {
+                // the backend may have closed it already
+            }
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.coledit.backend.cluster;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.DispatcherServletAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.ServletWebServerFactoryAutoConfiguration;
+import org.springframework.boot.autoconfigure.websocket.servlet.WebSocketServletAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import com.coledit.backend.backplane.Backplane;
+import com.coledit.backend.backplane.InProcessBackplane;
+import com.coledit.backend.configs.WebSocketConfig;
+import com.coledit.backend.handlers.SocketConnectionHandler;
+import com.coledit.backend.merging.DiffMergeEngine;
+import com.coledit.backend.metrics.CollaborationMetrics;
+import com.coledit.backend.rooms.DocumentRoomRegistry;
+import com.coledit.backend.rooms.DocumentStateCache;
+import com.coledit.backend.rooms.NoteContentLoader;
+import com.coledit.backend.rooms.SessionOutboxes;
+import com.coledit.backend.rooms.UpdateCoalescing;
+import com.coledit.backend.services.NoteContentFlusher;
+import com.coledit.backend.services.NoteService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Runs several nodes, each its own Spring context with a web server, in this JVM. They
+ * share an in-process backplane; notes are never read from or written to a database.
+ */
+class ClusterForwardingTest {
+
+    private static InProcessBackplane.Hub hub;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+    private final List<WebSocketSession> clients = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        hub = new InProcessBackplane.Hub();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (WebSocketSession client : clients) {
+            if (client.isOpen()) {
+                client.close();
+            }
+        }
+        nodes.forEach(ConfigurableApplicationContext::close);
+    }
+
+    @Test
+    void testSessionsOnOtherNodesAreServedByTheOwner() throws Exception {
+        ClusterNode a = node("a");
+        ClusterNode b = node("b");
+        ConfigurableApplicationContext first = start(a, List.of(a, b));
+        ConfigurableApplicationContext second = start(b, List.of(a, b));
+        String documentId = documentOwnedBy(new HashRing(List.of(a, b), 128), a);
+
+        Client alice = connect(a, documentId);
+        Client bob = connect(b, documentId);
+        assertEquals("@0", alice.next());
+        assertEquals("@0", bob.next());
+
+        bob.send("hello", 1);
+        assertEquals("hello@1", alice.next());
+
+        // only the owner has a room, the other node just relays
+        assertEquals(1, first.getBean(DocumentRoomRegistry.class).size());
+        assertEquals(0, second.getBean(DocumentRoomRegistry.class).size());
+        assertEquals(1, second.getBean(SessionForwarder.class).size());
+    }
+
+    @Test
+    void testOwnershipMovesToAJoiningNodeWithTheLatestVersion() throws Exception {
+        ClusterNode a = node("a");
+        ClusterNode b = node("b");
+        ClusterNode c = node("c");
+        ConfigurableApplicationContext first = start(a, List.of(a, b));
+        ConfigurableApplicationContext second = start(b, List.of(a, b));
+        // a document of "a" that moves to "c" once it joins
+        String documentId = null;
+        HashRing before = new HashRing(List.of(a, b), 128);
+        HashRing after = new HashRing(List.of(a, b, c), 128);
+        for (int i = 0; documentId == null; i++) {
+            String candidate = "note-" + i;
+            if (before.owner(candidate).equals(a) && after.owner(candidate).equals(c)) {
+                documentId = candidate;
+            }
+        }
+
+        Client alice = connect(a, documentId);
+        Client bob = connect(b, documentId);
+        alice.next();
+        bob.next();
+        alice.send("hello", 1);
+        assertEquals("hello@1", bob.next());
+
+        start(c, List.of(a, b, c));
+        first.getBean(ClusterMembership.class).setMembers(List.of(a, b, c));
+        second.getBean(ClusterMembership.class).setMembers(List.of(a, b, c));
+
+        // both are told to reconnect, the old owner retired the room; Tomcat's client
+        // reports the 1012 they are closed with as a protocol error, browsers see 1012
+        assertNotNull(alice.closed().get(10, TimeUnit.SECONDS));
+        assertNotNull(bob.closed().get(10, TimeUnit.SECONDS));
+        assertEquals(0, first.getBean(DocumentRoomRegistry.class).size());
+
+        Client reconnected = connect(b, documentId);
+        assertEquals("hello@1", reconnected.next());
+    }
+
+    private ClusterNode node(String id) throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return new ClusterNode(id, "ws://localhost:" + socket.getLocalPort());
+        }
+    }
+
+    private ConfigurableApplicationContext start(ClusterNode node, List<ClusterNode> members) {
+        List<String> entries = members.stream().map(member -> member.id() + "=" + member.address()).toList();
+        // arguments, as they override application.yml
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(Node.class)
+                .web(WebApplicationType.SERVLET)
+                .run("--server.port=" + URI.create(node.address()).getPort(),
+                        "--custom.hostname=localhost",
+                        "--spring.main.keep-alive=false",
+                        "--document.backplane.node-id=" + node.id(),
+                        "--document.coalescing.window-ms=0",
+                        "--cluster.enabled=true",
+                        "--cluster.members=" + String.join(",", entries),
+                        "--cluster.secret=test-secret");
+        nodes.add(context);
+        return context;
+    }
+
+    private String documentOwnedBy(HashRing ring, ClusterNode owner) {
+        for (int i = 0;; i++) {
+            if (ring.owner("note-" + i).equals(owner)) {
+                return "note-" + i;
+            }
+        }
+    }
+
+    private Client connect(ClusterNode node, String documentId) throws Exception {
+        Client client = new Client();
+        WebSocketHttpHeaders headers = new WebSocketHttpHeaders();
+        headers.setOrigin("https://localhost");
+        WebSocketSession session = new StandardWebSocketClient()
+                .execute(client, headers, URI.create(node.address() + "/document/" + documentId))
+                .get(10, TimeUnit.SECONDS);
+        client.session = session;
+        clients.add(session);
+        return client;
+    }
+
+    private final class Client extends TextWebSocketHandler {
+
+        private final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        private final CompletableFuture<CloseStatus> closed = new CompletableFuture<>();
+        private WebSocketSession session;
+
+        @Override
+        protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+            JsonNode notification = objectMapper.readTree(message.getPayload());
+            received.add(notification.get("payload").asText() + "@" + notification.get("version").asInt());
+        }
+
+        @Override
+        public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+            closed.complete(status);
+        }
+
+        String next() throws InterruptedException {
+            String message = received.poll(10, TimeUnit.SECONDS);
+            assertNotNull(message, "no notification received");
+            return message;
+        }
+
+        void send(String content, int version) throws IOException {
+            session.sendMessage(new TextMessage(
+                    "{\"type\":\"updateNote\",\"payload\":\"" + content + "\",\"version\":" + version + "}"));
+        }
+
+        CompletableFuture<CloseStatus> closed() {
+            return closed;
+        }
+    }
+
+    @Configuration
+    @ImportAutoConfiguration({ ServletWebServerFactoryAutoConfiguration.class,
+            DispatcherServletAutoConfiguration.class, WebSocketServletAutoConfiguration.class,
+            JacksonAutoConfiguration.class })
+    @Import({ WebSocketConfig.class, SocketConnectionHandler.class, ClusterMembership.class, SessionForwarder.class,
+            DocumentRoomRegistry.class, NoteContentLoader.class, DocumentStateCache.class, SessionOutboxes.class,
+            UpdateCoalescing.class, DiffMergeEngine.class })
+    static class Node {
+
+        @Bean
+        NoteService noteService() {
+            return mock(NoteService.class);
+        }
+
+        @Bean
+        NoteContentFlusher noteContentFlusher() {
+            return mock(NoteContentFlusher.class);
+        }
+
+        @Bean
+        CollaborationMetrics collaborationMetrics() {
+            return CollaborationMetrics.disabled();
+        }
+
+        @Bean
+        Backplane backplane(@Value("${document.backplane.node-id}") String nodeId) {
+            return new InProcessBackplane(nodeId, hub);
+        }
+    }
+}
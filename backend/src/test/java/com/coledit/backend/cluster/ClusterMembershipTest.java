@@ -0,0 +1,22 @@
+package com.coledit.backend.cluster;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import com.coledit.backend.backplane.InProcessBackplane;
+import com.coledit.backend.backplane.LocalBackplane;
+
+class ClusterMembershipTest {
+
+    @Test
+    void testEnabledClusterNeedsABackplaneBetweenItsNodes() {
+        assertThrows(IllegalStateException.class,
+                () -> new ClusterMembership(new LocalBackplane(), true, "ws://a:8080", "", 128));
+
+        // a single node does without
+        assertTrue(new ClusterMembership(new LocalBackplane(), false, "", "", 128).isLocal("note"));
+        assertTrue(new ClusterMembership(new InProcessBackplane("a", new InProcessBackplane.Hub()), true,
+                "ws://a:8080", "", 128).isEnabled());
+    }
+}
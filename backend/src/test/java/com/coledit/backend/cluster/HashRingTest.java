@@ -0,0 +1,62 @@
+package com.coledit.backend.cluster;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class HashRingTest {
+
+    private static final ClusterNode A = new ClusterNode("a", "ws://a:8080");
+    private static final ClusterNode B = new ClusterNode("b", "ws://b:8080");
+    private static final ClusterNode C = new ClusterNode("c", "ws://c:8080");
+
+    @Test
+    void testRingsWithTheSameNodesAgree() {
+        HashRing first = new HashRing(List.of(A, B, C), 128);
+        HashRing second = new HashRing(List.of(C, A, B), 128);
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(first.owner("note-" + i), second.owner("note-" + i));
+        }
+    }
+
+    @Test
+    void testDocumentsAreSpreadEvenly() {
+        HashRing ring = new HashRing(List.of(A, B, C), 128);
+        Map<ClusterNode, Integer> owned = new HashMap<>();
+        for (int i = 0; i < 30_000; i++) {
+            owned.merge(ring.owner("note-" + i), 1, Integer::sum);
+        }
+
+        // a third each, give or take
+        for (ClusterNode node : List.of(A, B, C)) {
+            assertTrue(owned.get(node) > 8_000 && owned.get(node) < 12_000, node + " owns " + owned.get(node));
+        }
+    }
+
+    @Test
+    void testJoiningNodeOnlyTakesDocumentsOver() {
+        HashRing before = new HashRing(List.of(A, B), 128);
+        HashRing after = new HashRing(List.of(A, B, C), 128);
+
+        int moved = 0;
+        for (int i = 0; i < 30_000; i++) {
+            ClusterNode owner = after.owner("note-" + i);
+            if (!owner.equals(before.owner("note-" + i))) {
+                // nothing moves between the nodes that were already there
+                assertEquals(C, owner);
+                moved++;
+            }
+        }
+        assertTrue(moved > 8_000 && moved < 12_000, moved + " moved");
+    }
+
+    @Test
+    void testRingNeedsANode() {
+        assertThrows(IllegalArgumentException.class, () -> new HashRing(List.of(), 128));
+    }
+}
@@ -0,0 +1,110 @@
+package com.coledit.backend.configs;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.servlet.HandlerExceptionResolver;
+
+import com.coledit.backend.dtos.AuthenticatedPrincipal;
+import com.coledit.backend.entities.User;
+import com.coledit.backend.services.JwtService;
+import com.coledit.backend.services.NoteService;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+
+class JwtFilterChainTest {
+
+    private static final UUID ALICE_ID = UUID.fromString("00000000-0000-0000-0000-000000000001");
+
+    private JwtService jwtService;
+    private NoteService noteService;
+    private JwtAuthenticationFilter authenticationFilter;
+    private JwtAuthorizationFilter authorizationFilter;
+
+    @BeforeEach
+    void setUp() {
+        jwtService = spy(new JwtService(Base64.getEncoder().encodeToString(new byte[32]), 60_000, 100, 60_000));
+        noteService = mock(NoteService.class);
+        authenticationFilter = new JwtAuthenticationFilter(jwtService, mock(HandlerExceptionResolver.class));
+        authorizationFilter = new JwtAuthorizationFilter(noteService);
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void testTokenIsResolvedOnceForBothFilters() throws Exception {
+        String token = jwtService.generateToken(
+                User.builder().userId(ALICE_ID).email("alice@example.com").roles("USER").build());
+        MockFilterChain chain = new MockFilterChain();
+
+        MockHttpServletResponse response = run(request("/note/getByUserEmail/alice@example.com", token), chain);
+
+        assertEquals(200, response.getStatus());
+        assertNotNull(chain.getRequest(), "the request did not get through");
+        AuthenticatedPrincipal principal = AuthenticatedPrincipal.of((HttpServletRequest) chain.getRequest());
+        assertEquals(new AuthenticatedPrincipal(ALICE_ID, "alice@example.com", List.of("USER")), principal);
+
+        // the identity comes from the token alone, no user was loaded
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        assertSame(principal, authentication.getPrincipal());
+        assertEquals(List.of(new SimpleGrantedAuthority("USER")), List.copyOf(authentication.getAuthorities()));
+        verify(jwtService, times(1)).resolvePrincipal(token);
+        verify(jwtService, never()).extractUsername(anyString());
+    }
+
+    @Test
+    void testAnotherUsersNotesAreForbidden() throws Exception {
+        String token = jwtService.generateToken(
+                User.builder().userId(ALICE_ID).email("alice@example.com").roles("USER").build());
+        MockFilterChain chain = new MockFilterChain();
+
+        MockHttpServletResponse response = run(request("/note/getByUserEmail/bob@example.com", token), chain);
+
+        assertEquals(403, response.getStatus());
+        assertNull(chain.getRequest());
+    }
+
+    @Test
+    void testInvalidTokenLeavesTheRequestAnonymous() throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletRequest request = request("/note/getByUserEmail/alice@example.com", "not-a-token");
+
+        MockHttpServletResponse response = run(request, chain);
+
+        assertEquals(403, response.getStatus());
+        assertNull(AuthenticatedPrincipal.of(request));
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    private MockHttpServletRequest request(String uri, String token) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", uri);
+        request.setCookies(new Cookie("token", token));
+        return request;
+    }
+
+    // the two filters in the order the security chain runs them
+    private MockHttpServletResponse run(MockHttpServletRequest request, MockFilterChain chain) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        authenticationFilter.doFilter(request, response,
+                (authenticated, sameResponse) -> authorizationFilter.doFilter(authenticated, sameResponse, chain));
+        return response;
+    }
+}
@@ -0,0 +1,379 @@
+package com.coledit.backend.handlers;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.coledit.backend.backplane.LocalBackplane;
+import com.coledit.backend.cluster.ClusterMembership;
+import com.coledit.backend.cluster.SessionForwarder;
+import com.coledit.backend.merging.DiffMergeEngine;
+import com.coledit.backend.metrics.CollaborationMetrics;
+import com.coledit.backend.rooms.DocumentRoomRegistry;
+import com.coledit.backend.rooms.DocumentStateCache;
+import com.coledit.backend.rooms.NoteContentLoader;
+import com.coledit.backend.rooms.SessionOutboxes;
+import com.coledit.backend.rooms.UpdateCoalescing;
+import com.coledit.backend.services.NoteContentFlusher;
+import com.coledit.backend.services.NoteService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * JMH benchmarks of {@link SocketConnectionHandler} called from several threads at once,
+ * as Tomcat does, with the real rooms, outbound queues, cache and cluster membership
+ * behind it and stub sessions in front. Only the database is mocked.
+ *
+ * The {@code editing} group has editors sending full-text updates, a client sending
+ * heartbeats and clients connecting, getting their snapshot and leaving, all at the same
+ * time. The {@code connecting} group only has the latter. With the {@code HOT_DOCUMENT}
+ * distribution every thread works on one note, so its room, mailbox and sessions are
+ * shared; with {@code MANY_DOCUMENTS} the threads are spread over many notes, and
+ * connecting clients also open and close rooms in the registry.
+ *
+ * An editor waits for its update to be merged and broadcast before sending the next one,
+ * as a client only types on what it was sent, so the mailboxes cannot pile up and an
+ * operation measures the whole path. Coalescing is off so no window is waited for.
+ *
+ * Tagged {@code jmh}, so it only runs with {@code mvn test -Pjmh}. Results are written as
+ * JSON to {@code target/jmh/socket-handler.json}; {@code -Djmh.args} and
+ * {@code -Djmh.result} work as for {@code StringMergerJmhBenchmarkTest}, e.g.
+ * {@code -Djmh.args="SocketConnectionHandler -p distribution=HOT_DOCUMENT"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class SocketConnectionHandlerJmhBenchmarkTest {
+
+    private static final int DOCUMENTS = 1024;
+    // an editor starts over once its note gets this long, so merges stay comparable
+    private static final int MAX_CONTENT_LENGTH = 2_000;
+    // how long a thread waits for the room before it goes on regardless
+    private static final long PATIENCE_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final TextMessage HEARTBEAT = new TextMessage("{\"type\":\"heartbeat\"}");
+
+    public enum Distribution {
+        HOT_DOCUMENT,
+        MANY_DOCUMENTS
+    }
+
+    @Param({ "HOT_DOCUMENT", "MANY_DOCUMENTS" })
+    public Distribution distribution;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicInteger threads = new AtomicInteger();
+    private final AtomicInteger sessions = new AtomicInteger();
+    // a session per note that only watches, to see which version its room is at
+    private final Map<String, StubSession> observers = new ConcurrentHashMap<>();
+    private SocketConnectionHandler handler;
+
+    @Setup
+    public void setUp() {
+        NoteService noteService = mock(NoteService.class);
+        when(noteService.getNoteContent(anyString())).thenReturn("");
+        NoteContentFlusher flusher = mock(NoteContentFlusher.class);
+        LocalBackplane backplane = new LocalBackplane();
+        DocumentStateCache cache = new DocumentStateCache(64L << 20, 600_000);
+        CollaborationMetrics metrics = CollaborationMetrics.disabled();
+        SessionOutboxes outboxes = new SessionOutboxes(64, "drop-to-latest", metrics);
+
+        DocumentRoomRegistry rooms = new DocumentRoomRegistry(flusher, objectMapper, new DiffMergeEngine(), outboxes,
+                new UpdateCoalescing(0, 1), new NoteContentLoader(noteService, flusher, cache, backplane), cache,
+                backplane, metrics);
+        handler = new SocketConnectionHandler(rooms, objectMapper,
+                new ClusterMembership(backplane, false, "", "", 128), new SessionForwarder(outboxes, ""), metrics);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        for (StubSession observer : observers.values()) {
+            handler.afterConnectionClosed(observer, CloseStatus.NORMAL);
+        }
+    }
+
+    /**
+     * What one benchmark thread works on.
+     */
+    @State(Scope.Thread)
+    public static class Client {
+
+        private String documentId;
+        private StubSession editor;
+        private StubSession observer;
+
+        @Setup
+        public void setUp(SocketConnectionHandlerJmhBenchmarkTest benchmark) throws Exception {
+            documentId = benchmark.distribution == Distribution.HOT_DOCUMENT ? "note-0"
+                    : "note-" + benchmark.threads.getAndIncrement() * 31 % DOCUMENTS;
+            observer = benchmark.observer(documentId);
+            editor = benchmark.session(documentId);
+            benchmark.handler.afterConnectionEstablished(editor);
+        }
+
+        @TearDown
+        public void tearDown(SocketConnectionHandlerJmhBenchmarkTest benchmark) throws Exception {
+            benchmark.handler.afterConnectionClosed(editor, CloseStatus.NORMAL);
+        }
+    }
+
+    @Benchmark
+    @Group("editing")
+    @GroupThreads(3)
+    public int update(Client client) throws Exception {
+        // typed on the latest content, the next version of which is awaited
+        String content = client.observer.content;
+        int version = client.observer.version + 1;
+        content = content.length() < MAX_CONTENT_LENGTH ? content + (char) ('a' + version % 26) : "";
+        handler.handleMessage(client.editor, new TextMessage(
+                objectMapper.writeValueAsString(Map.of("type", "updateNote", "payload", content, "version", version))));
+        return client.observer.await(version);
+    }
+
+    @Benchmark
+    @Group("editing")
+    @GroupThreads(1)
+    public void heartbeat(Client client) throws Exception {
+        handler.handleMessage(client.editor, HEARTBEAT);
+    }
+
+    @Benchmark
+    @Group("editing")
+    @GroupThreads(1)
+    public int reconnectWhileEditing() throws Exception {
+        return connectAndLeave();
+    }
+
+    @Benchmark
+    @Group("connecting")
+    @GroupThreads(4)
+    public int connect() throws Exception {
+        return connectAndLeave();
+    }
+
+    private int connectAndLeave() throws Exception {
+        // many notes have no editors, so their rooms are opened and closed here
+        String documentId = distribution == Distribution.HOT_DOCUMENT ? "note-0"
+                : "note-" + ThreadLocalRandom.current().nextInt(DOCUMENTS);
+        StubSession session = session(documentId);
+        handler.afterConnectionEstablished(session);
+        int version = session.await(0);
+        handler.afterConnectionClosed(session, CloseStatus.NORMAL);
+        return version;
+    }
+
+    private StubSession observer(String documentId) {
+        return observers.computeIfAbsent(documentId, id -> {
+            StubSession observer = session(id);
+            try {
+                handler.afterConnectionEstablished(observer);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            observer.await(0);
+            return observer;
+        });
+    }
+
+    private StubSession session(String documentId) {
+        return new StubSession("session-" + sessions.incrementAndGet(),
+                URI.create("ws://localhost/document/" + documentId), objectMapper);
+    }
+
+    /**
+     * A session that keeps the last content and version it was sent instead of writing
+     * frames to a socket.
+     */
+    static final class StubSession implements WebSocketSession {
+
+        private final String id;
+        private final URI uri;
+        private final ObjectMapper objectMapper;
+        private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition received = lock.newCondition();
+        private volatile String content = "";
+        private volatile int version = -1;
+        private volatile boolean open = true;
+
+        StubSession(String id, URI uri, ObjectMapper objectMapper) {
+            this.id = id;
+            this.uri = uri;
+            this.objectMapper = objectMapper;
+        }
+
+        /**
+         * Waits until a version at least {@code expected} was received, or until the
+         * room took too long, and returns the latest version.
+         */
+        int await(int expected) {
+            // parked rather than spinning, the lanes and senders need the cores too
+            long remaining = PATIENCE_NANOS;
+            lock.lock();
+            try {
+                while (version < expected && remaining > 0) {
+                    remaining = received.awaitNanos(remaining);
+                }
+                return version;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return version;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            JsonNode frame = objectMapper.readTree(((TextMessage) message).getPayload());
+            if (frame.has("payload") && frame.has("version")) {
+                lock.lock();
+                try {
+                    content = frame.get("payload").asText();
+                    version = Math.max(version, frame.get("version").asInt());
+                    received.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public URI getUri() {
+            return uri;
+        }
+
+        @Override
+        public HttpHeaders getHandshakeHeaders() {
+            return HttpHeaders.EMPTY;
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public Principal getPrincipal() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            return null;
+        }
+
+        @Override
+        public String getAcceptedProtocol() {
+            return null;
+        }
+
+        @Override
+        public void setTextMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getTextMessageSizeLimit() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getBinaryMessageSizeLimit() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public List<WebSocketExtension> getExtensions() {
+            return List.of();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+
+        @Override
+        public void close(CloseStatus status) {
+            open = false;
+        }
+    }
+
+    @Tag("jmh")
+    @Test
+    void runBenchmarks() throws Exception {
+        String result = System.getProperty("jmh.result", "target/jmh/socket-handler.json");
+        new File(result).getAbsoluteFile().getParentFile().mkdirs();
+        String args = System.getProperty("jmh.args", "").trim();
+
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args.isEmpty() ? new String[0] : args.split("\\s+")))
+                .include(SocketConnectionHandlerJmhBenchmarkTest.class.getSimpleName())
+                .resultFormat(ResultFormatType.JSON)
+                .result(result)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,79 @@
+package com.coledit.backend.handlers;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.coledit.backend.helpers.TextOperation;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+
+class SocketMessageDecoderTest {
+
+    private final SocketMessageDecoder decoder = new SocketMessageDecoder(new JsonFactory());
+    private final SocketMessage message = new SocketMessage();
+
+    @Test
+    void testHeartbeatStopsDecodingAtItsType() throws Exception {
+        // the rest of the frame is never read, so it does not have to be valid
+        decoder.decode("{\"type\":\"heartbeat\",\"payload\":[", message);
+
+        assertEquals(SocketMessage.Type.HEARTBEAT, message.getType());
+        assertNull(message.getPayload());
+    }
+
+    @Test
+    void testUpdateNoteFieldsAreReadInAnyOrder() throws Exception {
+        decoder.decode("{\"version\":7,\"extra\":{\"a\":[1,2]},\"payload\":\"hello\",\"type\":\"updateNote\"}",
+                message);
+
+        assertEquals(SocketMessage.Type.UPDATE_NOTE, message.getType());
+        assertEquals("hello", message.getPayload());
+        assertEquals(7, message.getVersion());
+    }
+
+    @Test
+    void testOperationsAreDecoded() throws Exception {
+        decoder.decode("{\"type\":\"updateOps\",\"version\":3,\"ops\":[{\"type\":\"insert\",\"position\":1,"
+                + "\"text\":\"ab\"},{\"position\":0,\"length\":2,\"type\":\"delete\"}]}", message);
+
+        assertEquals(SocketMessage.Type.UPDATE_OPS, message.getType());
+        assertEquals(3, message.getVersion());
+        assertEquals(List.of(TextOperation.insert(1, "ab"), TextOperation.delete(0, 2)), message.getOperations());
+    }
+
+    @Test
+    void testOneMalformedOperationDropsThemAll() throws Exception {
+        decoder.decode("{\"type\":\"updateOps\",\"version\":3,\"ops\":[{\"type\":\"insert\",\"position\":1,"
+                + "\"text\":\"ab\"},{\"type\":\"delete\",\"position\":\"0\"},7]}", message);
+
+        assertNull(message.getOperations());
+        assertEquals(3, message.getVersion());
+    }
+
+    @Test
+    void testFieldsOfTheWrongTypeAreLeftUnset() throws Exception {
+        decoder.decode("{\"type\":\"updateNote\",\"payload\":{\"text\":\"x\"},\"version\":1.5}", message);
+
+        assertEquals(SocketMessage.Type.UPDATE_NOTE, message.getType());
+        assertNull(message.getPayload());
+        assertNull(message.getVersion());
+    }
+
+    @Test
+    void testReusedMessageStartsEmpty() throws Exception {
+        decoder.decode("{\"type\":\"updateNote\",\"payload\":\"hello\",\"version\":1}", message);
+        decoder.decode("{\"type\":\"somethingElse\",\"payload\":\"bye\"}", message);
+
+        assertEquals(SocketMessage.Type.UNKNOWN, message.getType());
+        assertNull(message.getPayload());
+        assertNull(message.getVersion());
+    }
+
+    @Test
+    void testInvalidJsonThrows() {
+        assertThrows(JsonParseException.class, () -> decoder.decode("{\"type\":updateNote}", message));
+    }
+}
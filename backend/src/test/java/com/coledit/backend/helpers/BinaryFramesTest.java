@@ -0,0 +1,62 @@
+package com.coledit.backend.helpers;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class BinaryFramesTest {
+
+    @Test
+    void testContentFrameRoundTrips() {
+        String content = "naïve 😀 ".repeat(100);
+        ByteBuffer frame = ByteBuffer.wrap(BinaryFrames.encodeContent(BinaryFrames.UPDATE_NOTE, content, 300));
+
+        assertEquals(BinaryFrames.UPDATE_NOTE, frame.get());
+        assertEquals(300, BinaryFrames.readVarint(frame));
+        assertEquals(content, BinaryFrames.readText(frame));
+        assertFalse(frame.hasRemaining());
+    }
+
+    @Test
+    void testVarintsUseOneByteUpTo127() {
+        assertEquals(2, BinaryFrames.encodeAck(127).length);
+        assertEquals(3, BinaryFrames.encodeAck(128).length);
+
+        ByteBuffer frame = ByteBuffer.wrap(BinaryFrames.encodeAck(Integer.MAX_VALUE));
+        frame.get();
+        assertEquals(Integer.MAX_VALUE, BinaryFrames.readVarint(frame));
+    }
+
+    @Test
+    void testOperationFrameRoundTrips() {
+        List<TextOperation> operations = List.of(TextOperation.insert(5, "añadido"), TextOperation.delete(1000, 42));
+        ByteBuffer frame = ByteBuffer.wrap(BinaryFrames.encodeOperations(BinaryFrames.UPDATE_OPS, operations, 7));
+
+        assertEquals(BinaryFrames.UPDATE_OPS, frame.get());
+        assertEquals(7, BinaryFrames.readVarint(frame));
+        assertEquals(operations, BinaryFrames.readOperations(frame));
+    }
+
+    @Test
+    void testTruncatedFramesAreRejected() {
+        byte[] encoded = BinaryFrames.encodeContent(BinaryFrames.UPDATE_NOTE, "hello", 1);
+        ByteBuffer truncated = ByteBuffer.wrap(encoded, 0, encoded.length - 1);
+        truncated.get();
+        BinaryFrames.readVarint(truncated);
+
+        assertThrows(IllegalArgumentException.class, () -> BinaryFrames.readText(truncated));
+        assertThrows(IllegalArgumentException.class,
+                () -> BinaryFrames.readVarint(ByteBuffer.wrap(new byte[] { (byte) 0x80 })));
+    }
+
+    @Test
+    void testImpossibleOperationCountIsRejected() {
+        // claims 1000 operations in a frame of two bytes
+        ByteBuffer frame = ByteBuffer.wrap(new byte[] { (byte) 0xE8, 0x07, 0, 0 });
+
+        assertThrows(IllegalArgumentException.class, () -> BinaryFrames.readOperations(frame));
+    }
+}
@@ -0,0 +1,75 @@
+package com.coledit.backend.helpers;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import com.coledit.backend.dtos.WSUpdateNotification;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares encoding an update notification as JSON and as a binary frame, for contents
+ * with quotes, newlines and non-ASCII chars that JSON has to escape. Tagged as a
+ * benchmark, so it only runs with {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+class FrameEncodingBenchmarkTest {
+
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int MEASURED_ROUNDS = 500;
+
+    @Test
+    void benchmarkFrameEncoding() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        System.out.printf("%-8s %10s %12s %14s%n", "format", "doc chars", "frame bytes", "us/encode");
+        for (int documentLength : new int[] { 1_000, 100_000, 1_000_000 }) {
+            String content = randomText(new Random(documentLength), documentLength);
+            WSUpdateNotification notification = WSUpdateNotification.builder()
+                    .type("updateNotification")
+                    .payload(content)
+                    .version(12345)
+                    .build();
+
+            long checksum = 0;
+            for (int round = 0; round < WARMUP_ROUNDS; round++) {
+                checksum += objectMapper.writeValueAsString(notification).getBytes().length;
+                checksum += BinaryFrames.encodeContent(BinaryFrames.UPDATE_NOTIFICATION, content, 12345).length;
+            }
+
+            // a text frame goes out as UTF-8 too, so that is part of its cost
+            int jsonBytes = 0;
+            long start = System.nanoTime();
+            for (int round = 0; round < MEASURED_ROUNDS; round++) {
+                jsonBytes = objectMapper.writeValueAsString(notification).getBytes().length;
+            }
+            double jsonMicros = (System.nanoTime() - start) / 1_000.0 / MEASURED_ROUNDS;
+
+            int binaryBytes = 0;
+            start = System.nanoTime();
+            for (int round = 0; round < MEASURED_ROUNDS; round++) {
+                binaryBytes = BinaryFrames.encodeContent(BinaryFrames.UPDATE_NOTIFICATION, content, 12345).length;
+            }
+            double binaryMicros = (System.nanoTime() - start) / 1_000.0 / MEASURED_ROUNDS;
+
+            System.out.printf("%-8s %10d %12d %14.1f%s%n", "json", documentLength, jsonBytes, jsonMicros,
+                    checksum == 0 ? " (empty)" : "");
+            System.out.printf("%-8s %10d %12d %14.1f%n", "binary", documentLength, binaryBytes, binaryMicros);
+        }
+    }
+
+    private static String randomText(Random random, int length) {
+        String special = "\"\n\téü\\";
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            int pick = random.nextInt(40);
+            if (pick == 0) {
+                sb.append(special.charAt(random.nextInt(special.length())));
+            } else {
+                sb.append(pick < 7 ? ' ' : (char) ('a' + random.nextInt(26)));
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,129 @@
+package com.coledit.backend.helpers;
+
+import com.github.difflib.DiffUtils;
+import com.github.difflib.patch.AbstractDelta;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MyersDiffTest {
+
+    @Test
+    void testSingleInsert() {
+        DeltaList deltas = diff("abcd", "abXcd");
+
+        // `X` is inserted before `c`
+        assertEquals(1, deltas.size());
+        assertEquals(2, deltas.sourcePosition(0));
+        assertEquals(0, deltas.sourceLength(0));
+        assertEquals(2, deltas.targetPosition(0));
+        assertEquals(1, deltas.targetLength(0));
+    }
+
+    @Test
+    void testSingleDelete() {
+        DeltaList deltas = diff("abcd", "ad");
+
+        // `bc` is deleted
+        assertEquals(1, deltas.size());
+        assertEquals(1, deltas.sourcePosition(0));
+        assertEquals(2, deltas.sourceLength(0));
+        assertEquals(0, deltas.targetLength(0));
+    }
+
+    @Test
+    void testIdenticalProducesNoDeltas() {
+        assertTrue(diff("abcd", "abcd").isEmpty());
+        assertTrue(diff("", "").isEmpty());
+    }
+
+    @Test
+    void testSubRangeUsesAbsolutePositions() {
+        char[] source = "xxabcyy".toCharArray();
+        char[] target = "zabdz".toCharArray();
+        DeltaList deltas = new DeltaList();
+
+        // only `abc` and `abd` are compared, positions stay relative to the whole arrays
+        MyersDiff.diff(source, 2, 5, target, 1, 4, 3, deltas);
+
+        assertEquals(1, deltas.size());
+        assertEquals(4, deltas.sourcePosition(0));
+        assertEquals(1, deltas.sourceLength(0));
+        assertEquals(3, deltas.targetPosition(0));
+        assertEquals(1, deltas.targetLength(0));
+        assertEquals(3, deltas.variant(0));
+    }
+
+    @Test
+    void testMatchesJavaDiffUtilsOnRandomEdits() {
+        // the merge results depend on where the diff places each delta, so the char
+        // array diff has to produce exactly what java-diff-utils produced before
+        Random random = new Random(42);
+        for (int round = 0; round < 2000; round++) {
+            String original = randomString(random, random.nextInt(24));
+            String revised = mutate(random, original);
+
+            assertEquals(javaDiffUtils(original, revised), describe(diff(original, revised)),
+                    () -> "diff of '" + original + "' and '" + revised + "'");
+        }
+    }
+
+    private static DeltaList diff(String original, String revised) {
+        char[] source = original.toCharArray();
+        char[] target = revised.toCharArray();
+        DeltaList deltas = new DeltaList();
+        MyersDiff.diff(source, 0, source.length, target, 0, target.length, 0, deltas);
+        return deltas;
+    }
+
+    private static String describe(DeltaList deltas) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < deltas.size(); i++) {
+            sb.append(deltas.sourcePosition(i)).append('+').append(deltas.sourceLength(i)).append("->")
+                    .append(deltas.targetPosition(i)).append('+').append(deltas.targetLength(i)).append(';');
+        }
+        return sb.toString();
+    }
+
+    private static String javaDiffUtils(String original, String revised) {
+        List<AbstractDelta<Character>> deltas = DiffUtils.diff(toList(original), toList(revised)).getDeltas();
+        StringBuilder sb = new StringBuilder();
+        for (AbstractDelta<Character> delta : deltas) {
+            sb.append(delta.getSource().getPosition()).append('+').append(delta.getSource().size()).append("->")
+                    .append(delta.getTarget().getPosition()).append('+').append(delta.getTarget().size())
+                    .append(';');
+        }
+        return sb.toString();
+    }
+
+    private static List<Character> toList(String string) {
+        return string.chars().mapToObj(c -> (char) c).collect(Collectors.toList());
+    }
+
+    private static String randomString(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            // a tiny alphabet produces many equally short edit scripts
+            sb.append((char) ('a' + random.nextInt(3)));
+        }
+        return sb.toString();
+    }
+
+    private static String mutate(Random random, String original) {
+        StringBuilder sb = new StringBuilder(original);
+        int edits = random.nextInt(5);
+        for (int i = 0; i < edits; i++) {
+            int position = sb.length() == 0 ? 0 : random.nextInt(sb.length() + 1);
+            if (random.nextBoolean() || sb.length() == 0) {
+                sb.insert(position, randomString(random, 1 + random.nextInt(3)));
+            } else {
+                sb.delete(position, Math.min(sb.length(), position + 1 + random.nextInt(3)));
+            }
+        }
+        return sb.toString();
+    }
+}
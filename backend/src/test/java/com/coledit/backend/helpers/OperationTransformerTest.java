@@ -0,0 +1,124 @@
+package com.coledit.backend.helpers;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class OperationTransformerTest {
+
+    @Test
+    void testConcurrentInsertsAtTheSamePositionKeepServerFirst() {
+        List<TextOperation> server = List.of(TextOperation.insert(3, "xyz"));
+        List<TextOperation> client = List.of(TextOperation.insert(3, "def"));
+
+        String result = OperationTransformer.apply(OperationTransformer.apply("abc", server),
+                OperationTransformer.transform(client, server));
+
+        assertEquals("abcxyzdef", result);
+    }
+
+    @Test
+    void testInsertInsideDeletedRangeSurvives() {
+        List<TextOperation> server = List.of(TextOperation.delete(1, 4));
+        List<TextOperation> client = List.of(TextOperation.insert(3, "X"));
+
+        String result = OperationTransformer.apply(OperationTransformer.apply("abcdef", server),
+                OperationTransformer.transform(client, server));
+
+        assertEquals("aXf", result);
+    }
+
+    @Test
+    void testOverlappingDeletesRemoveTextOnce() {
+        List<TextOperation> server = List.of(TextOperation.delete(1, 3));
+        List<TextOperation> client = List.of(TextOperation.delete(2, 3));
+
+        String result = OperationTransformer.apply(OperationTransformer.apply("abcdefg", server),
+                OperationTransformer.transform(client, server));
+
+        assertEquals("afg", result);
+    }
+
+    @Test
+    void testOperationOutsideTheDocumentIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> OperationTransformer.apply("abc", List.of(TextOperation.delete(2, 5))));
+    }
+
+    @Test
+    void testDiffTurnsBeforeIntoAfter() {
+        Random random = new Random(7);
+        for (int round = 0; round < 1000; round++) {
+            String before = randomText(random, random.nextInt(30));
+            String after = randomText(random, random.nextInt(30));
+
+            assertEquals(after, OperationTransformer.apply(before, OperationTransformer.diff(before, after)),
+                    before + " -> " + after);
+        }
+    }
+
+    @Test
+    void testRandomConcurrentOperationsConverge() {
+        // both sides end with the same text whichever order the operations are applied in
+        Random random = new Random(42);
+        for (int round = 0; round < 5000; round++) {
+            String document = randomText(random, random.nextInt(20));
+            List<TextOperation> server = randomOperations(random, document);
+            List<TextOperation> client = randomOperations(random, document);
+
+            OperationTransformer.Transformed transformed = OperationTransformer.transformBoth(client, server);
+            String serverFirst = OperationTransformer.apply(OperationTransformer.apply(document, server),
+                    transformed.client());
+            String clientFirst = OperationTransformer.apply(OperationTransformer.apply(document, client),
+                    transformed.server());
+
+            assertEquals(serverFirst, clientFirst, document + " " + server + " " + client);
+        }
+    }
+
+    @Test
+    void testLongFramesDoNotExhaustTheStack() {
+        // a frame of single-char inserts, as a paste sent keystroke by keystroke
+        List<TextOperation> client = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            client.add(TextOperation.insert(i, "a"));
+        }
+        List<TextOperation> server = List.of(TextOperation.insert(0, "b"), TextOperation.delete(1, 2));
+
+        OperationTransformer.Transformed transformed = OperationTransformer.transformBoth(client, server);
+
+        String document = "xyz";
+        assertEquals(OperationTransformer.apply(OperationTransformer.apply(document, server), transformed.client()),
+                OperationTransformer.apply(OperationTransformer.apply(document, client), transformed.server()));
+    }
+
+    private static List<TextOperation> randomOperations(Random random, String document) {
+        List<TextOperation> operations = new ArrayList<>();
+        int length = document.length();
+        for (int i = random.nextInt(4); i > 0; i--) {
+            int position = random.nextInt(length + 1);
+            if (length > position && random.nextBoolean()) {
+                int deleted = 1 + random.nextInt(length - position);
+                operations.add(TextOperation.delete(position, deleted));
+                length -= deleted;
+            } else {
+                String text = randomText(random, 1 + random.nextInt(3));
+                operations.add(TextOperation.insert(position, text));
+                length += text.length();
+            }
+        }
+        return operations;
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + random.nextInt(3)));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,171 @@
+package com.coledit.backend.helpers;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StringMergerConflictResolutionTest {
+
+    @Test
+    void testBiggerRangeWins() {
+        DeltaList deltas = new DeltaList();
+        deltas.add(2, 2, 0, 0, 0);
+        deltas.add(1, 4, 0, 0, 1);
+        deltas.add(6, 1, 0, 0, 2);
+
+        // [1, 5) beats [2, 4), [6, 7) does not touch either
+        assertArrayEquals(new int[] { 1, 2 }, StringMerger.resolveConflicts(deltas));
+    }
+
+    @Test
+    void testLaterDeltaWinsBetweenEqualSizes() {
+        DeltaList deltas = new DeltaList();
+        deltas.add(0, 3, 0, 0, 0);
+        deltas.add(2, 3, 0, 0, 1);
+
+        assertArrayEquals(new int[] { 1 }, StringMerger.resolveConflicts(deltas));
+    }
+
+    @Test
+    void testInsertsOnlyLoseInsideAKeptRange() {
+        DeltaList deltas = new DeltaList();
+        deltas.add(2, 3, 0, 0, 0);
+        deltas.add(2, 0, 0, 1, 1);
+        deltas.add(3, 0, 0, 1, 1);
+        deltas.add(5, 0, 0, 1, 1);
+
+        // the inserts at the edges of [2, 5) are kept and laid out around it,
+        // the insert at 3 would land inside the replaced text
+        assertArrayEquals(new int[] { 1, 0, 3 }, StringMerger.resolveConflicts(deltas));
+    }
+
+    @Test
+    void testKeptDeltasNeverOverlapAndMatchPairwiseResolution() {
+        Random random = new Random(7);
+        for (int round = 0; round < 500; round++) {
+            DeltaList deltas = randomDeltas(random, 1 + random.nextInt(40), 60);
+            int[] resolved = StringMerger.resolveConflicts(deltas);
+
+            assertArrayEquals(pairwiseResolution(deltas), resolved);
+            for (int i = 1; i < resolved.length; i++) {
+                assertTrue(deltas.sourceEnd(resolved[i - 1]) <= deltas.sourcePosition(resolved[i]));
+            }
+        }
+    }
+
+    @Test
+    void testResolutionIsDeterministic() {
+        DeltaList deltas = randomDeltas(new Random(11), 10_000, 50_000);
+
+        assertArrayEquals(StringMerger.resolveConflicts(deltas), StringMerger.resolveConflicts(deltas));
+    }
+
+    @Test
+    void testLargeInputMatchesPairwiseResolution() {
+        // dense, overlapping deltas as produced by pastes from many variants
+        DeltaList deltas = randomDeltas(new Random(3), 10_000, 100_000);
+        int[] resolved = StringMerger.resolveConflicts(deltas);
+
+        assertArrayEquals(pairwiseResolution(deltas), resolved);
+        for (int i = 1; i < resolved.length; i++) {
+            assertTrue(deltas.sourceEnd(resolved[i - 1]) <= deltas.sourcePosition(resolved[i]));
+        }
+    }
+
+    @Test
+    void testManyDeltasResolveWellWithinTheQuadraticBudget() {
+        // well under a second in n log n, tens of seconds if it went back to pairwise
+        DeltaList deltas = randomDeltas(new Random(5), 200_000, 2_000_000);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> StringMerger.resolveConflicts(deltas));
+    }
+
+    // timing depends on the machine, so it only runs with mvn test -Pbenchmark
+    @Test
+    @Tag("benchmark")
+    void testScalesNearLinearlyUpTo100kDeltas() {
+        // dense, overlapping deltas as produced by pastes from many variants
+        DeltaList small = randomDeltas(new Random(1), 10_000, 100_000);
+        DeltaList large = randomDeltas(new Random(1), 100_000, 1_000_000);
+
+        for (int warmup = 0; warmup < 5; warmup++) {
+            StringMerger.resolveConflicts(small);
+            StringMerger.resolveConflicts(large);
+        }
+
+        long smallNanos = fastestOf(small);
+        long largeNanos = fastestOf(large);
+
+        // n log n grows ~12.5x from 10k to 100k deltas, pairwise resolution 100x
+        assertTrue(largeNanos < smallNanos * 40,
+                () -> "10k deltas: " + smallNanos / 1_000 + " us, 100k deltas: " + largeNanos / 1_000 + " us");
+    }
+
+    private static long fastestOf(DeltaList deltas) {
+        long fastest = Long.MAX_VALUE;
+        for (int run = 0; run < 5; run++) {
+            long start = System.nanoTime();
+            StringMerger.resolveConflicts(deltas);
+            fastest = Math.min(fastest, System.nanoTime() - start);
+        }
+        return fastest;
+    }
+
+    private static DeltaList randomDeltas(Random random, int count, int documentLength) {
+        DeltaList deltas = new DeltaList(count);
+        for (int i = 0; i < count; i++) {
+            int position = random.nextInt(documentLength);
+            int length = random.nextInt(4) == 0 ? 0 : 1 + random.nextInt(12);
+            deltas.add(position, Math.min(length, documentLength - position), 0, random.nextInt(3), i % 5);
+        }
+        return deltas;
+    }
+
+    // straightforward O(n^2) statement of the rules the resolver implements
+    private static int[] pairwiseResolution(DeltaList deltas) {
+        List<Integer> candidates = new ArrayList<>();
+        for (int i = 0; i < deltas.size(); i++) {
+            candidates.add(i);
+        }
+        candidates.sort((a, b) -> deltas.sourceLength(a) != deltas.sourceLength(b)
+                ? Integer.compare(deltas.sourceLength(b), deltas.sourceLength(a))
+                : Integer.compare(b, a));
+
+        List<Integer> kept = new ArrayList<>();
+        for (int candidate : candidates) {
+            int start = deltas.sourcePosition(candidate);
+            int end = deltas.sourceEnd(candidate);
+            boolean conflict = false;
+            for (int other : kept) {
+                int otherStart = deltas.sourcePosition(other);
+                int otherEnd = deltas.sourceEnd(other);
+                conflict |= start == end
+                        ? otherStart < start && start < otherEnd
+                        : start < otherEnd && otherStart < end;
+            }
+            if (!conflict) {
+                kept.add(candidate);
+            }
+        }
+
+        kept.sort((a, b) -> {
+            if (deltas.sourcePosition(a) != deltas.sourcePosition(b)) {
+                return Integer.compare(deltas.sourcePosition(a), deltas.sourcePosition(b));
+            }
+            if (deltas.sourceLength(a) == 0 && deltas.sourceLength(b) != 0) {
+                return -1;
+            }
+            if (deltas.sourceLength(b) == 0 && deltas.sourceLength(a) != 0) {
+                return 1;
+            }
+            return Integer.compare(a, b);
+        });
+        return kept.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
@@ -0,0 +1,167 @@
+package com.coledit.backend.helpers;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmarks of {@link StringMerger#mergeVariants} and of the merge as a room runs
+ * it, followed by the diff its operation history records. Throughput, sampled latency
+ * and, through the GC profiler, the bytes allocated per merge are measured by document
+ * size, number of variants, kind of edit and how many of the variants edit the same
+ * place.
+ *
+ * Tagged {@code jmh}, so it only runs with {@code mvn test -Pjmh}. The inputs come from
+ * fixed seeds and the results are written as JSON to {@code target/jmh}, so runs on
+ * different commits can be compared. JMH options can be passed as
+ * {@code -Djmh.args="-p documentLength=1000 -wi 1"} and the result file changed with
+ * {@code -Djmh.result=...}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class StringMergerJmhBenchmarkTest {
+
+    // rounds of variants cycled through, so no single input gets specially well predicted
+    private static final int ROUNDS = 16;
+    private static final int PASTE_LENGTH = 200;
+    private static final int SCATTERED_EDITS = 10;
+
+    public enum Locality {
+        // one char inserted or deleted
+        KEYSTROKE,
+        // a block of text inserted
+        PASTE,
+        // a few single-char edits spread over the document
+        SCATTERED
+    }
+
+    @Param({ "1000", "100000", "1000000" })
+    public int documentLength;
+
+    @Param({ "2", "8" })
+    public int variantCount;
+
+    @Param({ "KEYSTROKE", "PASTE", "SCATTERED" })
+    public Locality locality;
+
+    // share of the other variants editing where the first one does
+    @Param({ "0.0", "0.5", "1.0" })
+    public double conflictDensity;
+
+    private String original;
+    private List<List<String>> rounds;
+    private int round;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(31L * documentLength + variantCount);
+        original = randomText(random, documentLength);
+        rounds = new ArrayList<>(ROUNDS);
+        for (int i = 0; i < ROUNDS; i++) {
+            rounds.add(variants(random));
+        }
+    }
+
+    @Benchmark
+    public String mergeVariants() {
+        return StringMerger.mergeVariants(original, nextRound());
+    }
+
+    @Benchmark
+    public List<TextOperation> mergeAndDiff() {
+        String merged = StringMerger.mergeVariants(original, nextRound());
+        return OperationTransformer.diff(original, merged);
+    }
+
+    private List<String> nextRound() {
+        round = (round + 1) % ROUNDS;
+        return rounds.get(round);
+    }
+
+    private List<String> variants(Random random) {
+        int conflicting = (int) Math.round(conflictDensity * (variantCount - 1));
+        int anchor = random.nextInt(documentLength);
+        List<String> variants = new ArrayList<>(variantCount);
+        for (int i = 0; i < variantCount; i++) {
+            boolean conflicts = i > 0 && i <= conflicting;
+            variants.add(edit(random, i == 0 || conflicts ? anchor : random.nextInt(documentLength)));
+        }
+        return variants;
+    }
+
+    private String edit(Random random, int position) {
+        switch (locality) {
+            case KEYSTROKE:
+                return random.nextBoolean()
+                        ? original.substring(0, position) + letter(random) + original.substring(position)
+                        : original.substring(0, position) + original.substring(Math.min(position + 1, documentLength));
+            case PASTE:
+                return original.substring(0, position) + randomText(random, PASTE_LENGTH)
+                        + original.substring(position);
+            default:
+                StringBuilder edited = new StringBuilder(original);
+                int stride = documentLength / SCATTERED_EDITS;
+                // from the end, so the earlier positions stay where they were
+                for (int i = SCATTERED_EDITS - 1; i >= 0; i--) {
+                    int at = (position + i * stride) % documentLength;
+                    edited.insert(at, letter(random));
+                }
+                return edited.toString();
+        }
+    }
+
+    private static char letter(Random random) {
+        return (char) ('a' + random.nextInt(26));
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(random.nextInt(6) == 0 ? ' ' : letter(random));
+        }
+        return sb.toString();
+    }
+
+    @Tag("jmh")
+    @Test
+    void runBenchmarks() throws Exception {
+        String result = System.getProperty("jmh.result", "target/jmh/string-merger.json");
+        new File(result).getAbsoluteFile().getParentFile().mkdirs();
+        String args = System.getProperty("jmh.args", "").trim();
+
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args.isEmpty() ? new String[0] : args.split("\\s+")))
+                .include(StringMergerJmhBenchmarkTest.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(result)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -253,4 +253,37 @@ class StringMergerTest {
 
         assertEquals(expected, result);
     }
+
+    @Test
+    void testKeystrokesInLargeDocument() throws PatchFailedException {
+        String original = "ab".repeat(50_000);
+        String typed = original.substring(0, 1000) + "x" + original.substring(1000);
+        String erased = original.substring(0, 70_000) + original.substring(70_001);
+        String expected = original.substring(0, 1000) + "x" + original.substring(1000, 70_000)
+                + original.substring(70_001);
+
+        // first one types `x` at position 1000
+        // second one erases the character at position 70000
+
+        // both are single-region edits found by trimming the common prefix and suffix,
+        // they do not overlap and both are kept
+        String result = StringMerger.mergeVariants(original, List.of(typed, erased));
+
+        assertEquals(expected, result);
+    }
+
+    @Test
+    void testTrimmedReplacementInTheMiddle() throws PatchFailedException {
+        String original = "the quick brown fox";
+        List<String> variants = List.of("the quick red fox", "the quick brown fox jumps");
+        String expected = "the quick red fox jumps";
+
+        // first one changes `brown` to `red`, only the middle window is diffed
+        // second one appends ` jumps`
+
+        // non conflicting, all are kept
+        String result = StringMerger.mergeVariants(original, variants);
+
+        assertEquals(expected, result);
+    }
 }
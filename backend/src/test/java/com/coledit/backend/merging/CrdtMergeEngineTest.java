@@ -0,0 +1,34 @@
+package com.coledit.backend.merging;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class CrdtMergeEngineTest {
+
+    private final CrdtMergeEngine engine = new CrdtMergeEngine();
+
+    @Test
+    void testConcurrentReplacementsAreBothKept() {
+        // the diff merger keeps only one of the two replacements of "b"
+        assertEquals("aXYc", engine.merge("abc", List.of("aXc", "aYc")));
+    }
+
+    @Test
+    void testDeletesOfEveryVariantApply() {
+        assertEquals("ad", engine.merge("abcd", List.of("acd", "abd")));
+    }
+
+    @Test
+    void testInsertIntoTextAnotherVariantDeleted() {
+        assertEquals("aXd", engine.merge("abcd", List.of("ad", "abXcd")));
+    }
+
+    @Test
+    void testSingleVariantIsTakenAsIs() {
+        assertEquals("hello world", engine.merge("hello", List.of("hello world")));
+        assertEquals("", engine.merge("hello", List.of("")));
+    }
+}
@@ -0,0 +1,70 @@
+package com.coledit.backend.merging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the merge engines on keystroke-sized edits of growing documents. Tagged as a
+ * benchmark, so it only runs with {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+class MergeEngineBenchmarkTest {
+
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int MEASURED_ROUNDS = 500;
+
+    @Test
+    void benchmarkMergeEngines() {
+        List<MergeEngine> engines = List.of(new DiffMergeEngine(), new CrdtMergeEngine());
+
+        System.out.printf("%-18s %10s %9s %14s%n", "engine", "doc chars", "variants", "us/merge");
+        for (int documentLength : new int[] { 1_000, 100_000, 1_000_000 }) {
+            for (int variantCount : new int[] { 2, 8 }) {
+                Random random = new Random(documentLength + variantCount);
+                String original = randomText(random, documentLength);
+                List<List<String>> rounds = new ArrayList<>();
+                for (int round = 0; round < 16; round++) {
+                    rounds.add(keystrokeVariants(random, original, variantCount));
+                }
+
+                for (MergeEngine engine : engines) {
+                    long checksum = 0;
+                    for (int round = 0; round < WARMUP_ROUNDS; round++) {
+                        checksum += engine.merge(original, rounds.get(round % rounds.size())).length();
+                    }
+                    long start = System.nanoTime();
+                    for (int round = 0; round < MEASURED_ROUNDS; round++) {
+                        checksum += engine.merge(original, rounds.get(round % rounds.size())).length();
+                    }
+                    double micros = (System.nanoTime() - start) / 1_000.0 / MEASURED_ROUNDS;
+
+                    System.out.printf("%-18s %10d %9d %14.1f%s%n", engine.getClass().getSimpleName(),
+                            documentLength, variantCount, micros, checksum == 0 ? " (empty)" : "");
+                }
+            }
+        }
+    }
+
+    private static List<String> keystrokeVariants(Random random, String original, int count) {
+        List<String> variants = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int position = random.nextInt(original.length());
+            variants.add(random.nextBoolean()
+                    ? original.substring(0, position) + (char) ('a' + random.nextInt(26)) + original.substring(position)
+                    : original.substring(0, position) + original.substring(position + 1));
+        }
+        return variants;
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(random.nextInt(6) == 0 ? ' ' : (char) ('a' + random.nextInt(26)));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,133 @@
+package com.coledit.backend.merging;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+
+class RgaSequenceTest {
+
+    @Test
+    void testInsertInsideABlockSplitsIt() {
+        RgaSequence sequence = new RgaSequence();
+        sequence.insert(0, 1, RgaSequence.HEAD_REPLICA, RgaSequence.HEAD_CLOCK, "abcd");
+        sequence.insert(1, 5, 0, 2, "XY");
+
+        assertEquals("abXYcd", sequence.toString());
+        assertEquals(3, sequence.blockCount());
+    }
+
+    @Test
+    void testTypingExtendsTheBlock() {
+        RgaSequence sequence = new RgaSequence();
+        sequence.insert(1, 1, RgaSequence.HEAD_REPLICA, RgaSequence.HEAD_CLOCK, "a");
+        sequence.insert(1, 2, 1, 1, "b");
+        sequence.insert(1, 3, 1, 2, "c");
+
+        assertEquals("abc", sequence.toString());
+        assertEquals(1, sequence.blockCount());
+    }
+
+    @Test
+    void testConcurrentInsertsAtTheSamePlaceAreOrderedById() {
+        RgaSequence first = new RgaSequence();
+        first.insert(0, 1, RgaSequence.HEAD_REPLICA, RgaSequence.HEAD_CLOCK, "ab");
+        first.insert(1, 3, 0, 1, "x");
+        first.insert(2, 3, 0, 1, "y");
+
+        RgaSequence second = new RgaSequence();
+        second.insert(0, 1, RgaSequence.HEAD_REPLICA, RgaSequence.HEAD_CLOCK, "ab");
+        second.insert(2, 3, 0, 1, "y");
+        second.insert(1, 3, 0, 1, "x");
+
+        // equal clocks, the lower replica goes first
+        assertEquals("axyb", first.toString());
+        assertEquals("axyb", second.toString());
+    }
+
+    @Test
+    void testDeletesKeepTheirPlaceUntilCompacted() {
+        RgaSequence sequence = new RgaSequence();
+        sequence.insert(0, 1, RgaSequence.HEAD_REPLICA, RgaSequence.HEAD_CLOCK, "abcdef");
+        sequence.delete(0, 2, 3);
+        sequence.delete(0, 3, 1);
+        // an insert after a deleted char still lands where it was meant to
+        sequence.insert(1, 7, 0, 3, "X");
+
+        assertEquals("aXef", sequence.toString());
+        assertEquals(4, sequence.length());
+
+        sequence.compact();
+        assertEquals("aXef", sequence.toString());
+        assertEquals(3, sequence.blockCount());
+
+        // the ids of live chars survive, the dropped ones are gone
+        sequence.insert(1, 8, 0, 5, "Y");
+        assertEquals("aXeYf", sequence.toString());
+        assertThrows(IllegalArgumentException.class, () -> sequence.insert(1, 9, 0, 3, "Z"));
+    }
+
+    @Test
+    void testRandomConcurrentOperationsConvergeInAnyOrder() {
+        Random random = new Random(11);
+        for (int round = 0; round < 500; round++) {
+            String base = "abcdefghij".substring(0, 1 + random.nextInt(10));
+            List<List<Consumer<RgaSequence>>> replicas = new ArrayList<>();
+            for (int replica = 1; replica <= 3; replica++) {
+                replicas.add(randomOperations(random, replica, base.length()));
+            }
+
+            String expected = null;
+            for (int order = 0; order < 5; order++) {
+                RgaSequence sequence = new RgaSequence();
+                sequence.insert(0, 1, RgaSequence.HEAD_REPLICA, RgaSequence.HEAD_CLOCK, base);
+
+                // each replica's own operations stay in order, the replicas interleave freely
+                List<Deque<Consumer<RgaSequence>>> queues = new ArrayList<>();
+                replicas.forEach(operations -> queues.add(new ArrayDeque<>(operations)));
+                while (!queues.isEmpty()) {
+                    int replica = random.nextInt(queues.size());
+                    queues.get(replica).poll().accept(sequence);
+                    if (queues.get(replica).isEmpty()) {
+                        queues.remove(replica);
+                    }
+                }
+
+                if (expected == null) {
+                    expected = sequence.toString();
+                }
+                assertEquals(expected, sequence.toString());
+            }
+        }
+    }
+
+    private static List<Consumer<RgaSequence>> randomOperations(Random random, int replica, int baseLength) {
+        List<Consumer<RgaSequence>> operations = new ArrayList<>();
+        int clock = baseLength + 1;
+        for (int i = 1 + random.nextInt(4); i > 0; i--) {
+            if (random.nextBoolean()) {
+                int from = 1 + random.nextInt(baseLength);
+                int length = 1 + random.nextInt(baseLength - from + 1);
+                operations.add(sequence -> sequence.delete(0, from, length));
+            } else {
+                // after a char of the base or one this replica inserted before
+                int ownChars = clock - baseLength - 1;
+                boolean afterOwn = ownChars > 0 && random.nextBoolean();
+                int originReplica = afterOwn ? replica : (random.nextInt(4) == 0 ? RgaSequence.HEAD_REPLICA : 0);
+                int originClock = afterOwn ? baseLength + 1 + random.nextInt(ownChars)
+                        : (originReplica == 0 ? 1 + random.nextInt(baseLength) : RgaSequence.HEAD_CLOCK);
+                String text = "xyz".substring(0, 1 + random.nextInt(3));
+                int insertClock = clock;
+                operations.add(sequence -> sequence.insert(replica, insertClock, originReplica, originClock, text));
+                clock += text.length();
+            }
+        }
+        return operations;
+    }
+}
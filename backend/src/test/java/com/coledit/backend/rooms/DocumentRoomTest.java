@@ -0,0 +1,805 @@
+package com.coledit.backend.rooms;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.coledit.backend.backplane.Backplane;
+import com.coledit.backend.backplane.InProcessBackplane;
+import com.coledit.backend.backplane.LocalBackplane;
+import com.coledit.backend.helpers.BinaryFrames;
+import com.coledit.backend.helpers.TextOperation;
+import com.coledit.backend.merging.DiffMergeEngine;
+import com.coledit.backend.metrics.CollaborationMetrics;
+import com.coledit.backend.services.NoteContentFlusher;
+import com.coledit.backend.services.NoteContentReplaced;
+import com.coledit.backend.services.NoteService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class DocumentRoomTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Queue<Runnable> lane = new ArrayDeque<>();
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+
+    private NoteService noteService;
+    private NoteContentFlusher flusher;
+    private DocumentStateCache cache;
+    private DocumentRoomRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        noteService = mock(NoteService.class);
+        flusher = mock(NoteContentFlusher.class);
+        cache = new DocumentStateCache(1 << 20, Long.MAX_VALUE, System::nanoTime, null);
+        // the lane only runs when the test says so, which lets events pile up in a mailbox
+        registry = registry(UpdateCoalescing.disabled());
+    }
+
+    private DocumentRoomRegistry registry(UpdateCoalescing coalescing) {
+        return registry(coalescing, cache, new LocalBackplane());
+    }
+
+    private DocumentRoomRegistry registry(UpdateCoalescing coalescing, DocumentStateCache cache,
+            Backplane backplane) {
+        CollaborationMetrics metrics = new CollaborationMetrics(meters);
+        return new DocumentRoomRegistry(flusher, objectMapper, new DiffMergeEngine(),
+                new SessionOutboxes(64, OverflowPolicy.DROP_TO_LATEST, lane::add, metrics), coalescing,
+                new NoteContentLoader(noteService, flusher, cache, backplane, lane::add), cache, backplane,
+                metrics, lane::add);
+    }
+
+    // another backend node, with its own rooms and cache, sharing the lane with this one
+    private DocumentRoomRegistry node(String nodeId, InProcessBackplane.Hub hub) {
+        DocumentStateCache nodeCache = new DocumentStateCache(1 << 20, Long.MAX_VALUE, System::nanoTime, null);
+        return registry(UpdateCoalescing.disabled(), nodeCache, new InProcessBackplane(nodeId, hub));
+    }
+
+    @Test
+    void testUpdateIsBroadcastToOtherSessions() throws Exception {
+        WebSocketSession alice = session("alice");
+        WebSocketSession bob = session("bob");
+        DocumentRoom room = registry.room("note");
+
+        room.join(alice);
+        room.join(bob);
+        room.update(alice, "hello", 1);
+        runLane();
+
+        // the author already shows the content, only the other session is notified
+        assertEquals(List.of("@0"), received(alice));
+        assertEquals(List.of("@0", "hello@1"), received(bob));
+    }
+
+    @Test
+    void testOutdatedVersionIsRebasedOntoTheCurrentContent() throws Exception {
+        WebSocketSession alice = session("alice");
+        WebSocketSession bob = session("bob");
+        DocumentRoom room = registry.room("note");
+
+        room.join(alice);
+        room.join(bob);
+        room.update(alice, "hello", 1);
+        runLane();
+        // bob typed on the empty note before alice's version reached him
+        room.update(bob, "bye", 1);
+        runLane();
+
+        assertEquals(List.of("@0", "hello@1", "hellobye@2"), received(bob));
+        assertEquals(List.of("@0", "hellobye@2"), received(alice));
+    }
+
+    @Test
+    void testUpdateMadeOnTheAuthorsOwnVariantKeepsTheOthersEdits() throws Exception {
+        WebSocketSession alice = session("alice");
+        WebSocketSession bob = session("bob");
+        DocumentRoom room = registry.room("note");
+
+        room.join(alice);
+        room.join(bob);
+        room.update(alice, "hello ", 1);
+        room.update(bob, "world", 1);
+        runLane();
+        // alice kept typing on her own version, before the merged one reached her
+        room.update(alice, "hello there ", 2);
+        runLane();
+
+        // rebased rather than taken as a variant of the merged version, which would drop
+        // bob's word; both inserts are at the same place, the room's content comes first
+        assertEquals(List.of("@0", "hello world@1", "hello worldthere @2"), received(bob));
+        assertEquals(List.of("@0", "hello world@1", "hello worldthere @2"), received(alice));
+    }
+
+    @Test
+    void testEarlyUpdateWaitsForTheOneItWasMadeOn() throws Exception {
+        WebSocketSession alice = session("alice");
+        WebSocketSession bob = session("bob");
+        DocumentRoom room = registry.room("note");
+
+        room.join(alice);
+        room.join(bob);
+        room.update(alice, "ab", 2);
+        runLane();
+        assertEquals(List.of("@0"), received(bob));
+
+        room.update(alice, "a", 1);
+        runLane();
+
+        assertEquals(List.of("@0", "a@1", "ab@2"), received(bob));
+    }
+
+    @Test
+    void testUpdateMadeOnAForgottenVersionGetsASnapshot() throws Exception {
+        WebSocketSession alice = session("alice");
+        WebSocketSession bob = session("bob");
+        DocumentRoom room = registry.room("note");
+
+        room.join(alice);
+        room.join(bob);
+        StringBuilder text = new StringBuilder();
+        for (int version = 1; version <= 20; version++) {
+            text.append('x');
+            room.update(alice, text.toString(), version);
+            runLane();
+        }
+        // bob's content at version 0 is no longer kept to rebase on
+        room.update(bob, "late", 1);
+        runLane();
+
+        List<String> received = received(bob);
+        assertEquals(22, received.size());
+        assertEquals("xxxxxxxxxxxxxxxxxxxx@20", received.get(21));
+    }
+
+    @Test
+    void testUpdatesMergesAndBroadcastsAreMetered() throws Exception {
+        WebSocketSession alice = session("alice");
+        WebSocketSession bob = session("bob");
+        DocumentRoom room = registry.room("note");
+
+        room.join(alice);
+        room.join(bob);
+        room.update(alice, "hello", 1);
+        runLane();
+        room.update(bob, "bye", 1);
+        room.update(bob, "later", 9);
+        runLane();
+
+        assertEquals(1, meters.get("coledit.document.updates").tag("outcome", "accepted").counter().count());
+        assertEquals(1, meters.get("coledit.document.updates").tag("outcome", "rebased").counter().count());
+        assertEquals(1, meters.get("coledit.document.updates").tag("outcome", "held-back").counter().count());
+        // bob's rebase, then one merge per published version
+        assertEquals(3, meters.get("coledit.document.merge").timer().count());
+        assertEquals(2, meters.get("coledit.document.broadcast").timer().count());
+        assertEquals(2, meters.get("coledit.document.sessions").summary().max());
+    }
+
+    @Test
+    void testQueuedVariantsOfTheSameVersionAreMergedTogether() throws Exception {
+        WebSocketSession alice = session("alice");
+        WebSocketSession bob = session("bob");
+        DocumentRoom room = registry.room("note");
+
+        room.join(alice);
+        room.join(bob);
+        room.update(alice, "abc", 1);
+        runLane();
+
+        room.update(alice, "abcdef", 2);
+        room.update(bob, "abcxyz", 2);
+        runLane();
+
+        // both inserts are kept in the order they arrived and neither author has the
+        // merged content yet, so both are notified
+        assertEquals(List.of("@0", "abcdefxyz@2"), received(alice));
+        assertEquals(List.of("@0", "abc@1", "abcdefxyz@2"), received(bob));
+    }
+
+    @Test
+    void testUpdateOnTopOfAPendingVariantIsAccepted() throws Exception {
+        WebSocketSession alice = session("alice");
+        WebSocketSession bob = session("bob");
+        DocumentRoom room = registry.room("note");
+
+        room.join(alice);
+        room.join(bob);
+        room.update(alice, "a", 1);
+        room.update(alice, "ab", 2);
+        runLane();
+
+        assertEquals(List.of("@0", "a@1", "ab@2"), received(bob));
+    }
+
+    @Test
+    void testJoiningSessionReceivesLatestContent() throws Exception {
+        WebSocketSession alice = session("alice");
+        WebSocketSession bob = session("bob");
+        DocumentRoom room = registry.room("note");
+
+        room.join(alice);
+        room.update(alice, "hello", 1);
+        room.join(bob);
+        runLane();
+
+        assertEquals(List.of("hello@1"), received(bob));
+    }
+
+    @Test
+    void testMergedContentIsMarkedDirtyAndLastLeaveClosesRoom() throws Exception {
+        WebSocketSession alice = session("alice");
+        DocumentRoom room = registry.room("note");
+
+        room.join(alice);
+        room.update(alice, "hello", 1);
+        room.leave(alice);
+        runLane();
+
+        verify(flusher).markDirty("note", "hello");
+        assertEquals(0, registry.size());
+        assertNotSame(room, registry.room("note"));
+    }
+
+    @Test
+    void testAcknowledgmentWaitsForTheLog() throws Exception {
+        WebSocketSession alice = session("alice");
+        WebSocketSession bob = session("bob");
+        DocumentRoom room = registry.room("note");
+        CompletableFuture<Void> durable = new CompletableFuture<>();
+        when(flusher.markDirty("note", "abc")).thenReturn(42L);
+        when(flusher.whenDurable(42L)).thenReturn(durable);
+
+        room.join(alice, true);
+        room.join(bob);
+        room.updateOperations(alice, 0, List.of(TextOperation.insert(0, "abc")));
+        runLane();
+
+        // accepted and logged, but nobody hears of it before the group commit
+        assertEquals(List.of("@0"), describe(alice));
+        assertEquals(List.of("@0"), received(bob));
+
+        durable.complete(null);
+        runLane();
+        assertEquals(List.of("@0", "ack@1"), describe(alice));
+        assertEquals(List.of("@0", "abc@1"), received(bob));
+    }
+
+    @Test
+    void testStoredContentReplacesWhatTheRoomHolds() throws Exception {
+        WebSocketSession alice = session("alice");
+        WebSocketSession bob = session("bob");
+        DocumentRoom room = registry.room("note");
+
+        room.join(alice);
+        room.join(bob);
+        room.update(alice, "hello", 1);
+        runLane();
+        // saved through the REST API while the room is open
+        registry.contentReplaced(new NoteContentReplaced("note", "replaced"));
+        runLane();
+
+        assertEquals(List.of("@0", "replaced@2"), received(alice));
+        assertEquals(List.of("@0", "hello@1", "replaced@2"), received(bob));
+        // the room's next flush writes it, not what it held before
+        verify(flusher).markDirty("note", "replaced");
+    }
+
+    @Test
+    void testDeletedNoteClosesItsRoom() throws Exception {
+        WebSocketSession alice = session("alice");
+        DocumentRoom room = registry.room("note");
+
+        room.join(alice);
+        room.update(alice, "hello", 1);
+        runLane();
+        registry.contentReplaced(new NoteContentReplaced("note", null));
+        runLane();
+
+        verify(alice).close(CloseStatus.NORMAL);
+        verify(flusher).forget("note");
+        assertEquals(0, registry.size());
+        assertEquals(0, cache.getLiveBytes());
+    }
+
+    @Test
+    void testStoredContentWinsOverWhatIsKeptWithoutARoom() throws Exception {
+        InProcessBackplane.Hub hub = new InProcessBackplane.Hub();
+        DocumentRoomRegistry first = node("a", hub);
+        WebSocketSession alice = session("alice");
+        WebSocketSession bob = session("bob");
+
+        DocumentRoom room = first.room("note");
+        room.join(alice);
+        room.update(alice, "edited", 1);
+        room.leave(alice);
+        runLane();
+        // the cache and the backplane still have version 1 when the REST API replaces it
+        first.contentReplaced(new NoteContentReplaced("note", "replaced"));
+        when(noteService.getNoteContent("note")).thenReturn("replaced");
+
+        first.room("note").join(bob);
+        runLane();
+
+        assertEquals(List.of("replaced@0"), received(bob));
+        verify(flusher).forget("note");
+    }
+
+    @Test
+    void testEventsQueuedBehindTheLastLeaveMoveToANewRoom() throws Exception {
+        WebSocketSession alice = session("alice");
+        WebSocketSession bob = session("bob");
+        DocumentRoom room = registry.room("note");
+
+        room.join(alice);
+        room.leave(alice);
+        room.join(bob);
+        runLane();
+
+        DocumentRoom reopened = registry.room("note");
+        assertNotSame(room, reopened);
+        reopened.update(bob, "hi", 1);
+        reopened.leave(bob);
+        runLane();
+
+        verify(flusher).markDirty("note", "hi");
+    }
+
+    @Test
+    void testConcurrentOperationsAreTransformedAndBroadcast() throws Exception {
+        WebSocketSession alice = session("alice");
+        WebSocketSession bob = session("bob");
+        WebSocketSession carol = session("carol");
+        DocumentRoom room = registry.room("note");
+
+        room.join(alice, true);
+        room.join(bob, true);
+        room.join(carol);
+        room.updateOperations(alice, 0, List.of(TextOperation.insert(0, "abc")));
+        runLane();
+
+        // both edit version 1 at the end of the text, bob's insert is moved behind alice's
+        room.updateOperations(alice, 1, List.of(TextOperation.insert(3, "def")));
+        room.updateOperations(bob, 1, List.of(TextOperation.insert(3, "xyz")));
+        runLane();
+
+        assertEquals(List.of("@0", "insert 0 abc@1", "insert 3 def@2", "ack@3"), describe(bob));
+        assertEquals(List.of("@0", "ack@1", "ack@2", "insert 6 xyz@3"), describe(alice));
+        assertEquals(List.of("@0", "abc@1", "abcdef@2", "abcdefxyz@3"), received(carol));
+    }
+
+    @Test
+    void testFullTextUpdateReachesOperationSessionsAsOperations() throws Exception {
+        WebSocketSession alice = session("alice");
+        WebSocketSession bob = session("bob");
+        DocumentRoom room = registry.room("note");
+
+        room.join(alice);
+        room.join(bob, true);
+        room.update(alice, "hello", 1);
+        runLane();
+        room.updateOperations(bob, 1, List.of(TextOperation.delete(0, 1), TextOperation.insert(0, "j")));
+        runLane();
+
+        assertEquals(List.of("@0", "insert 0 hello@1", "ack@2"), describe(bob));
+        assertEquals(List.of("@0", "jello@2"), received(alice));
+    }
+
+    @Test
+    void testOperationsAgainstAnUnknownVersionGetASnapshot() throws Exception {
+        WebSocketSession alice = session("alice");
+        DocumentRoom room = registry.room("note");
+
+        room.join(alice, true);
+        room.updateOperations(alice, 0, List.of(TextOperation.insert(0, "abc")));
+        room.updateOperations(alice, 5, List.of(TextOperation.insert(0, "x")));
+        room.updateOperations(alice, 1, List.of(TextOperation.delete(2, 9)));
+        runLane();
+
+        assertEquals(List.of("@0", "ack@1", "abc@1", "abc@1"), describe(alice));
+    }
+
+    @Test
+    void testReconnectingSessionGetsOnlyWhatItMissed() throws Exception {
+        WebSocketSession alice = session("alice");
+        WebSocketSession bob = session("bob");
+        DocumentRoom room = registry.room("note");
+
+        room.join(alice);
+        room.update(alice, "abc", 1);
+        runLane();
+        room.update(alice, "abcdef", 2);
+        runLane();
+        // bob got "abc" as version 1 before his connection dropped
+        room.join(bob, false, false, 1, OperationHistory.hash("abc"));
+        runLane();
+        room.update(bob, "abcdefg", 3);
+        runLane();
+
+        assertEquals(List.of("insert 3 def@2"), describe(bob));
+        assertEquals(List.of("@0", "abcdefg@3"), received(alice));
+    }
+
+    @Test
+    void testReconnectingSessionWithAnotherContentGetsASnapshot() throws Exception {
+        WebSocketSession alice = session("alice");
+        WebSocketSession bob = session("bob");
+        DocumentRoom room = registry.room("note");
+
+        room.join(alice);
+        room.update(alice, "abc", 1);
+        runLane();
+        // a version 1 from before the note was loaded again
+        room.join(bob, false, false, 1, OperationHistory.hash("xyz"));
+        runLane();
+
+        assertEquals(List.of("abc@1"), received(bob));
+    }
+
+    @Test
+    void testBinarySessionsShareOneEncodedFrame() throws Exception {
+        WebSocketSession alice = session("alice");
+        WebSocketSession bob = session("bob");
+        WebSocketSession carol = session("carol");
+        DocumentRoom room = registry.room("note");
+
+        room.join(alice);
+        room.join(bob, false, true);
+        room.join(carol, true, true);
+        room.update(alice, "héllo", 1);
+        runLane();
+        room.updateOperations(carol, 1, List.of(TextOperation.delete(0, 1)));
+        runLane();
+
+        List<BinaryMessage> toBob = binaryReceived(bob);
+        List<BinaryMessage> toCarol = binaryReceived(carol);
+        assertEquals(3, toBob.size());
+        ByteBuffer update = toBob.get(1).getPayload();
+        assertEquals(BinaryFrames.UPDATE_NOTIFICATION, update.get());
+        assertEquals(1, BinaryFrames.readVarint(update));
+        assertEquals("héllo", BinaryFrames.readText(update));
+
+        ByteBuffer operations = toCarol.get(1).getPayload();
+        assertEquals(BinaryFrames.OPS_NOTIFICATION, operations.get());
+        assertEquals(1, BinaryFrames.readVarint(operations));
+        assertEquals(List.of(TextOperation.insert(0, "héllo")), BinaryFrames.readOperations(operations));
+        assertEquals(BinaryFrames.ACK, toCarol.get(2).getPayload().get(0));
+
+        // the JSON session still gets text, apart from the content it wrote itself
+        assertEquals(List.of("@0", "éllo@2"), received(alice));
+    }
+
+    @Test
+    void testRecipientsOfOneNotificationShareItsBytes() throws Exception {
+        WebSocketSession alice = session("alice");
+        WebSocketSession bob = session("bob");
+        WebSocketSession carol = session("carol");
+        DocumentRoom room = registry.room("note");
+
+        room.join(alice);
+        room.join(bob, false, true);
+        room.join(carol, false, true);
+        room.update(alice, "shared", 1);
+        runLane();
+
+        BinaryMessage toBob = binaryReceived(bob).get(1);
+        BinaryMessage toCarol = binaryReceived(carol).get(1);
+        // each gets its own buffer, sending one does not move the other
+        assertNotSame(toBob.getPayload(), toCarol.getPayload());
+        assertSame(toBob.getPayload().array(), toCarol.getPayload().array());
+    }
+
+    @Test
+    void testRoomStartsFromTheStoredContent() throws Exception {
+        when(noteService.getNoteContent("note")).thenReturn("stored text");
+        WebSocketSession alice = session("alice");
+        WebSocketSession bob = session("bob");
+        DocumentRoom room = registry.room("note");
+
+        room.join(alice);
+        room.join(bob);
+        room.update(alice, "stored text!", 1);
+        runLane();
+
+        // the merge builds on the stored content instead of an empty one
+        assertEquals(List.of("stored text@0", "stored text!@1"), received(bob));
+        verify(flusher).markDirty("note", "stored text!");
+    }
+
+    @Test
+    void testConcurrentJoinersShareOneLoad() throws Exception {
+        when(noteService.getNoteContent("note")).thenReturn("stored");
+        DocumentRoom room = registry.room("note");
+        List<WebSocketSession> sessions = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            sessions.add(session("session" + i));
+            room.join(sessions.get(i));
+        }
+        runLane();
+
+        verify(noteService, times(1)).getNoteContent("note");
+        for (WebSocketSession session : sessions) {
+            assertEquals(List.of("stored@0"), received(session));
+        }
+    }
+
+    @Test
+    void testUnflushedContentIsPreferredOverTheDatabase() throws Exception {
+        when(flusher.getDirtyContent("note")).thenReturn("not flushed yet");
+        WebSocketSession alice = session("alice");
+
+        registry.room("note").join(alice);
+        runLane();
+
+        assertEquals(List.of("not flushed yet@0"), received(alice));
+        verify(noteService, never()).getNoteContent(any());
+    }
+
+    @Test
+    void testReopenedRoomStartsFromTheCachedContent() throws Exception {
+        WebSocketSession alice = session("alice");
+        WebSocketSession bob = session("bob");
+
+        DocumentRoom room = registry.room("note");
+        room.join(alice);
+        room.update(alice, "cached", 1);
+        runLane();
+        assertEquals(DocumentStateCache.weigh("cached"), cache.getLiveBytes());
+        room.leave(alice);
+        runLane();
+        assertEquals(0, cache.getLiveBytes());
+
+        // the flusher wrote the content meanwhile, the cache still has it and its version
+        registry.room("note").join(bob);
+        runLane();
+
+        assertEquals(List.of("cached@1"), received(bob));
+        verify(noteService, times(1)).getNoteContent("note");
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    void testFailedLoadClosesWaitingSessionsAndRetriesOnNextJoin() throws Exception {
+        when(noteService.getNoteContent("note")).thenThrow(new IllegalStateException("database down"))
+                .thenReturn("stored");
+        WebSocketSession alice = session("alice");
+        WebSocketSession bob = session("bob");
+
+        DocumentRoom room = registry.room("note");
+        room.join(alice);
+        runLane();
+        verify(alice).close(CloseStatus.SERVER_ERROR);
+        assertEquals(0, registry.size());
+
+        registry.room("note").join(bob);
+        runLane();
+        assertEquals(List.of("stored@0"), received(bob));
+    }
+
+    @Test
+    void testBusyRoomCoalescesNotifications() throws Exception {
+        long[] now = { 0 };
+        List<Runnable> timers = new ArrayList<>();
+        UpdateCoalescing coalescing = new UpdateCoalescing(20_000_000, 32, () -> now[0],
+                (task, delayNanos) -> timers.add(task));
+        registry = registry(coalescing);
+
+        WebSocketSession alice = session("alice");
+        WebSocketSession bob = session("bob");
+        DocumentRoom room = registry.room("note");
+        room.join(alice);
+        room.join(bob);
+
+        // the room was idle, the first keystroke is echoed right away
+        room.update(alice, "a", 1);
+        runLane();
+        assertEquals(List.of("@0", "a@1"), received(bob));
+
+        // the next ones within the window are merged but wait for the tick
+        now[0] += 5_000_000;
+        room.update(alice, "ab", 2);
+        runLane();
+        room.update(alice, "abc", 3);
+        runLane();
+        assertEquals(List.of("@0", "a@1"), received(bob));
+        assertEquals(1, timers.size());
+
+        now[0] += 15_000_000;
+        timers.forEach(Runnable::run);
+        runLane();
+        assertEquals(List.of("@0", "a@1", "abc@3"), received(bob));
+        assertEquals(List.of("@0"), received(alice));
+    }
+
+    @Test
+    void testUpdatesReachSessionsOnOtherNodes() throws Exception {
+        InProcessBackplane.Hub hub = new InProcessBackplane.Hub();
+        DocumentRoomRegistry first = node("a", hub);
+        DocumentRoomRegistry second = node("b", hub);
+        WebSocketSession alice = session("alice");
+        WebSocketSession bob = session("bob");
+
+        first.room("note").join(alice);
+        second.room("note").join(bob);
+        runLane();
+        first.room("note").update(alice, "hello", 1);
+        runLane();
+        second.room("note").update(bob, "hello world", 2);
+        runLane();
+
+        assertEquals(List.of("@0", "hello@1"), received(bob));
+        assertEquals(List.of("@0", "hello world@2"), received(alice));
+    }
+
+    @Test
+    void testNoteOpenedOnAnotherNodeContinuesItsVersion() throws Exception {
+        InProcessBackplane.Hub hub = new InProcessBackplane.Hub();
+        DocumentRoomRegistry first = node("a", hub);
+        DocumentRoomRegistry second = node("b", hub);
+        WebSocketSession alice = session("alice");
+        WebSocketSession bob = session("bob");
+
+        DocumentRoom room = first.room("note");
+        room.join(alice);
+        room.update(alice, "a", 1);
+        runLane();
+        room.update(alice, "ab", 2);
+        runLane();
+
+        // the database still has the old content, the backplane the latest version
+        second.room("note").join(bob);
+        runLane();
+
+        assertEquals(List.of("ab@2"), received(bob));
+    }
+
+    @Test
+    void testVersionsAcceptedOnTwoNodesAtOnceConverge() throws Exception {
+        InProcessBackplane.Hub hub = new InProcessBackplane.Hub();
+        DocumentRoomRegistry first = node("a", hub);
+        DocumentRoomRegistry second = node("b", hub);
+        WebSocketSession alice = session("alice");
+        WebSocketSession bob = session("bob");
+
+        first.room("note").join(alice);
+        second.room("note").join(bob);
+        runLane();
+
+        // both nodes accept their own version 1 before seeing the other one
+        first.room("note").update(alice, "hello", 1);
+        second.room("note").update(bob, "world", 1);
+        runLane();
+
+        // "a" wins version 1, "b" merges its edit onto it as version 2
+        assertEquals(List.of("@0", "helloworld@2"), received(alice));
+        assertEquals(List.of("@0", "helloworld@2"), received(bob));
+    }
+
+    @Test
+    void testHandedOffRoomPublishesItsVersionAndClosesItsSessions() throws Exception {
+        InProcessBackplane.Hub hub = new InProcessBackplane.Hub();
+        DocumentRoomRegistry first = node("a", hub);
+        DocumentRoomRegistry second = node("b", hub);
+        WebSocketSession alice = session("alice");
+
+        DocumentRoom room = first.room("note");
+        room.join(alice);
+        room.update(alice, "pending", 1);
+        room.handOff();
+        runLane();
+
+        verify(alice).close(CloseStatus.SERVICE_RESTARTED);
+        assertEquals(0, first.size());
+
+        // the new owner starts from the version merged during the handoff
+        WebSocketSession bob = session("bob");
+        second.room("note").join(bob);
+        runLane();
+        assertEquals(List.of("pending@1"), received(bob));
+    }
+
+    @Test
+    void testHandOffClosesTheSessionsOnceTheLastVersionWasSent() throws Exception {
+        Backplane backplane = mock(Backplane.class);
+        CompletableFuture<Void> sent = new CompletableFuture<>();
+        when(backplane.getNodeId()).thenReturn("a");
+        when(backplane.latest("note")).thenReturn(CompletableFuture.completedFuture(null));
+        when(backplane.flush()).thenReturn(sent);
+        DocumentRoomRegistry handingOff = registry(UpdateCoalescing.disabled(), cache, backplane);
+        WebSocketSession alice = session("alice");
+        WebSocketSession bob = session("bob");
+
+        DocumentRoom room = handingOff.room("note");
+        room.join(alice);
+        room.update(alice, "pending", 1);
+        room.handOff();
+        // joined while the version is on its way, it reconnects to the new owner as well
+        room.join(bob);
+        runLane();
+
+        verify(alice, never()).close(any());
+        assertEquals(1, handingOff.size());
+
+        sent.complete(null);
+        runLane();
+        verify(alice).close(CloseStatus.SERVICE_RESTARTED);
+        verify(bob).close(CloseStatus.SERVICE_RESTARTED);
+        assertEquals(List.of(), received(bob));
+        assertEquals(0, handingOff.size());
+    }
+
+    private void runLane() {
+        Runnable task;
+        while ((task = lane.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private WebSocketSession session(String id) {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(id);
+        when(session.isOpen()).thenReturn(true);
+        return session;
+    }
+
+    private List<BinaryMessage> binaryReceived(WebSocketSession session) throws Exception {
+        ArgumentCaptor<BinaryMessage> messages = ArgumentCaptor.forClass(BinaryMessage.class);
+        verify(session, atLeast(0)).sendMessage(messages.capture());
+        return messages.getAllValues();
+    }
+
+    private List<String> received(WebSocketSession session) throws Exception {
+        ArgumentCaptor<TextMessage> messages = ArgumentCaptor.forClass(TextMessage.class);
+        verify(session, atLeast(0)).sendMessage(messages.capture());
+
+        List<String> received = new ArrayList<>();
+        for (TextMessage message : messages.getAllValues()) {
+            JsonNode notification = objectMapper.readTree(message.getPayload());
+            received.add(notification.get("payload").asText() + "@" + notification.get("version").asInt());
+        }
+        return received;
+    }
+
+    private List<String> describe(WebSocketSession session) throws Exception {
+        ArgumentCaptor<TextMessage> messages = ArgumentCaptor.forClass(TextMessage.class);
+        verify(session, atLeast(0)).sendMessage(messages.capture());
+
+        List<String> described = new ArrayList<>();
+        for (TextMessage message : messages.getAllValues()) {
+            JsonNode notification = objectMapper.readTree(message.getPayload());
+            String type = notification.get("type").asText();
+            String body;
+            if (type.equals("opsNotification")) {
+                List<String> ops = new ArrayList<>();
+                for (JsonNode op : notification.get("ops")) {
+                    ops.add(op.get("type").asText() + " " + op.get("position").asInt() + " "
+                            + (op.get("type").asText().equals("insert") ? op.get("text").asText()
+                                    : op.get("length").asText()));
+                }
+                body = String.join(", ", ops);
+            } else if (type.equals("ack")) {
+                body = "ack";
+            } else {
+                body = notification.get("payload").asText();
+            }
+            described.add(body + "@" + notification.get("version").asInt());
+        }
+        return described;
+    }
+}
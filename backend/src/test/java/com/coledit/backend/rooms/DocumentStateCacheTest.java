@@ -0,0 +1,113 @@
+package com.coledit.backend.rooms;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.coledit.backend.backplane.LocalBackplane;
+import com.coledit.backend.services.NoteContentFlusher;
+import com.coledit.backend.services.NoteService;
+
+class DocumentStateCacheTest {
+
+    // 100 chars weigh 296 bytes, four of them fit a budget of 1200
+    private static final String CONTENT = "x".repeat(100);
+    private static final long BUDGET = 1200;
+
+    private final long[] now = { 0 };
+    private NoteContentFlusher flusher;
+    private DocumentStateCache cache;
+
+    @BeforeEach
+    void setUp() {
+        flusher = mock(NoteContentFlusher.class);
+        cache = new DocumentStateCache(BUDGET, 1000, () -> now[0], null);
+    }
+
+    @Test
+    void testClaimedContentLeavesTheCacheWithItsVersion() {
+        cache.retain("a", new DocumentSnapshot(CONTENT, 7));
+
+        assertEquals(new DocumentSnapshot(CONTENT, 7), cache.claim("a"));
+        assertNull(cache.claim("a"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0, cache.getIdleBytes());
+    }
+
+    @Test
+    void testLeastRecentlyRetainedContentIsEvictedFirst() {
+        for (String noteId : new String[] { "a", "b", "c", "d" }) {
+            cache.retain(noteId, new DocumentSnapshot(CONTENT, 1));
+        }
+        assertEquals(4, cache.getIdleCount());
+
+        cache.retain("e", new DocumentSnapshot(CONTENT, 1));
+
+        assertEquals(4, cache.getIdleCount());
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.claim("a"));
+        assertEquals(new DocumentSnapshot(CONTENT, 1), cache.claim("b"));
+    }
+
+    @Test
+    void testGrowingLiveContentsEvictIdleOnes() {
+        cache.retain("a", new DocumentSnapshot(CONTENT, 1));
+        cache.retain("b", new DocumentSnapshot(CONTENT, 1));
+
+        // live rooms now take all but one idle content's worth of the budget
+        cache.adjustLive(BUDGET - DocumentStateCache.weigh(CONTENT));
+
+        assertEquals(1, cache.getIdleCount());
+        assertEquals(new DocumentSnapshot(CONTENT, 1), cache.claim("b"));
+    }
+
+    @Test
+    void testContentOverAQuarterOfTheBudgetIsNotKept() {
+        cache.retain("a", new DocumentSnapshot("x".repeat(200), 1));
+
+        assertEquals(0, cache.getIdleCount());
+        assertEquals(0, cache.getIdleBytes());
+    }
+
+    @Test
+    void testUnusedContentExpires() {
+        cache.retain("a", new DocumentSnapshot(CONTENT, 1));
+        now[0] = 600;
+        cache.retain("b", new DocumentSnapshot(CONTENT, 1));
+        now[0] = 1200;
+
+        cache.expire();
+
+        assertEquals(1, cache.getExpiredCount());
+        assertNull(cache.claim("a"));
+        assertEquals(new DocumentSnapshot(CONTENT, 1), cache.claim("b"));
+    }
+
+    @Test
+    void testEvictedDirtyContentIsStillLoadedFromTheFlusher() throws Exception {
+        NoteContentLoader loader = new NoteContentLoader(mock(NoteService.class), flusher, cache,
+                new LocalBackplane(), Runnable::run);
+        when(flusher.getDirtyContent("a")).thenReturn(CONTENT + "edited");
+        cache.retain("a", new DocumentSnapshot(CONTENT, 1));
+
+        // evicting does not wait for the database, the edits stay with the flusher
+        cache.adjustLive(BUDGET);
+        assertEquals(0, cache.getIdleCount());
+        verify(flusher, never()).flush();
+
+        assertEquals(CONTENT + "edited", loader.load("a").get().content());
+    }
+
+    @Test
+    void testInvalidatedContentIsDropped() {
+        cache.retain("a", new DocumentSnapshot(CONTENT, 1));
+
+        cache.invalidate("a");
+
+        assertNull(cache.claim("a"));
+        assertEquals(0, cache.getIdleBytes());
+    }
+}
@@ -0,0 +1,56 @@
+package com.coledit.backend.rooms;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.coledit.backend.backplane.DocumentUpdate;
+import com.coledit.backend.backplane.InProcessBackplane;
+import com.coledit.backend.rooms.RoomReplication.Decision;
+
+class RoomReplicationTest {
+
+    private static final String NOTE = "note";
+
+    private RoomReplication replication;
+
+    @BeforeEach
+    void setUp() {
+        replication = new RoomReplication(NOTE, new InProcessBackplane("b", new InProcessBackplane.Hub()));
+        replication.hydrated(new DocumentSnapshot("x", 0), "x");
+    }
+
+    @Test
+    void testNewerVersionBuiltOnOursIsAdopted() {
+        replication.announce(1, "xy");
+
+        assertEquals(Decision.ADOPT, replication.decide(update("a", 2, Map.of("a", 2, "b", 1)), 1));
+    }
+
+    @Test
+    void testVersionAlreadyIncludedIsIgnored() {
+        DocumentUpdate update = update("a", 2, Map.of("a", 2));
+        replication.adopted(update);
+
+        assertEquals(Decision.IGNORE, replication.decide(update("a", 1, Map.of("a", 1)), 2));
+        assertEquals("a2", replication.getSharedContent());
+    }
+
+    @Test
+    void testConcurrentVersionsGoToTheSmallerNodeOnATie() {
+        replication.announce(1, "xy");
+
+        // neither includes the other: "a" wins over this node "b", "b" wins over "c"
+        assertEquals(Decision.MERGE, replication.decide(update("a", 1, Map.of("a", 1)), 1));
+        assertEquals(Decision.IGNORE, replication.decide(update("c", 1, Map.of("c", 1)), 1));
+        // a higher version wins whatever the node
+        assertEquals(Decision.MERGE, replication.decide(update("c", 2, Map.of("c", 2)), 1));
+    }
+
+    private static DocumentUpdate update(String origin, int version, Map<String, Integer> lineage) {
+        return new DocumentUpdate(NOTE, version, origin + version, origin, lineage);
+    }
+}
@@ -0,0 +1,120 @@
+package com.coledit.backend.rooms;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.coledit.backend.metrics.CollaborationMetrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class SessionOutboxesTest {
+
+    private final Queue<Runnable> senders = new ArrayDeque<>();
+
+    @Test
+    void testMessagesAreSentInOrderOffTheCallingThread() throws Exception {
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        SessionOutboxes outboxes = new SessionOutboxes(4, OverflowPolicy.DROP_TO_LATEST, senders::add,
+                new CollaborationMetrics(meters));
+        WebSocketSession session = session("alice");
+
+        outboxes.send(session, new TextMessage("1"), true);
+        outboxes.send(session, new TextMessage("2"), false);
+        verify(session, never()).sendMessage(any());
+
+        runSenders();
+        assertEquals(List.of("1", "2"), sent(session));
+        assertEquals(2, outboxes.getStats().getSentMessages());
+        assertEquals(0, outboxes.getStats().getQueuedMessages());
+        assertEquals(2, meters.get("coledit.outbound.send").timer().count());
+    }
+
+    @Test
+    void testFullQueueSkipsToTheLatestContent() throws Exception {
+        SessionOutboxes outboxes = new SessionOutboxes(2, OverflowPolicy.DROP_TO_LATEST, senders::add,
+                CollaborationMetrics.disabled());
+        WebSocketSession session = session("alice");
+
+        for (int i = 1; i <= 5; i++) {
+            outboxes.send(session, new TextMessage(String.valueOf(i)), true);
+        }
+        runSenders();
+
+        // 3 superseded the full queue of 1 and 2, then 5 superseded 3 and 4
+        assertEquals(List.of("5"), sent(session));
+        assertEquals(4, outboxes.getStats().getDroppedMessages());
+        verify(session, never()).close(any());
+    }
+
+    @Test
+    void testFullQueueOfOperationsDisconnects() throws Exception {
+        SessionOutboxes outboxes = new SessionOutboxes(2, OverflowPolicy.DROP_TO_LATEST, senders::add,
+                CollaborationMetrics.disabled());
+        WebSocketSession session = session("alice");
+
+        for (int i = 1; i <= 3; i++) {
+            outboxes.send(session, new TextMessage(String.valueOf(i)), false);
+        }
+        runSenders();
+
+        // operations cannot be skipped, the client has to reconnect for a snapshot
+        verify(session).close(CloseStatus.SESSION_NOT_RELIABLE);
+        verify(session, never()).sendMessage(any());
+        assertEquals(1, outboxes.getStats().getDisconnectedSessions());
+    }
+
+    @Test
+    void testDisconnectPolicyDropsSlowSessionsOnly() throws Exception {
+        SessionOutboxes outboxes = new SessionOutboxes(1, OverflowPolicy.DISCONNECT, senders::add,
+                CollaborationMetrics.disabled());
+        WebSocketSession slow = session("slow");
+        WebSocketSession fast = session("fast");
+
+        TextMessage first = new TextMessage("1");
+        outboxes.send(slow, first, true);
+        outboxes.send(fast, first, true);
+        runSenders();
+        outboxes.send(slow, new TextMessage("2"), true);
+        outboxes.send(slow, new TextMessage("3"), true);
+        runSenders();
+
+        verify(slow).close(CloseStatus.SESSION_NOT_RELIABLE);
+        verify(fast, never()).close(any());
+        assertEquals(List.of("1"), sent(slow));
+        assertEquals(List.of("1"), sent(fast));
+    }
+
+    private void runSenders() {
+        Runnable task;
+        while ((task = senders.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private WebSocketSession session(String id) {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(id);
+        when(session.isOpen()).thenReturn(true);
+        return session;
+    }
+
+    private List<String> sent(WebSocketSession session) throws Exception {
+        ArgumentCaptor<TextMessage> messages = ArgumentCaptor.forClass(TextMessage.class);
+        verify(session, atLeast(0)).sendMessage(messages.capture());
+
+        List<String> sent = new ArrayList<>();
+        messages.getAllValues().forEach(message -> sent.add(message.getPayload()));
+        return sent;
+    }
+}
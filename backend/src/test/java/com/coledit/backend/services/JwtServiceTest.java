@@ -0,0 +1,107 @@
+package com.coledit.backend.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+class JwtServiceTest {
+
+    private static final String SECRET = Base64.getEncoder().encodeToString(new byte[32]);
+    private static final long EXPIRATION_MILLIS = 30 * 60 * 1000;
+    private static final long TTL_MILLIS = 60_000;
+
+    private final AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+    private VerifiedClaimsCache cache;
+    private JwtService jwtService;
+
+    @BeforeEach
+    void setUp() {
+        cache = new VerifiedClaimsCache(100, TTL_MILLIS, clock::get);
+        jwtService = new JwtService(SECRET, EXPIRATION_MILLIS, cache);
+    }
+
+    @Test
+    void testVerifiedTokenIsReadFromTheCache() {
+        UserDetails alice = user("alice@example.com");
+        String token = jwtService.generateToken(alice);
+
+        assertEquals("alice@example.com", jwtService.extractUsername(token));
+        assertTrue(jwtService.isTokenValid(token, alice));
+        assertEquals(List.of(), jwtService.extractRoles(token));
+
+        // verified by the first read, the others were answered by the cache
+        assertEquals(1, cache.size());
+        assertNotNull(cache.get(token));
+    }
+
+    @Test
+    void testTamperedTokenIsRejectedAndNotCached() {
+        String token = jwtService.generateToken(user("alice@example.com"));
+        String[] parts = token.split("\\.");
+        String forged = parts[0] + "." + Base64.getUrlEncoder().withoutPadding()
+                .encodeToString("{\"sub\":\"mallory@example.com\"}".getBytes()) + "." + parts[2];
+
+        assertNull(jwtService.extractUsername(forged));
+        assertFalse(jwtService.isTokenValid(forged, user("mallory@example.com")));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testTokenIsVerifiedAgainAfterTheTimeToLive() {
+        String token = jwtService.generateToken(user("alice@example.com"));
+        jwtService.extractUsername(token);
+
+        clock.addAndGet(TTL_MILLIS);
+        assertNull(cache.get(token));
+
+        // verified and cached again on the next read
+        assertEquals("alice@example.com", jwtService.extractUsername(token));
+        assertNotNull(cache.get(token));
+    }
+
+    @Test
+    void testClaimsAreNotCachedBeyondTheTokensExpiration() {
+        JwtService shortLived = new JwtService(SECRET, 1000, cache);
+        String token = shortLived.generateToken(user("alice@example.com"));
+        shortLived.extractUsername(token);
+
+        // the parser's clock skew of an hour still applies, but not the cache's longer TTL
+        clock.addAndGet(1000 + 3600 * 1000);
+        assertNull(cache.get(token));
+    }
+
+    @Test
+    void testCacheKeepsAtMostItsMaximumEntries() {
+        VerifiedClaimsCache small = new VerifiedClaimsCache(2, TTL_MILLIS, clock::get);
+        JwtService service = new JwtService(SECRET, EXPIRATION_MILLIS, small);
+
+        for (String email : List.of("a@example.com", "b@example.com", "c@example.com")) {
+            String token = service.generateToken(user(email));
+            assertEquals(email, service.extractUsername(token));
+        }
+
+        assertEquals(2, small.size());
+    }
+
+    @Test
+    void testEmptyCacheVerifiesEveryRead() {
+        VerifiedClaimsCache disabled = new VerifiedClaimsCache(0, TTL_MILLIS, clock::get);
+        JwtService service = new JwtService(SECRET, EXPIRATION_MILLIS, disabled);
+        UserDetails alice = user("alice@example.com");
+        String token = service.generateToken(alice);
+
+        assertTrue(service.isTokenValid(token, alice));
+        assertEquals(0, disabled.size());
+    }
+
+    private static UserDetails user(String email) {
+        return User.withUsername(email).password("secret").authorities(List.of()).build();
+    }
+}
@@ -0,0 +1,175 @@
+package com.coledit.backend.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.coledit.backend.metrics.CollaborationMetrics;
+import com.coledit.backend.wal.FsyncPolicy;
+import com.coledit.backend.wal.WriteAheadLog;
+
+class NoteContentFlusherTest {
+
+    private static final String FIRST = "00000000-0000-0000-0000-000000000001";
+    private static final String SECOND = "00000000-0000-0000-0000-000000000002";
+
+    private JdbcTemplate jdbcTemplate;
+    private List<List<String>> batches;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        batches = new ArrayList<>();
+        // record what each batch would have written
+        when(jdbcTemplate.batchUpdate(eq("UPDATE notes SET content = ? WHERE note_id = ?"),
+                any(BatchPreparedStatementSetter.class))).thenAnswer(invocation -> {
+                    BatchPreparedStatementSetter setter = invocation.getArgument(1);
+                    List<String> batch = new ArrayList<>();
+                    for (int i = 0; i < setter.getBatchSize(); i++) {
+                        PreparedStatement statement = mock(PreparedStatement.class);
+                        setter.setValues(statement, i);
+                        batch.add(describe(statement));
+                    }
+                    batches.add(batch);
+                    return new int[setter.getBatchSize()];
+                });
+    }
+
+    @Test
+    void testOnlyTheLatestContentOfANoteIsWritten() {
+        NoteContentFlusher flusher = new NoteContentFlusher(jdbcTemplate, WriteAheadLog.disabled(), 100, null,
+                CollaborationMetrics.disabled());
+        flusher.markDirty(FIRST, "a");
+        flusher.markDirty(FIRST, "ab");
+        flusher.markDirty(SECOND, "x");
+
+        assertEquals(2, flusher.flush());
+        assertEquals(1, batches.size());
+        assertTrue(batches.get(0).containsAll(List.of("ab@" + FIRST, "x@" + SECOND)));
+        assertEquals(0, flusher.getDirtyCount());
+        assertEquals(0, flusher.flush());
+    }
+
+    @Test
+    void testDirtyNotesAreSplitIntoBatches() {
+        NoteContentFlusher flusher = new NoteContentFlusher(jdbcTemplate, WriteAheadLog.disabled(), 2, null,
+                CollaborationMetrics.disabled());
+        for (int i = 0; i < 5; i++) {
+            flusher.markDirty(new UUID(0, i).toString(), "content " + i);
+        }
+
+        assertEquals(5, flusher.flush());
+        assertEquals(List.of(2, 2, 1), batches.stream().map(List::size).toList());
+    }
+
+    @Test
+    void testContentChangedDuringTheWriteStaysDirty() {
+        NoteContentFlusher flusher = new NoteContentFlusher(jdbcTemplate, WriteAheadLog.disabled(), 100, null,
+                CollaborationMetrics.disabled());
+        flusher.markDirty(FIRST, "a");
+        doAnswer(invocation -> {
+            flusher.markDirty(FIRST, "ab");
+            return new int[1];
+        }).when(jdbcTemplate).batchUpdate(any(String.class), any(BatchPreparedStatementSetter.class));
+
+        flusher.flush();
+
+        assertEquals(1, flusher.getDirtyCount());
+    }
+
+    @Test
+    void testFailedBatchIsRetried() {
+        NoteContentFlusher flusher = new NoteContentFlusher(jdbcTemplate, WriteAheadLog.disabled(), 100, null,
+                CollaborationMetrics.disabled());
+        flusher.markDirty(FIRST, "a");
+        doThrow(new QueryTimeoutException("timeout")).when(jdbcTemplate)
+                .batchUpdate(any(String.class), any(BatchPreparedStatementSetter.class));
+
+        assertThrows(QueryTimeoutException.class, flusher::flush);
+        assertEquals(1, flusher.getDirtyCount());
+    }
+
+    @Test
+    void testShutdownFlushesAndInvalidIdsAreDropped() {
+        NoteContentFlusher flusher = new NoteContentFlusher(jdbcTemplate, WriteAheadLog.disabled(), 100, null,
+                CollaborationMetrics.disabled());
+        flusher.markDirty(FIRST, "a");
+        flusher.markDirty("not-a-note", "b");
+
+        flusher.shutdown();
+
+        assertEquals(List.of(List.of("a@" + FIRST)), batches);
+        assertEquals(0, flusher.getDirtyCount());
+    }
+
+    @Test
+    void testLogIsCheckpointedOnlyAfterASuccessfulFlush(@TempDir Path directory) throws Exception {
+        WriteAheadLog log = new WriteAheadLog(directory, FsyncPolicy.NEVER, 0, 1 << 20);
+        NoteContentFlusher flusher = new NoteContentFlusher(jdbcTemplate, log, 100, null,
+                CollaborationMetrics.disabled());
+        flusher.markDirty(FIRST, "a");
+
+        doThrow(new QueryTimeoutException("timeout")).when(jdbcTemplate)
+                .batchUpdate(any(String.class), any(BatchPreparedStatementSetter.class));
+        assertThrows(QueryTimeoutException.class, flusher::flush);
+        assertEquals(Map.of(FIRST, "a"), log.replay());
+
+        doReturn(new int[1]).when(jdbcTemplate).batchUpdate(any(String.class),
+                any(BatchPreparedStatementSetter.class));
+        flusher.flush();
+        assertTrue(log.replay().isEmpty());
+        log.close();
+    }
+
+    @Test
+    void testEveryContentIsLoggedBeforeItIsAcknowledged(@TempDir Path directory) throws Exception {
+        WriteAheadLog log = new WriteAheadLog(directory, FsyncPolicy.ALWAYS, 0, 1 << 20);
+        NoteContentFlusher flusher = new NoteContentFlusher(jdbcTemplate, log, 100, null,
+                CollaborationMetrics.disabled());
+
+        // written as each version is accepted, the room waits for the group commit
+        long first = flusher.markDirty(FIRST, "a");
+        long second = flusher.markDirty(FIRST, "ab");
+        assertTrue(second > first);
+        assertEquals(second, log.position());
+        flusher.whenDurable(second).get(5, TimeUnit.SECONDS);
+        assertTrue(flusher.whenDurable(first).isDone());
+
+        assertEquals(Map.of(FIRST, "ab"), log.replay());
+        log.close();
+    }
+
+    @Test
+    void testDisabledLogHasNothingToWaitFor() {
+        NoteContentFlusher flusher = new NoteContentFlusher(jdbcTemplate, WriteAheadLog.disabled(), 100, null,
+                CollaborationMetrics.disabled());
+
+        assertEquals(0, flusher.markDirty(FIRST, "a"));
+        assertTrue(flusher.whenDurable(0).isDone());
+    }
+
+    private static String describe(PreparedStatement statement) throws Exception {
+        ArgumentCaptor<String> content = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Object> noteId = ArgumentCaptor.forClass(Object.class);
+        verify(statement).setString(eq(1), content.capture());
+        verify(statement).setObject(eq(2), noteId.capture());
+        return content.getValue() + "@" + noteId.getValue();
+    }
+}
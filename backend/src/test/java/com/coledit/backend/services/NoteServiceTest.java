@@ -0,0 +1,61 @@
+package com.coledit.backend.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+
+import com.coledit.backend.entities.Note;
+import com.coledit.backend.repositories.NoteRepository;
+import com.coledit.backend.repositories.UserRepository;
+
+class NoteServiceTest {
+
+    private static final UUID NOTE_ID = UUID.fromString("00000000-0000-0000-0000-000000000001");
+
+    private NoteRepository noteRepository;
+    private ApplicationEventPublisher eventPublisher;
+    private NoteService noteService;
+
+    @BeforeEach
+    void setUp() {
+        noteRepository = mock(NoteRepository.class);
+        eventPublisher = mock(ApplicationEventPublisher.class);
+        noteService = new NoteService(noteRepository, mock(UserRepository.class), eventPublisher);
+    }
+
+    @Test
+    void testUpdatedContentIsHandedToTheRooms() {
+        Note stored = Note.builder().noteId(NOTE_ID).content("edited").build();
+        when(noteRepository.findById(NOTE_ID)).thenReturn(Optional.of(stored));
+        when(noteRepository.save(any(Note.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        noteService.updateNote(NOTE_ID.toString(), Note.builder().content("replaced").build());
+
+        verify(eventPublisher).publishEvent(new NoteContentReplaced(NOTE_ID.toString(), "replaced"));
+    }
+
+    @Test
+    void testDeletionIsHandedToTheRooms() {
+        when(noteRepository.existsById(NOTE_ID)).thenReturn(true);
+
+        assertTrue(noteService.deleteNoteById(NOTE_ID.toString()));
+
+        verify(eventPublisher).publishEvent(new NoteContentReplaced(NOTE_ID.toString(), null));
+    }
+
+    @Test
+    void testMissingNoteIsNotHandedToTheRooms() {
+        when(noteRepository.existsById(NOTE_ID)).thenReturn(false);
+
+        assertFalse(noteService.deleteNoteById(NOTE_ID.toString()));
+
+        verifyNoInteractions(eventPublisher);
+    }
+}
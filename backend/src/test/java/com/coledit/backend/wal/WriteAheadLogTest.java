@@ -0,0 +1,160 @@
+package com.coledit.backend.wal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class WriteAheadLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testLatestContentOfEachNoteIsReplayedAfterRestart() throws Exception {
+        WriteAheadLog log = new WriteAheadLog(directory, FsyncPolicy.ALWAYS, 0, 1 << 20);
+        log.append("first", "a");
+        log.append("second", "x");
+        log.append("first", "ab ünïcödé");
+        log.close();
+
+        WriteAheadLog reopened = new WriteAheadLog(directory, FsyncPolicy.ALWAYS, 0, 1 << 20);
+        assertEquals(Map.of("first", "ab ünïcödé", "second", "x"), reopened.replay());
+        assertEquals(List.of("second", "first"), List.copyOf(reopened.replay().keySet()));
+        reopened.close();
+    }
+
+    @Test
+    void testTornRecordIsCutOffAndAppendsContinue() throws Exception {
+        WriteAheadLog log = new WriteAheadLog(directory, FsyncPolicy.NEVER, 0, 1 << 20);
+        log.append("first", "whole");
+        long end = log.append("second", "torn by a crash");
+        log.close();
+
+        // lose the last bytes of the second record
+        Path segment = onlySegment();
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(end - 3);
+        }
+
+        WriteAheadLog reopened = new WriteAheadLog(directory, FsyncPolicy.NEVER, 0, 1 << 20);
+        assertEquals(Map.of("first", "whole"), reopened.replay());
+        reopened.append("third", "after");
+        assertEquals(Map.of("first", "whole", "third", "after"), reopened.replay());
+        reopened.close();
+    }
+
+    @Test
+    void testSegmentsRotateAndAreTruncatedAfterCheckpoint() throws Exception {
+        WriteAheadLog log = new WriteAheadLog(directory, FsyncPolicy.INTERVAL, 10, 64);
+        for (int i = 0; i < 10; i++) {
+            log.append("note" + i, "content of note " + i);
+        }
+        assertTrue(log.segmentCount() > 1);
+
+        long checkpoint = log.position();
+        log.append("late", "after the checkpoint");
+        log.checkpoint(checkpoint);
+
+        // only the segment holding the record after the checkpoint is left
+        assertEquals(Map.of("late", "after the checkpoint"), log.replay());
+
+        log.checkpoint(log.position());
+        assertTrue(log.replay().isEmpty());
+        assertEquals(1, log.segmentCount());
+        log.close();
+    }
+
+    @Test
+    void testCheckpointKeepsTheSegmentAndSurvivesARestart() throws Exception {
+        WriteAheadLog log = new WriteAheadLog(directory, FsyncPolicy.NEVER, 0, 1 << 20);
+        log.append("first", "flushed");
+        log.checkpoint(log.position());
+        log.append("second", "not flushed");
+        log.checkpoint(0);
+
+        // a flush does not start a segment, only a full one does
+        assertEquals(1, log.segmentCount());
+        log.close();
+
+        WriteAheadLog reopened = new WriteAheadLog(directory, FsyncPolicy.NEVER, 0, 1 << 20);
+        assertEquals(Map.of("second", "not flushed"), reopened.replay());
+        reopened.close();
+    }
+
+    @Test
+    void testWaitersShareAGroupCommit() throws Exception {
+        WriteAheadLog log = new WriteAheadLog(directory, FsyncPolicy.ALWAYS, 0, 1 << 20);
+        long first = log.append("first", "a");
+        long second = log.append("second", "b");
+
+        CompletableFuture<Void> firstDurable = log.whenDurable(first);
+        log.whenDurable(second).get(5, TimeUnit.SECONDS);
+
+        // the force that covered the second record covered the first
+        assertTrue(firstDurable.isDone());
+        assertTrue(log.whenDurable(second).isDone());
+        log.close();
+    }
+
+    @Test
+    void testIntervalPolicyIsDurableOnceWritten() throws Exception {
+        WriteAheadLog log = new WriteAheadLog(directory, FsyncPolicy.INTERVAL, 60_000, 1 << 20);
+
+        assertTrue(log.whenDurable(log.append("note", "content")).isDone());
+        log.close();
+    }
+
+    @Test
+    void testConcurrentAppendsAreAllKept() throws Exception {
+        WriteAheadLog log = new WriteAheadLog(directory, FsyncPolicy.ALWAYS, 0, 4096);
+        ExecutorService writers = Executors.newFixedThreadPool(8);
+        List<Future<?>> appends = new ArrayList<>();
+        for (int writer = 0; writer < 8; writer++) {
+            int id = writer;
+            appends.add(writers.submit(() -> {
+                for (int i = 0; i <= 50; i++) {
+                    log.append("note" + id, "version " + i);
+                }
+            }));
+        }
+        for (Future<?> append : appends) {
+            append.get();
+        }
+        writers.shutdown();
+
+        Map<String, String> replayed = log.replay();
+        assertEquals(8, replayed.size());
+        replayed.values().forEach(content -> assertEquals("version 50", content));
+        log.close();
+    }
+
+    @Test
+    void testDisabledLogKeepsNothing() {
+        WriteAheadLog log = WriteAheadLog.disabled();
+        log.append("note", "content");
+        assertTrue(log.replay().isEmpty());
+    }
+
+    private Path onlySegment() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> segments = files.toList();
+            assertEquals(1, segments.size());
+            return segments.get(0);
+        }
+    }
+}
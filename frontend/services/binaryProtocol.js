@@ -0,0 +1,106 @@
+// Binary WebSocket sub-protocol, mirrors backend helpers/BinaryFrames.java.
+// A frame is a type byte, the version as an unsigned varint and, for content frames,
+// a varint byte length followed by the UTF-8 content.
+
+export const SUB_PROTOCOL = 'coledit.binary.v1';
+
+const HEARTBEAT = 0;
+const UPDATE_NOTE = 1;
+const UPDATE_NOTIFICATION = 3;
+const ACK = 4;
+const OPS_NOTIFICATION = 5;
+
+const INSERT = 0;
+
+const encoder = new TextEncoder();
+const decoder = new TextDecoder();
+
+const varintSize = (value) => {
+    let size = 1;
+    while (value > 0x7f) {
+        value >>>= 7;
+        size++;
+    }
+    return size;
+};
+
+const writeVarint = (bytes, offset, value) => {
+    while (value > 0x7f) {
+        bytes[offset++] = (value & 0x7f) | 0x80;
+        value >>>= 7;
+    }
+    bytes[offset++] = value;
+    return offset;
+};
+
+const readVarint = (bytes, state) => {
+    let value = 0;
+    for (let shift = 0; shift < 35; shift += 7) {
+        if (state.offset >= bytes.length) {
+            throw new Error('Frame ends inside a varint');
+        }
+        const b = bytes[state.offset++];
+        value |= (b & 0x7f) << shift;
+        if (b < 0x80) {
+            return value >>> 0;
+        }
+    }
+    throw new Error('Varint longer than 32 bits');
+};
+
+const encodeHeartbeat = () => new Uint8Array([HEARTBEAT]);
+
+const encodeUpdate = (content, version) => {
+    const utf8 = encoder.encode(content);
+    const bytes = new Uint8Array(1 + varintSize(version) + varintSize(utf8.length) + utf8.length);
+    bytes[0] = UPDATE_NOTE;
+    let offset = writeVarint(bytes, 1, version);
+    offset = writeVarint(bytes, offset, utf8.length);
+    bytes.set(utf8, offset);
+    return bytes;
+};
+
+const readText = (bytes, state) => {
+    const length = readVarint(bytes, state);
+    const text = decoder.decode(bytes.subarray(state.offset, state.offset + length));
+    state.offset += length;
+    return text;
+};
+
+// Returns the same shape as the JSON notifications: { type, payload, version } or
+// { type, version, ops }
+const decode = (buffer) => {
+    const bytes = new Uint8Array(buffer);
+    const state = { offset: 1 };
+    switch (bytes[0]) {
+        case UPDATE_NOTIFICATION: {
+            const version = readVarint(bytes, state);
+            const length = readVarint(bytes, state);
+            const payload = decoder.decode(bytes.subarray(state.offset, state.offset + length));
+            return { type: 'updateNotification', payload, version };
+        }
+        case ACK:
+            return { type: 'ack', version: readVarint(bytes, state) };
+        case OPS_NOTIFICATION: {
+            const version = readVarint(bytes, state);
+            const count = readVarint(bytes, state);
+            const ops = [];
+            for (let i = 0; i < count; i++) {
+                const kind = bytes[state.offset++];
+                const position = readVarint(bytes, state);
+                ops.push(kind === INSERT
+                    ? { type: 'insert', position, text: readText(bytes, state) }
+                    : { type: 'delete', position, length: readVarint(bytes, state) });
+            }
+            return { type: 'opsNotification', version, ops };
+        }
+        default:
+            return { type: 'unknown' };
+    }
+};
+
+export default {
+    encodeHeartbeat,
+    encodeUpdate,
+    decode
+};
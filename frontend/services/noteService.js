@@ -1,3 +1,5 @@
+import binaryProtocol from './binaryProtocol';
+
 const fetchNotesByUserEmail = async (userEmail) => {
     try {
         const response = await fetch(`https://${process.env.HOSTNAME}/api/note/getByUserEmail/${userEmail}`);
@@ -106,51 +108,164 @@ const deleteNote = async (noteId) => {
     }
 };
 
+const isBinary = (socketRef) => socketRef.current.protocol === binaryProtocol.SUB_PROTOCOL;
+
+// 1001 and 1006: the server went away or the connection dropped (proxy timeout, network blip),
+// 1012: the note moved to another backend node; reconnecting reaches it again
+const RECONNECT_CODES = [1001, 1006, 1012];
+
+// FNV-1a over the UTF-16 chars of a content, mirrors backend rooms/OperationHistory.java
+const contentHash = (content) => {
+    let hash = 0x811c9dc5;
+    for (let i = 0; i < content.length; i++) {
+        hash ^= content.charCodeAt(i);
+        hash = Math.imul(hash, 0x01000193);
+    }
+    return hash | 0;
+};
+
+// Applies insert/delete operations in order, positions are in UTF-16 chars like the server's
+const applyOperations = (content, ops) => ops.reduce((text, op) => op.type === 'insert'
+    ? text.slice(0, op.position) + op.text + text.slice(op.position)
+    : text.slice(0, op.position) + text.slice(op.position + op.length), content);
+
+// The region where two contents differ: [start, end) in `from`, replaced by `text` in `to`
+const changedRegion = (from, to) => {
+    let start = 0;
+    while (start < from.length && start < to.length && from[start] === to[start]) {
+        start++;
+    }
+    let suffix = 0;
+    while (suffix < from.length - start && suffix < to.length - start
+        && from[from.length - 1 - suffix] === to[to.length - 1 - suffix]) {
+        suffix++;
+    }
+    return { start, end: from.length - suffix, text: to.slice(start, to.length - suffix) };
+};
+
+// Carries the local edit made on `base` over onto `updated`, the server's newer content. Where
+// the server changed the same region, the local edit wins it
+const rebase = (base, local, updated) => {
+    const ours = changedRegion(base, local);
+    const theirs = changedRegion(base, updated);
+    if (theirs.start === ours.start && theirs.end === ours.end && theirs.text === ours.text) {
+        // sent before the connection dropped, and already merged
+        return updated;
+    }
+    const shift = updated.length - base.length;
+    if (theirs.end <= ours.start) {
+        return updated.slice(0, ours.start + shift) + ours.text + updated.slice(ours.end + shift);
+    }
+    if (theirs.start >= ours.end) {
+        return updated.slice(0, ours.start) + ours.text + updated.slice(ours.end);
+    }
+    const start = Math.min(ours.start, theirs.start);
+    const end = Math.max(ours.end, theirs.end);
+    return updated.slice(0, start) + local.slice(start, end + local.length - base.length) + updated.slice(end + shift);
+};
+
+// Reconnect delays double from RECONNECT_BASE_MS up to RECONNECT_MAX_MS, each drawn at random
+// below that bound so clients dropped together do not all come back at the same moment
+const RECONNECT_BASE_MS = 500;
+const RECONNECT_MAX_MS = 30000;
+
+const reconnectDelay = (attempt) =>
+    Math.random() * Math.min(RECONNECT_MAX_MS, RECONNECT_BASE_MS * 2 ** attempt);
+
 const initializeWebSocket = (noteId, note, setNote, socketRef, heartbeatIntervalRef, versionNumberRef, lastContentFromServerRef) => {
-    // Initialize WebSocket connection
-    socketRef.current = new WebSocket(`wss://localhost/wsapp/document/${noteId}`);
+    // the last version and content received from the server; a reconnecting client sends
+    // them so the server only sends what it missed
+    const received = { version: -1, content: null };
+    let attempt = 0;
+    let reconnectTimeout = null;
+    let stopped = false;
 
-    socketRef.current.onopen = () => {
-        // console.log('Connected to WebSocket');
+    const connect = () => {
+        const query = received.content !== null
+            ? `?since=${received.version}&hash=${contentHash(received.content)}`
+            : '';
+        // the first notification after a reconnect is what the server has now
+        let resuming = received.content !== null;
 
-        // Start sending heartbeat messages every 30 seconds
-        heartbeatIntervalRef.current = setInterval(() => {
-            if (socketRef.current.readyState === WebSocket.OPEN) {
-                socketRef.current.send(JSON.stringify({ type: 'heartbeat' }));
-            }
-        }, 30000);
+        // Initialize WebSocket connection on the full-text protocol; operations only come in when
+        // resuming, the server's ?protocol=ops has no client here yet
+        // Offer the binary sub-protocol, the server falls back to JSON if it does not accept it
+        const socket = new WebSocket(`wss://localhost/wsapp/document/${noteId}${query}`, [binaryProtocol.SUB_PROTOCOL]);
+        socket.binaryType = 'arraybuffer';
+        socketRef.current = socket;
+
+        socket.onopen = () => {
+            // console.log('Connected to WebSocket');
+            attempt = 0;
+
+            // Start sending heartbeat messages every 30 seconds
+            heartbeatIntervalRef.current = setInterval(() => {
+                if (socket.readyState === WebSocket.OPEN) {
+                    socket.send(isBinary(socketRef)
+                        ? binaryProtocol.encodeHeartbeat()
+                        : JSON.stringify({ type: 'heartbeat' }));
+                }
+            }, 30000);
+        };
 
-        socketRef.current.onmessage = (event) => {
+        socket.onmessage = (event) => {
             try {
-                // Assuming the server sends JSON formatted messages
-                const data = JSON.parse(event.data);
+                // Binary frames on the negotiated sub-protocol, JSON text otherwise
+                const data = event.data instanceof ArrayBuffer
+                    ? binaryProtocol.decode(event.data)
+                    : JSON.parse(event.data);
+
+                // a reconnected client only gets the operations it missed
+                const content = data.type === 'opsNotification'
+                    ? applyOperations(received.content, data.ops)
+                    : data.payload;
 
-                if (data.type === 'updateNotification') {
+                if (data.type === 'updateNotification' || data.type === 'opsNotification') {
+                    let shown = content;
+                    if (resuming) {
+                        // Note.js keeps the last content typed in lastContentFromServerRef; what was typed
+                        // while disconnected is rebased onto the server's content and, differing from
+                        // it, sent as the next version
+                        shown = rebase(received.content, lastContentFromServerRef.current, content);
+                        resuming = false;
+                    }
                     const updatedNote = {
                         ...note,
-                        content: data.payload
+                        content: shown
                     };
 
-                    lastContentFromServerRef.current = updatedNote.content;
-                    setNote(updatedNote);
+                    received.version = data.version;
+                    received.content = content;
+                    lastContentFromServerRef.current = content;
                     versionNumberRef.current = data.version;
+                    setNote(updatedNote);
                 }
             } catch (error) {
                 console.error('Error parsing message:', error);
             }
         };
 
-        socketRef.current.onerror = (error) => {
+        socket.onerror = (error) => {
             console.error('WebSocket Error:', error);
         };
 
-        socketRef.current.onclose = () => {
+        // Attached before the connection opens, so an attempt that fails (1006) is retried too
+        socket.onclose = (event) => {
             // console.log('Disconnected from WebSocket');
+            clearInterval(heartbeatIntervalRef.current);
+            if (!stopped && RECONNECT_CODES.includes(event.code)) {
+                reconnectTimeout = setTimeout(connect, reconnectDelay(attempt));
+                attempt++;
+            }
         };
     };
 
+    connect();
+
     return () => {
         // Clean up on component unmount
+        stopped = true;
+        clearTimeout(reconnectTimeout);
         if (socketRef.current) {
             socketRef.current.close();
         }
@@ -160,11 +275,13 @@ const initializeWebSocket = (noteId, note, setNote, socketRef, heartbeatInterval
 
 const sendWebSocketMessage = (note, socketRef, versionNumberRef) => {
     if (socketRef.current && socketRef.current.readyState === WebSocket.OPEN && note) {
-        const message = JSON.stringify({
-            type: 'updateNote',
-            payload: note.content,
-            version: versionNumberRef.current
-        });
+        const message = isBinary(socketRef)
+            ? binaryProtocol.encodeUpdate(note.content, versionNumberRef.current)
+            : JSON.stringify({
+                type: 'updateNote',
+                payload: note.content,
+                version: versionNumberRef.current
+            });
         socketRef.current.send(message);
     }
 };